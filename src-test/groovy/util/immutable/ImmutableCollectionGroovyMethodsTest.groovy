@@ -0,0 +1,113 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable
+
+import groovy.transform.CompileStatic
+
+/**
+ * @author Yu Kobayashi
+ */
+class ImmutableCollectionGroovyMethodsTest extends GroovyTestCase {
+    void testList() {
+        def list = ImmutableCollections.listOf(1, 2, 3, 2)
+
+        def doubled = list.collect { it * 2 }
+        assert doubled instanceof ImmutableList
+        assert [2, 4, 6, 4] == doubled
+
+        def found = list.findAll { it > 1 }
+        assert found instanceof ImmutableList
+        assert [2, 3, 2] == found
+        assert list.is(list.findAll { true })
+
+        def unique = list.unique()
+        assert unique instanceof ImmutableList
+        assert [1, 2, 3] == unique
+        assert [1, 2, 3, 2] == list
+        // numbers are compared by Groovy's ==, as by the GDK:
+        def x = 'x'
+        assert [1, 'x', 2.5] == ImmutableCollections.listOf(1, 1L, 1.0G, 1.0d, 'x', "$x", 2.5f, 2.5).unique()
+        // a character, or a string of one character, is == to its code and to its string:
+        assert [(char) 'A'] == ImmutableCollections.listOf((char) 'A', 65).unique()
+        assert [65] == ImmutableCollections.listOf(65, (char) 'A', 'A').unique()
+        for (elements in [[(char) 'A', 65], [65, (char) 'A'], ['A', (char) 'A', 65.0d], [(char) 'B', 66L, 'A'], ['A', 65], ["$x", 120, 'x', 'xy']]) {
+            assert new ArrayList(elements).unique() == ImmutableCollections.listOf(*elements).unique()
+        }
+
+        def groups = list.groupBy { it % 2 }
+        assert groups instanceof ImmutableMap
+        assert groups[0] instanceof ImmutableList
+        assert [1: [1, 3], 0: [2, 2]] == groups
+
+        def entries = list.collectEntries { [it, it * it] }
+        assert entries instanceof ImmutableMap
+        assert [1: 1, 2: 4, 3: 9] == entries
+
+        assert 8 == list.inject(0) { acc, e -> acc + e }
+        assert 8 == list.inject { acc, e -> acc + e }
+        assert 8 == list.sum()
+        assert 18 == list.sum(10)
+        assert 16 == list.sum { it * 2 }
+    }
+
+    void testSet() {
+        def set = ImmutableCollections.setOf(1, 2, 3)
+        def found = set.findAll { it % 2 == 1 }
+        assert found instanceof ImmutableSet
+        assert [1, 3] as Set == found
+        assert set.is(set.unique())
+        assert [2, 4, 6] as Set == set.collect { it * 2 } as Set
+
+        def listSet = ImmutableCollections.listSetOf(3, 1, 2)
+        def kept = listSet.findAll { it != 1 }
+        assert kept instanceof ImmutableListSet
+        assert [3, 2] == kept as List<Integer>
+        assert 0 == kept.indexOf(3) && 1 == kept.indexOf(2)
+        def many = ImmutableCollections.listSet((0..<100).reverse())
+        assert (99..1).step(2) == many.findAll { it % 2 == 1 } as List<Integer>
+        assert [2, 1] == ImmutableCollections.listSetOf(2, 1, 2L, 1.0d).unique() as List<Object>
+        assert 2 == ImmutableCollections.setOf(1, 1L, 2).unique().size()
+    }
+
+    void testMap() {
+        def map = ImmutableCollections.mapOf('a', 1, 'b', 2)
+
+        def found = map.findAll { k, v -> v > 1 }
+        assert found instanceof ImmutableMap
+        assert [b: 2] == found
+        assert [b: 2] == map.findAll { it.value > 1 }
+
+        assert ['a1', 'b2'] as Set == map.collect { k, v -> k + v } as Set
+        assert [1: 'a', 2: 'b'] == map.collectEntries { k, v -> [v, k] }
+        assert [1: [a: 1], 0: [b: 2]] == map.groupBy { k, v -> v % 2 }
+        assert 3 == map.inject(0) { acc, k, v -> acc + v }
+        assert 3 == map.inject(0) { acc, e -> acc + e.value }
+    }
+
+    @CompileStatic
+    void testCompileStatic() {
+        def list = ImmutableCollections.listOf(1, 2, 3)
+        ImmutableList<Integer> doubled = list.collect { Integer i -> i * 2 }
+        ImmutableList<Integer> odd = list.findAll { Integer i -> i % 2 == 1 }
+        ImmutableMap<Integer, ImmutableList<Integer>> groups = list.groupBy { Integer i -> i % 2 }
+        int sum = list.inject(0) { Integer acc, Integer i -> acc + i }
+        assert [2, 4, 6] == doubled
+        assert [1, 3] == odd
+        assert [1, 3] == groups[1]
+        assert 6 == sum
+    }
+}
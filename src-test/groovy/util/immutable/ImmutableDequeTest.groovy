@@ -189,6 +189,35 @@ class ImmutableDequeTest extends GroovyTestCase {
         }
     }
 
+    void testIndexSplitAndJoin() {
+        def answer = (0..<1000).toList()
+        def deque = ImmutableCollections.deque()
+        for (int i = 0; i < 500; i++) {
+            deque = deque.plusFirst(499 - i).plusLast(500 + i)
+        }
+        assert answer == deque as List<Integer>
+        answer.eachWithIndex { int v, int i ->
+            assert v == deque.get(i)
+        }
+        shouldFail(IndexOutOfBoundsException) {
+            deque.get(1000)
+        }
+
+        for (int i in [0, 1, 37, 500, 999, 1000]) {
+            def parts = deque.splitAt(i)
+            assert answer.subList(0, i) == parts[0] as List<Integer>
+            assert answer.subList(i, 1000) == parts[1] as List<Integer>
+            assert deque == parts[0].plusLast(parts[1])
+        }
+
+        def joined = deque.plusLast(deque)
+        assert answer + answer == joined as List<Integer>
+        assert answer.reverse() + answer.reverse() == joined.descendingIterator().toList()
+        while (!joined.isEmpty()) {
+            joined = joined.tail().init()
+        }
+    }
+
     @SuppressWarnings("GrDeprecatedAPIUsage")
     void testUnsupportedOperation() {
         shouldFail(UnsupportedOperationException) {
@@ -261,4 +290,22 @@ class ImmutableDequeTest extends GroovyTestCase {
             ImmutableCollections.deque([0]).descendingIterator().remove()
         }
     }
+
+    void testFactories() {
+        for (int n = 0; n < 100; n++) {
+            def answer = (0..<n).toList()
+            def deque = ImmutableCollections.dequeOf(answer as Integer[])
+            assert answer == deque as List<Integer>
+            assert answer == ImmutableCollections.deque(answer) as List<Integer>
+            answer.eachWithIndex { int v, int i -> assert v == deque[i] }
+            while (!deque.isEmpty()) {
+                assert answer.remove(0) == deque.first()
+                deque = deque.tail()
+                if (!deque.isEmpty()) {
+                    assert answer.remove(answer.size() - 1) == deque.last()
+                    deque = deque.init()
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable
+
+/**
+ * @author Yu Kobayashi
+ */
+class ImmutableIntMapTest extends GroovyTestCase {
+    void testIntMap() {
+        def map = ImmutableCollections.<String> intMap()
+        def answer = new TreeMap<Integer, String>()
+        def r = new Random()
+        for (int i = 0; i < 1000; i++) {
+            int k = r.nextInt(200) - 100
+            if (r.nextInt(3) == 0) {
+                map = map.minus(k)
+                answer.remove(k)
+            } else if (r.nextBoolean()) {
+                map = map.plus(k, "v$i" as String)
+                answer[k] = "v$i" as String
+            } else {
+                map = map.plusInt(k, "v$i" as String)
+                answer[k] = "v$i" as String
+            }
+            assert answer.containsKey(k) == map.containsKey(k)
+            assert answer[k] == map.get(k)
+        }
+        assert answer == map
+        assert answer.keySet() as List == map.keySet() as List
+        assert ImmutableCollections.intMap(answer) == map
+
+        def cursor = map.cursor()
+        def entries = answer.entrySet().iterator()
+        while (cursor.next()) {
+            def entry = entries.next()
+            assert entry.key == cursor.key()
+            assert entry.value == cursor.value()
+        }
+        assert !entries.hasNext()
+    }
+
+    void testBoxedValues() {
+        ImmutableIntMap<Integer> ints = ImmutableCollections.intMap()
+        assert [1: 2] == ints.plus(1, 2)
+        assert [1: 2] == ints.plusInt(1, 2)
+        ImmutableLongMap<Long> longs = ImmutableCollections.longMap()
+        assert [1L: 2L] == longs.plus(1L, 2L)
+        assert [1L: 2L] == longs.plusLong(1L, 2L)
+    }
+
+    void testLongMap() {
+        def keys = [Long.MIN_VALUE, -1L << 32, -1L, 0L, 1L, 1L << 32, Long.MAX_VALUE]
+        def map = ImmutableCollections.<Long> longMap()
+        for (long k : keys.reverse()) {
+            map = map.plus(k, k)
+        }
+        assert keys == map.keySet() as List
+        assert keys == map.values() as List
+        for (long k : keys) {
+            assert map.containsKey(k)
+            assert k == map.get(k)
+            assert !map.containsKey(k + 3)
+        }
+
+        def cursor = map.cursor()
+        for (long k : keys) {
+            assert cursor.next()
+            assert k == cursor.key()
+        }
+        assert !cursor.next()
+
+        map = map.minus(Long.MIN_VALUE).minus(1L << 32)
+        assert keys - [Long.MIN_VALUE, 1L << 32] == map.keySet() as List
+    }
+}
@@ -150,4 +150,50 @@ class ImmutableListSetTest extends GroovyTestCase {
 
         assert set == listSet
     }
+
+    void testIndexedRemoval() {
+        def answer = (0..<2000).toList()
+        def listSet = ImmutableCollections.listSet(answer)
+
+        Random r = new Random(0)
+        for (int i = 0; i < 1000; i++) {
+            int v = r.nextInt(3000)
+            if (r.nextFloat() < 0.7) {
+                answer.remove((Object) v)
+                listSet -= v
+            } else if (!answer.contains(v)) {
+                answer << v
+                listSet += v
+            }
+            assert answer.indexOf(v) == listSet.indexOf(v)
+        }
+
+        assert answer == listSet as List<Integer>
+        answer.eachWithIndex { int v, int i ->
+            assert v == listSet[i]
+            assert i == listSet.indexOf(v)
+        }
+    }
+
+    void testAcrossSmallSize() {
+        def listSet = ImmutableCollections.listSet()
+        def answer = []
+        for (int i = 11; i >= 0; i--) {
+            listSet += i
+            answer << i
+            assert answer == listSet as List<Integer>
+            assert answer.indexOf(5) == listSet.indexOf(5)
+        }
+        for (int i = 0; i < 12; i += 2) {
+            listSet -= i
+            answer.remove((Object) i)
+            assert answer == listSet as List<Integer>
+            assert answer.size() == listSet.size()
+            answer.eachWithIndex { int v, int j -> assert v == listSet[j] }
+        }
+        listSet += [0, 1, 2]
+        answer << 0 << 2
+        assert answer == listSet as List<Integer>
+        assert (answer as Set).hashCode() == listSet.hashCode()
+    }
 }
@@ -16,6 +16,11 @@
 
 package groovy.util.immutable
 
+import org.pcollections.ConsPStack
+import org.pcollections.PSequence
+import org.pcollections.PVector
+import org.pcollections.TreePVector
+
 /**
  * @author Yu Kobayashi
  */
@@ -172,6 +177,120 @@ class ImmutableListTest extends GroovyTestCase {
         }
     }
 
+    void testBuilder() {
+        def builder = ImmutableCollections.<Integer> listBuilder()
+        assert ImmutableCollections.list() == builder.build()
+
+        def answer = []
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i)
+            answer << i
+        }
+        def list = builder.build()
+        assert answer == list
+        assert ImmutableCollections.list(answer) == list
+
+        // building more doesn't change lists built before
+        builder.addAll(1000..<2000)
+        assert answer == list
+        assert (0..<2000) == builder.build()
+        assert 2000 == builder.size()
+    }
+
+    void testSlicing() {
+        def list = ImmutableCollections.list(0..<1000000)
+        assert (500000..<500010) == list.subList(500000, 500010)
+        assert (999990..<1000000) == list.subList(999990)
+        assert (0..<10) == list.subList(0, 10)
+        assert list[400000..400004] == [400000, 400001, 400002, 400003, 400004]
+
+        // slices are ordinary lists
+        def page = list.subList(31, 100000)
+        assert 99969 == page.size()
+        assert 31 == page[0]
+        assert [-1, 31, 32] == (page.plusAt(0, -1) + -2).subList(0, 3)
+        assert (31..<100000) + [-2] == page + -2
+        assert (32..<1031) == page.subList(1, 1000)
+    }
+
+    void testConcatAndSplit() {
+        def list = ImmutableCollections.list(0..<100000)
+        assert (0..<100000) + (0..<100000) == list.plusAt(100000, list)
+        assert (0..<50000) + (0..<100) + (50000..<100000) == list.plusAt(50000, list.subList(0, 100))
+
+        def (left, right) = list.splitAt(40000)
+        assert (0..<40000) == left
+        assert (40000..<100000) == right
+        assert list == left.plusAt(40000, right)
+        assert [[], list] == list.splitAt(0)
+        assert [list, []] == list.splitAt(100000)
+
+        // merging many partial results
+        def merged = ImmutableCollections.list()
+        for (int i = 0; i < 1000; i++) {
+            merged = merged.plusAt(merged.size(), ImmutableCollections.list(i * 10..<i * 10 + 10))
+        }
+        assert (0..<10000) == merged
+        assert [-1, 5000, 5001] == merged.minusAt(5002).plusAt(5000, -1).subList(5000, 5003)
+    }
+
+    void testPersistentVector() {
+        // the list is the persistent vector itself, without a wrapper
+        def list = ImmutableCollections.list([1, 2, 3])
+        assert list instanceof PVector
+        assert list.is(TreePVector.from(list))
+        assert [1, 2, 3] == list && list == [1, 2, 3]
+
+        // minus removes an element, even where PVector also has minus(int) for an index
+        assert [2, 3] == list - 1
+        assert [1, 2] == list.minus(3)
+        assert [1, 3] == list.minusAt(1)
+        assert [3] == list - [1, 2]
+
+        // so from Groovy, minus with an int removes an element from a TreePVector even as a PVector,
+        // while a ConsPStack still removes the index:
+        PVector<Integer> vector = TreePVector.from([5, 6, 7])
+        assert [5, 6, 7] == vector - 0
+        assert [5, 6, 7] == vector.minus(0)
+        assert [5, 7] == vector - 6
+        assert [6, 7] == vector.minusAt(0)
+        PSequence<Integer> stack = ConsPStack.from([5, 6, 7])
+        assert [6, 7] == stack - 0
+        assert [6, 7] == stack.minus(0)
+    }
+
+    void testParallelStream() {
+        def list = ImmutableCollections.list(0..<10000)
+        def spliterator = list.spliterator()
+        assert spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE)
+        assert 10000 == spliterator.estimateSize()
+
+        def prefix = spliterator.trySplit()
+        assert 10000 == prefix.estimateSize() + spliterator.estimateSize()
+        def first = []
+        prefix.forEachRemaining { first << it }
+        assert (0..<prefix.estimateSize() + first.size()) == first
+
+        assert (0..<10000).sum() == list.parallelStream().mapToInt { it }.sum()
+        assert list == list.parallelStream().collect(java.util.stream.Collectors.toList())
+    }
+
+    void testParallelTransforms() {
+        def list = ImmutableCollections.list(0..<10000)
+        assert (0..<10000).collect { it * 2 } == list.collectParallel { it * 2 }
+        assert (0..<10000).findAll { it % 3 == 0 } == list.findAllParallel { it % 3 == 0 }
+        assert (0..<10000).collectMany { [it, -it] } == list.collectManyParallel { [it, -it] }
+        assert (0..<10000).sum() == list.parallelStream().reduce(0, { a, b -> a + b }, { a, b -> a + b })
+
+        // the results are ordinary lists
+        def evens = list.findAllParallel { it % 2 == 0 }
+        assert 5000 == evens.size()
+        def more = evens.plusAt(1, -1) + -2
+        assert [0, -1, 2, 4] == more.take(4)
+        assert -2 == more[5001]
+        assert list.is(list.findAllParallel { true })
+    }
+
     @SuppressWarnings("GrDeprecatedAPIUsage")
     void testUnsupportedOperation() {
         shouldFail(UnsupportedOperationException) {
@@ -223,4 +342,17 @@ class ImmutableListTest extends GroovyTestCase {
             ImmutableCollections.list([0]).listIterator(0).add(null)
         }
     }
+
+    void testFactories() {
+        assert [1, 2, 3] == ImmutableCollections.listOf(1, 2, 3)
+        assert [] == ImmutableCollections.listOf()
+        assert (0..<100).toList() == ImmutableCollections.copyOf((0..<100).toList())
+        assert (0..<100).toList() == ImmutableCollections.copyOf((0..<100) as Integer[])
+
+        Integer[] array = [1, 2]
+        def list = ImmutableCollections.copyOf(array)
+        array[0] = 3
+        assert [1, 2] == list
+        assert list.is(ImmutableCollections.copyOf(list))
+    }
 }
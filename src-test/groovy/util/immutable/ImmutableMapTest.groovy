@@ -78,6 +78,52 @@ class ImmutableMapTest extends GroovyTestCase {
         assert answer.entrySet() == map.entrySet()
     }
 
+    void testBuilder() {
+        def builder = ImmutableCollections.<Integer, Integer> mapBuilder()
+        assert ImmutableCollections.map() == builder.build()
+
+        def answer = [:]
+        for (int i = 0; i < 1000; i++) {
+            builder.put(i, i)
+            answer[i] = i
+        }
+        def map = builder.build()
+        assert answer == map
+        assert ImmutableCollections.map(answer) == map
+
+        // building more doesn't change maps built before
+        builder.putAll([0: -1, 1000: 1000])
+        assert answer == map
+        answer += [0: -1, 1000: 1000]
+        assert answer == builder.build()
+        assert 1001 == builder.size()
+    }
+
+    void testParallelStream() {
+        def answer = [:]
+        for (int i = 0; i < 10000; i++) {
+            answer[i] = i * 2
+        }
+        def map = ImmutableCollections.map(answer)
+        assert map.entrySet().spliterator().hasCharacteristics(Spliterator.SIZED | Spliterator.DISTINCT)
+
+        assert answer.keySet().sum() == map.keySet().parallelStream().mapToInt { it }.sum()
+        assert answer.values().sum() == map.values().parallelStream().mapToInt { it }.sum()
+        assert answer == map.entrySet().parallelStream().collect(
+                java.util.stream.Collectors.toMap({ it.key }, { it.value }))
+    }
+
+    void testParallelTransforms() {
+        def answer = [:]
+        for (int i = 0; i < 10000; i++) {
+            answer[i] = i * 2
+        }
+        def map = ImmutableCollections.map(answer)
+        assert answer.collectEntries { k, v -> [v, k] } == map.collectEntriesParallel { new MapEntry(it.value, it.key) }
+        assert answer.findAll { k, v -> k % 3 == 0 } == map.findAllParallel { it.key % 3 == 0 }
+        assert answer.values().sum() == map.entrySet().parallelStream().reduce(0, { a, e -> a + e.value }, { a, b -> a + b })
+    }
+
     @SuppressWarnings("GrDeprecatedAPIUsage")
     void testUnsupportedOperation() {
         shouldFail(UnsupportedOperationException) {
@@ -160,4 +206,13 @@ class ImmutableMapTest extends GroovyTestCase {
             assert pmap == (pmap + pmap)
         }
     }
+
+    void testFactories() {
+        assert [a: 1] == ImmutableCollections.mapOf('a', 1)
+        assert [a: 1, b: 2, c: 3] == ImmutableCollections.mapOf('a', 1, 'b', 2, 'c', 3)
+        assert [a: 5, b: 2, c: 3, d: 4] == ImmutableCollections.mapOf('a', 1, 'b', 2, 'c', 3, 'd', 4, 'a', 5)
+
+        def map = ImmutableCollections.map([a: 1])
+        assert map.is(ImmutableCollections.map(map))
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable
+
+import org.pcollections.IntTreePVector
+
+import java.util.function.IntConsumer
+
+/**
+ * @author Yu Kobayashi
+ */
+class ImmutablePrimitiveListTest extends GroovyTestCase {
+    void testIntList() {
+        def list = ImmutableCollections.intList()
+        def answer = []
+        for (int i = 0; i < 2000; i++) {
+            list = list.plus(i * 3)
+            answer << i * 3
+        }
+        assert answer == list.asList()
+        assert ImmutableCollections.intList(answer as int[]) == list
+        assert ImmutableCollections.intList(answer) == list
+        assert answer as int[] == list.toIntArray()
+        assert answer[1000..<1100] as int[] == list.toIntArray(1000, 1100)
+
+        def replaced = list.replaceAt(1500, -1)
+        assert -1 == replaced.getInt(1500)
+        assert 4500 == list.getInt(1500)
+
+        long sum = 0
+        list.forEach({ int e -> sum += e } as IntConsumer)
+        assert answer.sum() == sum
+
+        shouldFail(IndexOutOfBoundsException) {
+            list.getInt(2000)
+        }
+
+        def appended = list.plus((0..<100) as int[])
+        assert answer + (0..<100) == appended.asList()
+        assert list instanceof IntTreePVector
+    }
+
+    void testLongAndDoubleList() {
+        def longs = ImmutableCollections.longList([Long.MIN_VALUE, 0L, Long.MAX_VALUE])
+        assert [Long.MIN_VALUE, 0L, Long.MAX_VALUE] == longs.asList()
+        assert Long.MAX_VALUE == longs.plus(1L).getLong(2)
+
+        def doubles = ImmutableCollections.doubleList([0.5d, -1.5d] as double[])
+        assert [0.5d, -1.5d, 2.5d] == doubles.plus(2.5d).asList()
+        assert [0.5d] as double[] == doubles.toDoubleArray(0, 1)
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable
+
+/**
+ * @author Yu Kobayashi
+ */
+class ImmutableSerializationTest extends GroovyTestCase {
+    void testRoundTrip() {
+        [0, 1, 8, 9, 100, 3000].each { int n ->
+            def elements = (0..<n).collect { it * 7 % 1000 }
+            def map = elements.collectEntries { [it, "v$it".toString()] }
+
+            check ImmutableCollections.list(elements)
+            check ImmutableCollections.set(elements)
+            check ImmutableCollections.listSet(elements)
+            check ImmutableCollections.deque(elements)
+            check ImmutableCollections.map(map)
+            check ImmutableCollections.intMap(map)
+            check ImmutableCollections.longMap(map.collectEntries { k, v -> [(-k as long) << 20, v] })
+            check ImmutableCollections.intList(elements as int[])
+            check ImmutableCollections.longList(elements.collect { it as long })
+            check ImmutableCollections.doubleList(elements.collect { it / 3 as double })
+        }
+    }
+
+    void testEmptyStaysUnique() {
+        assert ImmutableCollections.list().is(roundTrip(ImmutableCollections.list()))
+        assert ImmutableCollections.set().is(roundTrip(ImmutableCollections.set()))
+        assert ImmutableCollections.map().is(roundTrip(ImmutableCollections.map()))
+    }
+
+    void testElementsAreWrittenFlat() {
+        def list = ImmutableCollections.list(0..<10000)
+        // about 10 bytes per Integer; the tree of the list would add its nodes:
+        assert write(list).length < 10000 * 11
+    }
+
+    void testCorruptSizeIsNotAllocated() {
+        byte[] bytes = write(ImmutableCollections.list([5, 6, 7]))
+        // the tag of a vector, followed by its size:
+        int at = (0..<bytes.length - 4).find { i -> [1, 0, 0, 0, 3] == (i..i + 4).collect { bytes[it] } }
+        [0x7f, 0xff, 0xff, 0xff].eachWithIndex { b, i -> bytes[at + 1 + i] = (byte) b }
+        shouldFail(IOException) {
+            new ObjectInputStream(new ByteArrayInputStream(bytes)).withStream { it.readObject() }
+        }
+    }
+
+    private static void check(Object collection) {
+        def copy = roundTrip(collection)
+        assert collection.getClass() == copy.getClass()
+        assert collection == copy
+        assert collection.hashCode() == copy.hashCode()
+    }
+
+    private static byte[] write(Object o) {
+        def bytes = new ByteArrayOutputStream()
+        new ObjectOutputStream(bytes).withStream { it.writeObject(o) }
+        bytes.toByteArray()
+    }
+
+    private static Object roundTrip(Object o) {
+        new ObjectInputStream(new ByteArrayInputStream(write(o))).withStream { it.readObject() }
+    }
+}
@@ -93,6 +93,66 @@ class ImmutableSetTest extends GroovyTestCase {
         }
     }
 
+    void testParallelTransforms() {
+        def set = ImmutableCollections.set(0..<10000)
+        assert (0..<10000).collect { it.intdiv(2) } as Set == set.collectParallel { it.intdiv(2) }
+        assert (0..<10000).findAll { it % 3 == 0 } as Set == set.findAllParallel { it % 3 == 0 }
+        assert (-9999..9999) as Set == set.collectManyParallel { [it, -it] }
+        assert (0..<10000).sum() == set.parallelStream().reduce(0, { a, b -> a + b }, { a, b -> a + b })
+    }
+
+    void testSetAlgebra() {
+        def evens = ImmutableCollections.set((0..<10000).findAll { it % 2 == 0 })
+        def triples = ImmutableCollections.set((0..<10000).findAll { it % 3 == 0 })
+        assert (0..<10000).findAll { it % 2 == 0 || it % 3 == 0 } as Set == evens + triples
+        assert (0..<10000).findAll { it % 6 == 0 } as Set == evens.intersect(triples)
+        assert (0..<10000).findAll { it % 2 == 0 && it % 3 != 0 } as Set == evens - triples
+
+        def sixes = evens.intersect(triples)
+        assert sixes.isSubsetOf(evens)
+        assert sixes.isSubsetOf(triples)
+        assert !evens.isSubsetOf(triples)
+        assert (sixes + 1).isSubsetOf(0..<10000)
+
+        // other iterables are looked up element by element
+        assert [0, 6] as Set == sixes.intersect([0, 1, 6])
+        assert [0, 1, 2] as Set == ImmutableCollections.set([0, 1, 2, 3]).intersect(0..2)
+
+        // the elements of the intersection are those of the left-hand side
+        def strings = (0..<1000).collect { new String(it.toString()) }
+        def copies = (0..<1000).step(50).collect { new String(it.toString()) }
+        def common = ImmutableCollections.set(strings).intersect(ImmutableCollections.set(copies))
+        assert copies as Set == common
+        assert common.every { e -> strings.any { it.is(e) } }
+    }
+
+    void testAcrossSmallSize() {
+        def set = ImmutableCollections.set()
+        def answer = [] as Set<Integer>
+        for (int i = 0; i < 12; i++) {
+            set += i
+            answer << i
+            assert answer == set
+            assert answer.hashCode() == set.hashCode()
+        }
+        for (int i = 0; i < 12; i++) {
+            set -= i
+            answer.remove(i)
+            assert answer == set
+            assert answer.hashCode() == set.hashCode()
+            assert !set.contains(i)
+        }
+        assert set.isEmpty()
+
+        // a small set equals a large one which shrank to the same elements
+        def large = ImmutableCollections.set(0..<20) - (3..<20)
+        assert ImmutableCollections.set([0, 1, 2]) == large
+        assert large == ImmutableCollections.set([2, 1, 0])
+        assert ImmutableCollections.set([0, 1, 2]).hashCode() == large.hashCode()
+        assert [0, 1] as Set == large.intersect(ImmutableCollections.set(0..<2))
+        assert ImmutableCollections.set(0..<9) == ImmutableCollections.set(0..<5) + (5..<9)
+    }
+
     @SuppressWarnings("GrDeprecatedAPIUsage")
     void testUnsupportedOperation() {
         shouldFail(UnsupportedOperationException) {
@@ -117,4 +177,17 @@ class ImmutableSetTest extends GroovyTestCase {
             ImmutableCollections.set([0]).iterator().remove()
         }
     }
+
+    void testFactories() {
+        assert [1, 2, 3] as Set == ImmutableCollections.setOf(1, 2, 3, 2, 1)
+        assert (0..<100) as Set == ImmutableCollections.setOf((0..<100) as Integer[])
+        assert [0, 1] as Set == ImmutableCollections.listSetOf(0, 1, 0)
+        assert [2, 0, 1] == ImmutableCollections.listSetOf(2, 0, 2, 1) as List<Integer>
+
+        def set = ImmutableCollections.set([1, 2])
+        assert set.is(ImmutableCollections.set(set))
+        shouldFail(NullPointerException) {
+            ImmutableCollections.setOf(1, null)
+        }
+    }
 }
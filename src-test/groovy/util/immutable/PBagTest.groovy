@@ -95,6 +95,33 @@ class PBagTest extends GroovyTestCase {
         }
     }
 
+    void testCounts() {
+        MapPBag<Integer> bag = HashTreePBag.from([1, 2, 2, 3, 3, 3])
+        assert 0 == bag.count(0)
+        assert 2 == bag.count(2)
+        assert [1, 2, 3] as Set == bag.elementSet()
+        assert [1: 1, 2: 2, 3: 3] == bag.entryCounts()
+
+        bag = bag.plusCount(1, 2)
+        check([1, 1, 1, 2, 2, 3, 3, 3], bag)
+        bag = bag.setCount(3, 1).setCount(4, 2)
+        check([1, 1, 1, 2, 2, 3, 4, 4], bag)
+        bag = bag.setCount(1, 0)
+        check([2, 2, 3, 4, 4], bag)
+        assert bag.is(bag.plusCount(2, 0))
+        assert bag.is(bag.setCount(2, 2))
+
+        bag = bag.minusAll([4, 5, 2, 4])
+        check([3], bag)
+
+        shouldFail(IllegalArgumentException) {
+            bag.plusCount(1, -1)
+        }
+        shouldFail(IllegalArgumentException) {
+            bag.setCount(1, -1)
+        }
+    }
+
     @SuppressWarnings("GrDeprecatedAPIUsage")
     void testUnsupportedOperation() {
         shouldFail(UnsupportedOperationException) {
@@ -19,6 +19,8 @@ package groovy.util.immutable
 import org.pcollections.ConsPStack
 import org.pcollections.PStack
 
+import java.util.stream.Collectors
+
 /**
  * @author Yu Kobayashi
  */
@@ -61,6 +63,28 @@ class PStackTest extends GroovyTestCase {
         check([1, 4], stack)
     }
 
+    void testDeepStack() {
+        int n = 100000
+        ConsPStack<Integer> stack = ConsPStack.from(0..<n)
+        assert stack.size() == n
+        assert stack.get(0) == 0
+        assert stack.get(n - 1) == n - 1
+        assert stack.subList(n - 2, n - 1) == [n - 2]
+
+        ConsPStack<Integer> inserted = stack.plus(n - 1, -1)
+        assert inserted.size() == n + 1
+        assert inserted.get(n - 1) == -1
+        assert inserted.get(n) == n - 1
+        assert inserted.minus(n - 1) == stack
+        assert stack.get(n - 1) == n - 1
+
+        assert stack.with(n - 1, -1).last() == -1
+        assert stack.minus((Object) (n - 1)).size() == n - 1
+        assert stack.minusAll([0, n - 1]) == (1..<(n - 1)).toList()
+        assert stack.stream().count() == n
+        assert stack.parallelStream().collect(Collectors.toList()) == stack
+    }
+
     private void check(List<Integer> answer, PStack<Integer> list) {
         assert answer == list as List<Integer>
 
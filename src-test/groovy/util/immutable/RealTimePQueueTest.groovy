@@ -0,0 +1,65 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable
+
+import org.pcollections.RealTimePQueue
+
+/**
+ * @author Yu Kobayashi
+ */
+class RealTimePQueueTest extends GroovyTestCase {
+    void testSupportedOperation() {
+        RealTimePQueue<Integer> queue = RealTimePQueue.<Integer> empty()
+        check([], queue)
+        assert queue.is(queue.minus())
+
+        queue = queue.plus(1).plus(2).plus(null)
+        check([1, 2, null], queue)
+
+        def old = queue
+        queue = queue.minus().plusAll([3, 4, 5])
+        check([2, null, 3, 4, 5], queue)
+        check([1, 2, null], old)
+
+        queue = queue.minus((Object) null).minusAll([4])
+        check([2, 3, 5], queue)
+
+        def drained = queue.plus(6).drain(2)
+        assert [2, 3] == drained.elements()
+        check([5, 6], drained.rest())
+        assert [5, 6] == drained.rest().drain(10).elements()
+        check([], drained.rest().drain(10).rest())
+    }
+
+    void testInterleaved() {
+        def answer = []
+        RealTimePQueue<Integer> queue = RealTimePQueue.<Integer> empty()
+        for (int i = 0; i < 1000; i++) {
+            queue = queue.plus(i).plus(-i)
+            answer << i << -i
+            queue = queue.minus()
+            answer.remove(0)
+        }
+        check(answer, queue)
+    }
+
+    private void check(List<Integer> answer, RealTimePQueue<Integer> queue) {
+        assert answer == queue as List<Integer>
+        assert answer.size() == queue.size()
+        assert (answer ? answer[0] : null) == queue.peek()
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable;
+
+import groovy.lang.Closure;
+import groovy.lang.GString;
+import groovy.transform.stc.ClosureParams;
+import groovy.transform.stc.FirstParam;
+import groovy.transform.stc.FromString;
+import groovy.transform.stc.MapEntryOrKeyValue;
+import org.codehaus.groovy.runtime.DefaultGroovyMethods;
+import org.codehaus.groovy.runtime.typehandling.DefaultTypeTransformation;
+import org.pcollections.HashPMap;
+import org.pcollections.MapPSet;
+import org.pcollections.OrderedPSet;
+import org.pcollections.TreePVector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Groovy extension methods for immutable collections, registered as an extension module
+ * in META-INF/services/org.codehaus.groovy.runtime.ExtensionModule.
+ * <p/>
+ * They replace the methods of {@link DefaultGroovyMethods} which would return a mutable
+ * copy, so that e.g. {@code list.collect { it * 2 }} returns an {@link ImmutableList}.
+ * Results are built in one pass on the transient form of the persistent collections,
+ * rather than into a mutable collection which would then have to be copied again.
+ * The closure parameters are typed, so the methods can be used from statically compiled code.
+ * <p/>
+ * Like the immutable sets and maps themselves, results which are sets or map keys hold no nulls.
+ *
+ * @author Yu Kobayashi
+ * @since 2.4.0
+ */
+public final class ImmutableCollectionGroovyMethods {
+    /**
+     * non-instantiable
+     */
+    private ImmutableCollectionGroovyMethods() {
+    }
+
+    //// COLLECT ////
+
+    /**
+     * Transforms every element of an immutable collection.
+     *
+     * @param self      an immutable collection
+     * @param transform the closure applied to each element
+     * @return an immutable list of the results, in iteration order
+     */
+    public static <E, T> ImmutableList<T> collect(ImmutableCollection<E> self,
+                                                  @ClosureParams(FirstParam.FirstGenericType.class) Closure<T> transform) {
+        TreePVector.Transient<T> result = TreePVector.<T>empty().asTransient();
+        for (E e : self) {
+            result.add(transform.call(e));
+        }
+        return result.persistent();
+    }
+
+    /**
+     * Transforms every entry of an immutable map. The closure takes an entry, or a key and a value.
+     *
+     * @param self      an immutable map
+     * @param transform the closure applied to each entry
+     * @return an immutable list of the results
+     */
+    public static <K, V, T> ImmutableList<T> collect(ImmutableMap<K, V> self,
+                                                     @ClosureParams(MapEntryOrKeyValue.class) Closure<T> transform) {
+        TreePVector.Transient<T> result = TreePVector.<T>empty().asTransient();
+        for (Map.Entry<K, V> entry : self.entrySet()) {
+            result.add(callForEntry(transform, entry));
+        }
+        return result.persistent();
+    }
+
+    //// FIND ALL ////
+
+    /**
+     * Finds the elements of an immutable list which satisfy a condition.
+     *
+     * @param self      an immutable list
+     * @param condition the closure which decides, by Groovy truth, whether an element is kept
+     * @return an immutable list of the kept elements, in order
+     */
+    public static <E> ImmutableList<E> findAll(ImmutableList<E> self,
+                                               @ClosureParams(FirstParam.FirstGenericType.class) Closure<?> condition) {
+        TreePVector.Transient<E> result = TreePVector.<E>empty().asTransient();
+        for (E e : self) {
+            if (DefaultTypeTransformation.castToBoolean(condition.call(e)))
+                result.add(e);
+        }
+        return result.size() == self.size() ? self : result.persistent();
+    }
+
+    /**
+     * Finds the elements of an immutable set which satisfy a condition.
+     *
+     * @param self      an immutable set
+     * @param condition the closure which decides, by Groovy truth, whether an element is kept
+     * @return an immutable set of the kept elements
+     */
+    public static <E> ImmutableSet<E> findAll(ImmutableSet<E> self,
+                                              @ClosureParams(FirstParam.FirstGenericType.class) Closure<?> condition) {
+        if (self instanceof ImmutableListSet)
+            return findAll((ImmutableListSet<E>) self, condition);
+        MapPSet.Transient<E> result = MapPSet.<E>empty().asTransient();
+        for (E e : self) {
+            if (DefaultTypeTransformation.castToBoolean(condition.call(e)))
+                result.add(e);
+        }
+        return result.size() == self.size() ? self : result.persistent();
+    }
+
+    /**
+     * Finds the elements of an immutable list set which satisfy a condition.
+     *
+     * @param self      an immutable list set
+     * @param condition the closure which decides, by Groovy truth, whether an element is kept
+     * @return an immutable list set of the kept elements, in order
+     */
+    public static <E> ImmutableListSet<E> findAll(ImmutableListSet<E> self,
+                                                  @ClosureParams(FirstParam.FirstGenericType.class) final Closure<?> condition) {
+        return OrderedPSet.from(self).findAll(new Predicate<E>() {
+            public boolean test(E e) {
+                return DefaultTypeTransformation.castToBoolean(condition.call(e));
+            }
+        });
+    }
+
+    /**
+     * Finds the entries of an immutable map which satisfy a condition.
+     * The closure takes an entry, or a key and a value.
+     *
+     * @param self      an immutable map
+     * @param condition the closure which decides, by Groovy truth, whether an entry is kept
+     * @return an immutable map of the kept entries
+     */
+    public static <K, V> ImmutableMap<K, V> findAll(ImmutableMap<K, V> self,
+                                                    @ClosureParams(MapEntryOrKeyValue.class) Closure<?> condition) {
+        HashPMap.Transient<K, V> result = HashPMap.<K, V>empty().asTransient();
+        for (Map.Entry<K, V> entry : self.entrySet()) {
+            if (DefaultTypeTransformation.castToBoolean(callForEntry(condition, entry)))
+                result.put(entry.getKey(), entry.getValue());
+        }
+        return result.size() == self.size() ? self : result.persistent();
+    }
+
+    //// COLLECT ENTRIES ////
+
+    /**
+     * Transforms every element of an immutable collection into map entries. Like
+     * {@link DefaultGroovyMethods#collectEntries(Iterable, Closure)}, the closure returns
+     * a map, a map entry, or a list or array of a key and a value.
+     *
+     * @param self      an immutable collection
+     * @param transform the closure applied to each element
+     * @return an immutable map of the entries; a later key replaces an equal earlier one
+     */
+    public static <E, K, V> ImmutableMap<K, V> collectEntries(ImmutableCollection<E> self,
+                                                              @ClosureParams(FirstParam.FirstGenericType.class) Closure<?> transform) {
+        HashPMap.Transient<K, V> result = HashPMap.<K, V>empty().asTransient();
+        for (E e : self) {
+            ImmutableCollectionGroovyMethods.<K, V>putEntry(result, transform.call(e));
+        }
+        return result.persistent();
+    }
+
+    /**
+     * Transforms every entry of an immutable map into map entries, like
+     * {@link #collectEntries(ImmutableCollection, Closure)}. The closure takes an entry, or a key and a value.
+     *
+     * @param self      an immutable map
+     * @param transform the closure applied to each entry
+     * @return an immutable map of the entries; a later key replaces an equal earlier one
+     */
+    public static <K, V, X, Y> ImmutableMap<X, Y> collectEntries(ImmutableMap<K, V> self,
+                                                                 @ClosureParams(MapEntryOrKeyValue.class) Closure<?> transform) {
+        HashPMap.Transient<X, Y> result = HashPMap.<X, Y>empty().asTransient();
+        for (Map.Entry<K, V> entry : self.entrySet()) {
+            ImmutableCollectionGroovyMethods.<X, Y>putEntry(result, callForEntry(transform, entry));
+        }
+        return result.persistent();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void putEntry(HashPMap.Transient<K, V> result, Object entry) {
+        if (entry instanceof Map) {
+            result.putAll((Map<? extends K, ? extends V>) entry);
+        } else if (entry instanceof Map.Entry) {
+            result.put(((Map.Entry<K, V>) entry).getKey(), ((Map.Entry<K, V>) entry).getValue());
+        } else if (entry instanceof List) {
+            List<?> list = (List<?>) entry;
+            result.put((K) (list.isEmpty() ? null : list.get(0)), (V) (list.size() <= 1 ? null : list.get(1)));
+        } else if (entry instanceof Object[]) {
+            Object[] array = (Object[]) entry;
+            result.put((K) (array.length == 0 ? null : array[0]), (V) (array.length <= 1 ? null : array[1]));
+        } else {
+            throw new IllegalArgumentException("not a map, map entry, list or array: " + entry);
+        }
+    }
+
+    //// GROUP BY ////
+
+    /**
+     * Groups the elements of an immutable collection by the keys a closure returns for them.
+     * Each group is built on its own transient list, which is held by a transient map from
+     * the keys until all elements are grouped.
+     *
+     * @param self an immutable collection
+     * @param key  the closure which returns the key of an element
+     * @return an immutable map from each key to the immutable list of its elements, in iteration order;
+     * like every immutable map, it iterates over the keys in the order of their hash codes
+     */
+    @SuppressWarnings("unchecked")
+    public static <E, K> ImmutableMap<K, ImmutableList<E>> groupBy(ImmutableCollection<E> self,
+                                                                   @ClosureParams(FirstParam.FirstGenericType.class) Closure<K> key) {
+        HashPMap.Transient<K, Object> groups = HashPMap.<K, Object>empty().asTransient();
+        ArrayList<K> keys = new ArrayList<K>();
+        for (E e : self) {
+            K k = key.call(e);
+            TreePVector.Transient<E> group = (TreePVector.Transient<E>) groups.get(k);
+            if (group == null) {
+                group = TreePVector.<E>empty().asTransient();
+                groups.put(k, group);
+                keys.add(k);
+            }
+            group.add(e);
+        }
+        // each transient group is replaced by its persistent list in place:
+        for (K k : keys) {
+            groups.put(k, ((TreePVector.Transient<E>) groups.get(k)).persistent());
+        }
+        return (ImmutableMap<K, ImmutableList<E>>) (ImmutableMap<K, ?>) groups.persistent();
+    }
+
+    /**
+     * Groups the entries of an immutable map by the keys a closure returns for them, like
+     * {@link #groupBy(ImmutableCollection, Closure)}. The closure takes an entry, or a key and a value.
+     *
+     * @param self an immutable map
+     * @param key  the closure which returns the key of an entry
+     * @return an immutable map from each key to the immutable map of its entries
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V, G> ImmutableMap<G, ImmutableMap<K, V>> groupBy(ImmutableMap<K, V> self,
+                                                                        @ClosureParams(MapEntryOrKeyValue.class) Closure<G> key) {
+        HashPMap.Transient<G, Object> groups = HashPMap.<G, Object>empty().asTransient();
+        ArrayList<G> keys = new ArrayList<G>();
+        for (Map.Entry<K, V> entry : self.entrySet()) {
+            G g = callForEntry(key, entry);
+            HashPMap.Transient<K, V> group = (HashPMap.Transient<K, V>) groups.get(g);
+            if (group == null) {
+                group = HashPMap.<K, V>empty().asTransient();
+                groups.put(g, group);
+                keys.add(g);
+            }
+            group.put(entry.getKey(), entry.getValue());
+        }
+        for (G g : keys) {
+            groups.put(g, ((HashPMap.Transient<K, V>) groups.get(g)).persistent());
+        }
+        return (ImmutableMap<G, ImmutableMap<K, V>>) (ImmutableMap<G, ?>) groups.persistent();
+    }
+
+    //// INJECT ////
+
+    /**
+     * Folds the elements of an immutable collection, in iteration order, without copying it.
+     *
+     * @param self         an immutable collection
+     * @param initialValue the initial value of the accumulator
+     * @param closure      the closure which takes the accumulator and an element, and returns the next accumulator
+     * @return the last accumulator
+     */
+    public static <E, U> U inject(ImmutableCollection<E> self, U initialValue,
+                                  @ClosureParams(value = FromString.class, options = "U,E") Closure<U> closure) {
+        U value = initialValue;
+        for (E e : self) {
+            value = closure.call(value, e);
+        }
+        return value;
+    }
+
+    /**
+     * Folds the elements of an immutable collection, starting from its first element.
+     *
+     * @param self    a non-empty immutable collection
+     * @param closure the closure which takes the accumulator and an element, and returns the next accumulator
+     * @return the last accumulator
+     * @throws NoSuchElementException if self is empty
+     */
+    @SuppressWarnings("unchecked")
+    public static <E, T> T inject(ImmutableCollection<E> self,
+                                  @ClosureParams(value = FromString.class, options = "E,E") Closure<T> closure) {
+        Iterator<E> i = self.iterator();
+        if (!i.hasNext())
+            throw new NoSuchElementException("Cannot call inject() on an empty collection without passing an initial value.");
+        T value = (T) i.next();
+        while (i.hasNext()) {
+            value = closure.call(value, i.next());
+        }
+        return value;
+    }
+
+    /**
+     * Folds the entries of an immutable map without copying it. The closure takes the accumulator
+     * and an entry, or the accumulator, a key and a value.
+     *
+     * @param self         an immutable map
+     * @param initialValue the initial value of the accumulator
+     * @param closure      the closure which returns the next accumulator
+     * @return the last accumulator
+     */
+    public static <K, V, U> U inject(ImmutableMap<K, V> self, U initialValue,
+                                     @ClosureParams(value = FromString.class, options = {"U,Map.Entry<K,V>", "U,K,V"}) Closure<U> closure) {
+        U value = initialValue;
+        boolean keyAndValue = closure.getMaximumNumberOfParameters() == 3;
+        for (Map.Entry<K, V> entry : self.entrySet()) {
+            value = keyAndValue ? closure.call(value, entry.getKey(), entry.getValue()) : closure.call(value, entry);
+        }
+        return value;
+    }
+
+    //// UNIQUE ////
+
+    /**
+     * Removes duplicate elements, which are equal by Groovy's == as in {@link DefaultGroovyMethods#unique(List)}:
+     * numbers of different types are equal if their values are, and so are a GString or a Character and
+     * a String with the same characters. Unlike the GDK method, which compares every element with every
+     * kept one, each element is only compared with those of the same hash bucket, and self is not
+     * modified, which it could not be anyway.
+     *
+     * @param self an immutable list
+     * @return an immutable list of the first occurrence of each element, in order, or self if there are no duplicates
+     */
+    public static <E> ImmutableList<E> unique(ImmutableList<E> self) {
+        Seen seen = new Seen();
+        TreePVector.Transient<E> result = TreePVector.<E>empty().asTransient();
+        for (E e : self) {
+            if (seen.add(e))
+                result.add(e);
+        }
+        return result.size() == self.size() ? self : result.persistent();
+    }
+
+    /**
+     * Removes the elements of an immutable set which Groovy's == finds equal to an earlier one,
+     * like {@link #unique(ImmutableList)}; a set only has no duplicates by equals.
+     *
+     * @param self an immutable set
+     * @return an immutable set of the first occurrence of each element, or self if there are no duplicates
+     */
+    public static <E> ImmutableSet<E> unique(ImmutableSet<E> self) {
+        if (self instanceof ImmutableListSet)
+            return unique((ImmutableListSet<E>) self);
+        Seen seen = new Seen();
+        MapPSet.Transient<E> result = MapPSet.<E>empty().asTransient();
+        for (E e : self) {
+            if (seen.add(e))
+                result.add(e);
+        }
+        return result.size() == self.size() ? self : result.persistent();
+    }
+
+    /**
+     * Like {@link #unique(ImmutableSet)}, keeping the order of an immutable list set.
+     *
+     * @param self an immutable list set
+     * @return an immutable list set of the first occurrence of each element, in order, or self if there are no duplicates
+     */
+    public static <E> ImmutableListSet<E> unique(ImmutableListSet<E> self) {
+        final Seen seen = new Seen();
+        return OrderedPSet.from(self).findAll(new Predicate<E>() {
+            public boolean test(E e) {
+                return seen.add(e);
+            }
+        });
+    }
+
+    // the elements seen so far, hashed by a key which is the same for all elements Groovy's ==
+    // finds equal, and then compared by == as in the GDK. A character, or a string of one
+    // character, is == to both its code and its string, so it is looked up and recorded under both:
+    private static final class Seen {
+        private final HashMap<Object, ArrayList<Object>> buckets = new HashMap<Object, ArrayList<Object>>();
+
+        // whether e is equal to no element seen before:
+        boolean add(Object e) {
+            if (e instanceof Character || (e instanceof String || e instanceof GString) && e.toString().length() == 1) {
+                final String string = e.toString();
+                final Object number = numberKey(string.charAt(0));
+                if (contains(number, e) || contains(string, e))
+                    return false;
+                record(number, e);
+                record(string, e);
+                return true;
+            }
+            Object key = e;
+            if (e instanceof Number)
+                key = numberKey(((Number) e).doubleValue());
+            else if (e instanceof GString)
+                key = e.toString();
+            if (contains(key, e))
+                return false;
+            record(key, e);
+            return true;
+        }
+
+        // numbers Groovy finds equal have the same double value, and 0.0 == -0.0:
+        private static Object numberKey(double d) {
+            return d == 0 ? 0.0 : d;
+        }
+
+        private boolean contains(Object key, Object e) {
+            final ArrayList<Object> bucket = buckets.get(key);
+            if (bucket != null) {
+                for (Object seen : bucket) {
+                    if (DefaultTypeTransformation.compareEqual(seen, e))
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        private void record(Object key, Object e) {
+            ArrayList<Object> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<Object>(1);
+                buckets.put(key, bucket);
+            }
+            bucket.add(e);
+        }
+    }
+
+    //// SUM ////
+
+    /**
+     * Sums the elements of an immutable collection with their plus method, like
+     * {@link DefaultGroovyMethods#sum(Iterable)}, which iterates over self without copying it.
+     *
+     * @param self an immutable collection
+     * @return the sum, or null if self is empty
+     */
+    public static Object sum(ImmutableCollection<?> self) {
+        return DefaultGroovyMethods.sum((Iterable<?>) self);
+    }
+
+    /**
+     * Sums the elements of an immutable collection onto an initial value.
+     *
+     * @param self         an immutable collection
+     * @param initialValue the value to start from
+     * @return the sum
+     */
+    public static Object sum(ImmutableCollection<?> self, Object initialValue) {
+        return DefaultGroovyMethods.sum((Iterable<?>) self, initialValue);
+    }
+
+    /**
+     * Sums the results of a closure applied to every element of an immutable collection.
+     *
+     * @param self    an immutable collection
+     * @param closure the closure applied to each element
+     * @return the sum, or null if self is empty
+     */
+    public static <E> Object sum(ImmutableCollection<E> self,
+                                 @ClosureParams(FirstParam.FirstGenericType.class) Closure<?> closure) {
+        return DefaultGroovyMethods.sum((Iterable<?>) self, closure);
+    }
+
+    // calls closure with a key and a value if it takes two parameters, or with the entry otherwise:
+    private static <T> T callForEntry(Closure<T> closure, Map.Entry<?, ?> entry) {
+        if (closure.getMaximumNumberOfParameters() == 2)
+            return closure.call(entry.getKey(), entry.getValue());
+        return closure.call(entry);
+    }
+}
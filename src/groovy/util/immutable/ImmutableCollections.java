@@ -16,6 +16,18 @@
 
 package groovy.util.immutable;
 
+import org.pcollections.DoubleTreePVector;
+import org.pcollections.FingerTreePDeque;
+import org.pcollections.HashPMap;
+import org.pcollections.IntTreePMap;
+import org.pcollections.IntTreePVector;
+import org.pcollections.LongTreePMap;
+import org.pcollections.LongTreePVector;
+import org.pcollections.MapPSet;
+import org.pcollections.OrderedPSet;
+import org.pcollections.TreePVector;
+
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -38,7 +50,7 @@ public final class ImmutableCollections {
      * @return an empty immutable deque
      */
     public static <E> ImmutableDeque<E> deque() {
-        return ImmutableDequeImpl.empty();
+        return FingerTreePDeque.empty();
     }
 
     /**
@@ -48,7 +60,19 @@ public final class ImmutableCollections {
      * @return the immutable deque
      */
     public static <E> ImmutableDeque<E> deque(Iterable<? extends E> iterable) {
-        return ImmutableDequeImpl.from(iterable);
+        return FingerTreePDeque.from(iterable);
+    }
+
+    /**
+     * Creates an immutable deque of the given elements, built in one pass.
+     *
+     * @param elements creates from
+     * @return the immutable deque
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <E> ImmutableDeque<E> dequeOf(E... elements) {
+        return FingerTreePDeque.of(elements);
     }
 
     /**
@@ -57,7 +81,7 @@ public final class ImmutableCollections {
      * @return an empty immutable list
      */
     public static <E> ImmutableList<E> list() {
-        return ImmutableListImpl.empty();
+        return TreePVector.empty();
     }
 
     /**
@@ -67,7 +91,137 @@ public final class ImmutableCollections {
      * @return the immutable list
      */
     public static <E> ImmutableList<E> list(Iterable<? extends E> iterable) {
-        return ImmutableListImpl.from(iterable);
+        return TreePVector.from(iterable);
+    }
+
+    /**
+     * Creates an immutable list of the given elements, built in one pass.
+     *
+     * @param elements creates from
+     * @return the immutable list
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <E> ImmutableList<E> listOf(E... elements) {
+        return TreePVector.of(elements);
+    }
+
+    /**
+     * Creates an immutable list from a collection, built in one pass from its array.
+     * An immutable list is returned as it is.
+     *
+     * @param collection creates from
+     * @return the immutable list
+     */
+    public static <E> ImmutableList<E> copyOf(Collection<? extends E> collection) {
+        return TreePVector.from(collection);
+    }
+
+    /**
+     * Creates an immutable list from an array, built in one pass. The array is not kept.
+     *
+     * @param array creates from
+     * @return the immutable list
+     */
+    public static <E> ImmutableList<E> copyOf(E[] array) {
+        return TreePVector.of(array);
+    }
+
+    /**
+     * Creates a builder for an immutable list, which appends elements in place
+     * rather than creating a new immutable list for every element.
+     *
+     * @return an empty list builder
+     */
+    public static <E> ImmutableListBuilder<E> listBuilder() {
+        return new ImmutableListBuilder<E>();
+    }
+
+    /**
+     * Creates an empty immutable list of unboxed int values.
+     *
+     * @return an empty immutable int list
+     */
+    public static ImmutableIntList intList() {
+        return IntTreePVector.empty();
+    }
+
+    /**
+     * Creates an immutable list of unboxed int values from an array, in linear time.
+     *
+     * @param array creates from
+     * @return the immutable int list
+     */
+    public static ImmutableIntList intList(int[] array) {
+        return IntTreePVector.from(array);
+    }
+
+    /**
+     * Creates an immutable list of unboxed int values from an iterable.
+     *
+     * @param iterable creates from
+     * @return the immutable int list
+     */
+    public static ImmutableIntList intList(Iterable<? extends Integer> iterable) {
+        return IntTreePVector.from(iterable);
+    }
+
+    /**
+     * Creates an empty immutable list of unboxed long values.
+     *
+     * @return an empty immutable long list
+     */
+    public static ImmutableLongList longList() {
+        return LongTreePVector.empty();
+    }
+
+    /**
+     * Creates an immutable list of unboxed long values from an array, in linear time.
+     *
+     * @param array creates from
+     * @return the immutable long list
+     */
+    public static ImmutableLongList longList(long[] array) {
+        return LongTreePVector.from(array);
+    }
+
+    /**
+     * Creates an immutable list of unboxed long values from an iterable.
+     *
+     * @param iterable creates from
+     * @return the immutable long list
+     */
+    public static ImmutableLongList longList(Iterable<? extends Long> iterable) {
+        return LongTreePVector.from(iterable);
+    }
+
+    /**
+     * Creates an empty immutable list of unboxed double values.
+     *
+     * @return an empty immutable double list
+     */
+    public static ImmutableDoubleList doubleList() {
+        return DoubleTreePVector.empty();
+    }
+
+    /**
+     * Creates an immutable list of unboxed double values from an array, in linear time.
+     *
+     * @param array creates from
+     * @return the immutable double list
+     */
+    public static ImmutableDoubleList doubleList(double[] array) {
+        return DoubleTreePVector.from(array);
+    }
+
+    /**
+     * Creates an immutable list of unboxed double values from an iterable.
+     *
+     * @param iterable creates from
+     * @return the immutable double list
+     */
+    public static ImmutableDoubleList doubleList(Iterable<? extends Double> iterable) {
+        return DoubleTreePVector.from(iterable);
     }
 
     /**
@@ -76,7 +230,7 @@ public final class ImmutableCollections {
      * @return an empty immutable set
      */
     public static <E> ImmutableSet<E> set() {
-        return ImmutableSetImpl.empty();
+        return MapPSet.empty();
     }
 
     /**
@@ -86,7 +240,19 @@ public final class ImmutableCollections {
      * @return the immutable set
      */
     public static <E> ImmutableSet<E> set(Iterable<? extends E> iterable) {
-        return ImmutableSetImpl.from(iterable);
+        return MapPSet.from(iterable);
+    }
+
+    /**
+     * Creates an immutable set of the given elements, built in one pass.
+     *
+     * @param elements creates from
+     * @return the immutable set
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <E> ImmutableSet<E> setOf(E... elements) {
+        return MapPSet.of(elements);
     }
 
     /**
@@ -95,7 +261,7 @@ public final class ImmutableCollections {
      * @return an empty immutable list set
      */
     public static <E> ImmutableListSet<E> listSet() {
-        return ImmutableListSetImpl.empty();
+        return OrderedPSet.empty();
     }
 
     /**
@@ -105,7 +271,19 @@ public final class ImmutableCollections {
      * @return the immutable list set
      */
     public static <E> ImmutableListSet<E> listSet(Iterable<? extends E> iterable) {
-        return ImmutableListSetImpl.from(iterable);
+        return OrderedPSet.from(iterable);
+    }
+
+    /**
+     * Creates an immutable list set of the given elements, built in one pass.
+     *
+     * @param elements creates from
+     * @return the immutable list set
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <E> ImmutableListSet<E> listSetOf(E... elements) {
+        return OrderedPSet.of(elements);
     }
 
     /**
@@ -114,7 +292,7 @@ public final class ImmutableCollections {
      * @return an empty immutable map
      */
     public static <K, V> ImmutableMap<K, V> map() {
-        return ImmutableMapImpl.empty();
+        return HashPMap.empty();
     }
 
     /**
@@ -124,6 +302,101 @@ public final class ImmutableCollections {
      * @return the immutable map
      */
     public static <K, V> ImmutableMap<K, V> map(Map<? extends K, ? extends V> map) {
-        return ImmutableMapImpl.from(map);
+        return HashPMap.from(map);
+    }
+
+    /**
+     * Creates an immutable map of one entry.
+     *
+     * @return the immutable map
+     */
+    public static <K, V> ImmutableMap<K, V> mapOf(K k1, V v1) {
+        return HashPMap.singleton(k1, v1);
+    }
+
+    /**
+     * Creates an immutable map of 2 entries, built in one pass. A later key replaces an equal earlier one.
+     *
+     * @return the immutable map
+     */
+    public static <K, V> ImmutableMap<K, V> mapOf(K k1, V v1, K k2, V v2) {
+        return HashPMap.<K, V>empty().asTransient().put(k1, v1).put(k2, v2).persistent();
+    }
+
+    /**
+     * Creates an immutable map of 3 entries, built in one pass. A later key replaces an equal earlier one.
+     *
+     * @return the immutable map
+     */
+    public static <K, V> ImmutableMap<K, V> mapOf(K k1, V v1, K k2, V v2, K k3, V v3) {
+        return HashPMap.<K, V>empty().asTransient().put(k1, v1).put(k2, v2).put(k3, v3).persistent();
+    }
+
+    /**
+     * Creates an immutable map of 4 entries, built in one pass. A later key replaces an equal earlier one.
+     *
+     * @return the immutable map
+     */
+    public static <K, V> ImmutableMap<K, V> mapOf(K k1, V v1, K k2, V v2, K k3, V v3, K k4, V v4) {
+        return HashPMap.<K, V>empty().asTransient().put(k1, v1).put(k2, v2)
+                .put(k3, v3).put(k4, v4).persistent();
+    }
+
+    /**
+     * Creates an immutable map of 5 entries, built in one pass. A later key replaces an equal earlier one.
+     *
+     * @return the immutable map
+     */
+    public static <K, V> ImmutableMap<K, V> mapOf(K k1, V v1, K k2, V v2, K k3, V v3, K k4, V v4, K k5, V v5) {
+        return HashPMap.<K, V>empty().asTransient().put(k1, v1).put(k2, v2)
+                .put(k3, v3).put(k4, v4).put(k5, v5).persistent();
+    }
+
+    /**
+     * Creates an empty immutable map with integer keys, which can be used without boxing keys.
+     *
+     * @return an empty immutable int map
+     */
+    public static <V> ImmutableIntMap<V> intMap() {
+        return IntTreePMap.empty();
+    }
+
+    /**
+     * Creates an immutable map with integer keys from a mutable map.
+     *
+     * @param map creates from
+     * @return the immutable int map
+     */
+    public static <V> ImmutableIntMap<V> intMap(Map<? extends Integer, ? extends V> map) {
+        return IntTreePMap.<V>from(map);
+    }
+
+    /**
+     * Creates an empty immutable map with long keys, which can be used without boxing keys.
+     *
+     * @return an empty immutable long map
+     */
+    public static <V> ImmutableLongMap<V> longMap() {
+        return LongTreePMap.empty();
+    }
+
+    /**
+     * Creates an immutable map with long keys from a mutable map.
+     *
+     * @param map creates from
+     * @return the immutable long map
+     */
+    public static <V> ImmutableLongMap<V> longMap(Map<? extends Long, ? extends V> map) {
+        return LongTreePMap.<V>from(map);
+    }
+
+    /**
+     * Creates a builder for an immutable map, which puts entries in place
+     * rather than creating a new immutable map for every entry.
+     *
+     * @return an empty map builder
+     */
+    public static <K, V> ImmutableMapBuilder<K, V> mapBuilder() {
+        return new ImmutableMapBuilder<K, V>();
     }
 }
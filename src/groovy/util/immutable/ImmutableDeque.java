@@ -22,6 +22,8 @@ import java.util.Deque;
  * An immutable and persistent deque.
  * The elements can be null.
  * <p/>
+ * Elements can also be looked up by index, and deques can be split and joined in O(log n) time.
+ * <p/>
  * You can create an instance by {@code [] as ImmutableDeque}.
  * <p/>
  * Example:
@@ -108,7 +110,7 @@ public interface ImmutableDeque<E> extends ImmutableCollection<E>, Deque<E> {
     E last();
 
     /**
-     * Complexity: amortized O(1), worst-case O(n)
+     * Complexity: amortized O(1), worst-case O(log n)
      *
      * @return a deque without its first element
      * @throws java.util.NoSuchElementException if this deque is empty
@@ -116,7 +118,7 @@ public interface ImmutableDeque<E> extends ImmutableCollection<E>, Deque<E> {
     ImmutableDeque<E> tail();
 
     /**
-     * Complexity: amortized O(1), worst-case O(n)
+     * Complexity: amortized O(1), worst-case O(log n)
      *
      * @return a deque without its last element
      * @throws java.util.NoSuchElementException if this deque is empty
@@ -124,7 +126,7 @@ public interface ImmutableDeque<E> extends ImmutableCollection<E>, Deque<E> {
     ImmutableDeque<E> init();
 
     /**
-     * Complexity: O(1)
+     * Complexity: amortized O(1), worst-case O(log n)
      *
      * @param element an element to append
      * @return a deque which contains the element and all of the elements of this
@@ -132,7 +134,7 @@ public interface ImmutableDeque<E> extends ImmutableCollection<E>, Deque<E> {
     ImmutableDeque<E> plus(E element);
 
     /**
-     * Complexity: O(1)
+     * Complexity: amortized O(1), worst-case O(log n)
      *
      * @param element an element to append
      * @return a deque which contains the element and all of the elements of this
@@ -140,7 +142,7 @@ public interface ImmutableDeque<E> extends ImmutableCollection<E>, Deque<E> {
     ImmutableDeque<E> plusFirst(E element);
 
     /**
-     * Complexity: O(1)
+     * Complexity: amortized O(1), worst-case O(log n)
      *
      * @param element an element to append
      * @return a deque which contains the element and all of the elements of this
@@ -148,7 +150,7 @@ public interface ImmutableDeque<E> extends ImmutableCollection<E>, Deque<E> {
     ImmutableDeque<E> plusLast(E element);
 
     /**
-     * Complexity: O(iterable.size())
+     * Complexity: O(iterable.size()), or O(log n) if iterable is another ImmutableDeque
      *
      * @param iterable elements to append
      * @return a deque which contains all of the elements of iterable and this
@@ -164,13 +166,31 @@ public interface ImmutableDeque<E> extends ImmutableCollection<E>, Deque<E> {
     ImmutableDeque<E> plusFirst(Iterable<? extends E> iterable);
 
     /**
-     * Complexity: O(iterable.size())
+     * Complexity: O(iterable.size()), or O(log n) if iterable is another ImmutableDeque
      *
      * @param iterable elements to append
      * @return a deque which contains all of the elements of iterable and this
      */
     ImmutableDeque<E> plusLast(Iterable<? extends E> iterable);
 
+    /**
+     * Complexity: O(log n)
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this deque
+     * @throws IndexOutOfBoundsException if index &lt; 0 || index &gt;= size()
+     */
+    E get(int index);
+
+    /**
+     * Complexity: O(log n)
+     *
+     * @param index the index at which the second deque starts
+     * @return a list of two deques, the first index elements of this and the rest, sharing their nodes with this
+     * @throws IndexOutOfBoundsException if index &lt; 0 || index &gt; size()
+     */
+    ImmutableList<ImmutableDeque<E>> splitAt(int index);
+
     /**
      * Complexity: O(n)
      *
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable and persistent list of int values, which are kept unboxed.
+ * <p/>
+ * You can create an instance by {@link ImmutableCollections#intList()}. {@link #asList()} gives a view
+ * of it as a list of Integers, which can be turned into an {@link ImmutableList} by
+ * {@link ImmutableCollections#list(Iterable)}.
+ * <p/>
+ * Example:
+ * <pre class="groovyTestCase">
+ * def list = ImmutableCollections.intList()
+ * list += 1
+ * assert 1 == list.getInt(0)
+ * list = list.replaceAt(0, 2)
+ * assert [2] == list.asList()
+ * </pre>
+ *
+ * @author Yu Kobayashi
+ * @since 2.4.0
+ */
+public interface ImmutableIntList {
+    /**
+     * Complexity: O(1)
+     *
+     * @return the number of elements in this list
+     */
+    int size();
+
+    /**
+     * Complexity: O(1)
+     *
+     * @return {@code true} if this list contains no elements
+     */
+    boolean isEmpty();
+
+    /**
+     * Complexity: O(log n)
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException if index &lt; 0 || index &gt;= size()
+     */
+    int getInt(int index);
+
+    /**
+     * Complexity: O(1) amortized
+     *
+     * @param element an element to append
+     * @return a list which contains all of the elements of this and the element
+     */
+    ImmutableIntList plus(int element);
+
+    /**
+     * Complexity: O(array.length), and O(n) if this is empty
+     *
+     * @param array elements to append
+     * @return a list which contains all of the elements of this and array
+     */
+    ImmutableIntList plus(int[] array);
+
+    /**
+     * Complexity: O(log n)
+     *
+     * @param index   an index to replace
+     * @param element an element to replace
+     * @return a list consisting of the elements of this with the element replaced at the specified index.
+     * @throws IndexOutOfBoundsException if index &lt; 0 || index &gt;= size()
+     */
+    ImmutableIntList replaceAt(int index, int element);
+
+    /**
+     * Complexity: O(n)
+     *
+     * @return the elements of this list, in a new array
+     */
+    int[] toIntArray();
+
+    /**
+     * Complexity: O(log n + (to - from))
+     *
+     * @param from index of the first element to copy
+     * @param to   index after the last element to copy
+     * @return the elements of this list from the specified range, in a new array
+     * @throws IndexOutOfBoundsException if from &lt; 0 || to &gt; size() || from &gt; to
+     */
+    int[] toIntArray(int from, int to);
+
+    /**
+     * Applies action to each element of this list in order, without boxing them.
+     * <p/>
+     * Complexity: O(n)
+     *
+     * @param action the action to apply
+     */
+    void forEach(IntConsumer action);
+
+    /**
+     * Complexity: O(1), and O(log n) for each element read
+     *
+     * @return an unmodifiable view of this list as a list of Integers, boxing elements as they are read
+     */
+    List<Integer> asList();
+}
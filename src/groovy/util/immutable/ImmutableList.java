@@ -18,6 +18,8 @@ package groovy.util.immutable;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * An immutable and persistent list.
@@ -60,7 +62,8 @@ public interface ImmutableList<E> extends ImmutableCollection<E>, List<E> {
     /**
      * Returns a vector consisting of the elements of this with list appended.
      * <p/>
-     * Complexity: O((log n) * list.size())
+     * Complexity: O(log n) if iterable is an ImmutableList, whose nodes are shared with the result;
+     * O(iterable.size()) otherwise
      *
      * @param iterable elements to append
      * @return a list which contains all of the elements of iterable and this
@@ -78,7 +81,8 @@ public interface ImmutableList<E> extends ImmutableCollection<E>, List<E> {
     ImmutableList<E> plusAt(int index, E element);
 
     /**
-     * Complexity: O((log n) * list.size())
+     * Complexity: O(log n) if iterable is an ImmutableList, whose nodes are shared with the result;
+     * O(log n + iterable.size()) otherwise
      *
      * @param index    an index to insert
      * @param iterable elements to insert
@@ -141,6 +145,42 @@ public interface ImmutableList<E> extends ImmutableCollection<E>, List<E> {
      */
     ImmutableList<E> subList(int start);
 
+    /**
+     * Complexity: O(log n)
+     *
+     * @param index the index at which the second list starts
+     * @return a list of two lists, subList(0, index) and subList(index), sharing their nodes with this
+     * @throws IndexOutOfBoundsException if index &lt; 0 || index &gt; size()
+     */
+    ImmutableList<ImmutableList<E>> splitAt(int index);
+
+    /**
+     * Transforms every element in parallel on the common {@link java.util.concurrent.ForkJoinPool},
+     * building the resulting list directly rather than collecting into an intermediate list.
+     * <p/>
+     * Complexity: O(n / p) with p processors
+     *
+     * @param transform applied to each element, possibly from several threads at once
+     * @return a list of the results of transform, in the order of this
+     */
+    <R> ImmutableList<R> collectParallel(Function<? super E, ? extends R> transform);
+
+    /**
+     * Like {@link #collectParallel}, with each element replaced by all elements of the iterable transform returns.
+     *
+     * @param transform applied to each element, possibly from several threads at once
+     * @return a list of the elements of the results of transform, in the order of this
+     */
+    <R> ImmutableList<R> collectManyParallel(Function<? super E, ? extends Iterable<? extends R>> transform);
+
+    /**
+     * Like {@link #collectParallel}, keeping the elements which satisfy filter.
+     *
+     * @param filter applied to each element, possibly from several threads at once
+     * @return a list of the elements of this which satisfy filter, in the order of this
+     */
+    ImmutableList<E> findAllParallel(Predicate<? super E> filter);
+
     /**
      * Always throws {@link UnsupportedOperationException}.
      */
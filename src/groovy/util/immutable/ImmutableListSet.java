@@ -16,6 +16,8 @@
 
 package groovy.util.immutable;
 
+import java.util.Collection;
+
 /**
  * An immutable and presistent list set like {@link ImmutableSet} but preserves insertion order.
  * Persistent equivalent of {@link java.util.LinkedHashSet}.
@@ -70,6 +72,14 @@ public interface ImmutableListSet<E> extends ImmutableSet<E> {
      */
     ImmutableListSet<E> minus(Iterable<?> iterable);
 
+    /**
+     * Complexity: O(n)
+     *
+     * @param collection elements to keep
+     * @return a list set which contains the elements of this which are also in collection, in the order of this
+     */
+    ImmutableListSet<E> intersect(Collection<?> collection);
+
     /**
      * Complexity: O(log n)
      *
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable;
+
+import org.pcollections.LongPMap;
+
+import java.util.Map;
+
+/**
+ * An immutable and persistent map from long keys to non-null values,
+ * which can also be used with primitive keys, without boxing them.
+ * <p/>
+ * You can create an instance by {@link ImmutableCollections#longMap()}.
+ * <p/>
+ * Example:
+ * <pre class="groovyTestCase">
+ * def map = ImmutableCollections.longMap()
+ * map += [1L: "a"]
+ * assert "a" == map[1L]
+ * map -= [1L]
+ * assert 0 == map.size()
+ * </pre>
+ *
+ * @author Yu Kobayashi
+ * @since 2.4.0
+ */
+public interface ImmutableLongMap<V> extends ImmutableMap<Long, V> {
+    /**
+     * Complexity: O(log n)
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or {@code null} if this map contains no mapping for the key
+     */
+    V get(long key);
+
+    /**
+     * Complexity: O(log n)
+     *
+     * @param key the key whose presence is to be tested
+     * @return {@code true} if this map contains a mapping for the key
+     */
+    boolean containsKey(long key);
+
+    /**
+     * Complexity: O(log n)
+     *
+     * @param key   a key
+     * @param value a non-null value
+     * @return a map with the mappings of this but with key mapped to value, like plus(Long, V) but without boxing key
+     */
+    ImmutableLongMap<V> plusLong(long key, V value);
+
+    /**
+     * Complexity: O(log n)
+     *
+     * @param key a key
+     * @return a map with the mappings of this but with no value for key
+     */
+    ImmutableLongMap<V> minus(long key);
+
+    /**
+     * Complexity: O(1), and O(n) to walk all entries
+     *
+     * @return a cursor over the entries of this map, in increasing order of their keys
+     */
+    LongPMap.Cursor<V> cursor();
+
+    ImmutableLongMap<V> plus(Long key, V value);
+
+    ImmutableLongMap<V> plus(Map<? extends Long, ? extends V> map);
+
+    ImmutableLongMap<V> minus(Object key);
+
+    ImmutableLongMap<V> minus(Iterable<?> keys);
+}
@@ -17,6 +17,8 @@
 package groovy.util.immutable;
 
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * An immutable and persistent map from non-null keys of type K to nullable values of type V.
@@ -78,6 +80,26 @@ public interface ImmutableMap<K, V> extends Map<K, V> {
      */
     ImmutableMap<K, V> minus(Iterable<?> keys);
 
+    /**
+     * Transforms every entry in parallel on the common {@link java.util.concurrent.ForkJoinPool},
+     * building the resulting map directly rather than collecting into an intermediate map.
+     * <p/>
+     * Complexity: O(n / p) with p processors
+     *
+     * @param transform applied to each entry, possibly from several threads at once
+     * @return a map of the entries transform returns; of several entries with the same key, any one may be kept
+     */
+    <K2, V2> ImmutableMap<K2, V2> collectEntriesParallel(
+            Function<? super Entry<K, V>, ? extends Entry<? extends K2, ? extends V2>> transform);
+
+    /**
+     * Like {@link #collectEntriesParallel}, keeping the entries which satisfy filter.
+     *
+     * @param filter applied to each entry, possibly from several threads at once
+     * @return a map of the entries of this which satisfy filter
+     */
+    ImmutableMap<K, V> findAllParallel(Predicate<? super Entry<K, V>> filter);
+
     /**
      * Always throws {@link UnsupportedOperationException}.
      */
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2003-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package groovy.util.immutable;
+
+import org.pcollections.HashPMap;
+
+import java.util.Map;
+
+/**
+ * A builder of immutable maps, created by {@link ImmutableCollections#mapBuilder()}.
+ * Entries are put in place, so building a map of n entries allocates far less than
+ * adding them one by one to an immutable map.
+ * <p/>
+ * A builder is not thread-safe. It can still be used after {@link #build()},
+ * without affecting the maps it has built.
+ *
+ * @author Yu Kobayashi
+ * @since 2.4.0
+ */
+public final class ImmutableMapBuilder<K, V> {
+    private HashPMap.Transient<K, V> map = HashPMap.<K, V>empty().asTransient();
+
+    ImmutableMapBuilder() {
+    }
+
+    /**
+     * Puts an entry, replacing the value of an equal key put before.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return this builder
+     */
+    public ImmutableMapBuilder<K, V> put(K key, V value) {
+        map.put(key, value);
+        return this;
+    }
+
+    /**
+     * Puts all entries of a map.
+     *
+     * @param m the entries to put
+     * @return this builder
+     */
+    public ImmutableMapBuilder<K, V> putAll(Map<? extends K, ? extends V> m) {
+        map.putAll(m);
+        return this;
+    }
+
+    /**
+     * @return the number of entries put so far
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Creates an immutable map of the entries put so far.
+     *
+     * @return the immutable map
+     */
+    public ImmutableMap<K, V> build() {
+        HashPMap<K, V> result = map.persistent();
+        map = result.asTransient();
+        return result;
+    }
+}
@@ -16,7 +16,10 @@
 
 package groovy.util.immutable;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * An immutable and persistent set, containing no duplicate elements.
@@ -31,6 +34,9 @@ import java.util.Set;
  * assert set.contains(1)
  * set -= [1]
  * assert 0 == set.size()
+ * set += [1, 2, 3]
+ * assert [2, 3] as Set == set.intersect([2, 3, 4] as ImmutableSet)
+ * assert set.isSubsetOf([0, 1, 2, 3] as ImmutableSet)
  * </pre>
  *
  * @author harold
@@ -47,7 +53,8 @@ public interface ImmutableSet<E> extends ImmutableCollection<E>, Set<E> {
     ImmutableSet<E> plus(E element);
 
     /**
-     * Complexity: O((log n) * iterable.size())
+     * Complexity: O((log n) * iterable.size()), or O(m) if iterable is an ImmutableSet
+     * which differs from this in m elements
      *
      * @param iterable contains non-null elements to append
      * @return a set which contains all of the elements of iterable and this
@@ -63,10 +70,54 @@ public interface ImmutableSet<E> extends ImmutableCollection<E>, Set<E> {
     ImmutableSet<E> minus(Object element);
 
     /**
-     * Complexity: O((log n) * iterable.size())
+     * Complexity: O((log n) * iterable.size()), or O(m) if iterable is an ImmutableSet
+     * which differs from this in m elements
      *
      * @param iterable elements to remove
      * @return this with all elements of the iterable completely removed
      */
     ImmutableSet<E> minus(Iterable<?> iterable);
+
+    /**
+     * Complexity: O(n), or O(m) if collection is an ImmutableSet which differs from this in m elements
+     *
+     * @param collection elements to keep
+     * @return a set which contains the elements of this which are also in collection
+     */
+    ImmutableSet<E> intersect(Collection<?> collection);
+
+    /**
+     * Complexity: O(n), or O(m) if collection is an ImmutableSet which differs from this in m elements
+     *
+     * @param collection elements to look up
+     * @return whether every element of this is also in collection
+     */
+    boolean isSubsetOf(Collection<?> collection);
+
+    /**
+     * Transforms every element in parallel on the common {@link java.util.concurrent.ForkJoinPool},
+     * building the resulting set directly rather than collecting into an intermediate collection.
+     * <p/>
+     * Complexity: O(n / p) with p processors
+     *
+     * @param transform applied to each element, possibly from several threads at once; must return non-null elements
+     * @return a set of the results of transform
+     */
+    <R> ImmutableSet<R> collectParallel(Function<? super E, ? extends R> transform);
+
+    /**
+     * Like {@link #collectParallel}, with each element replaced by all elements of the iterable transform returns.
+     *
+     * @param transform applied to each element, possibly from several threads at once
+     * @return a set of the elements of the results of transform
+     */
+    <R> ImmutableSet<R> collectManyParallel(Function<? super E, ? extends Iterable<? extends R>> transform);
+
+    /**
+     * Like {@link #collectParallel}, keeping the elements which satisfy filter.
+     *
+     * @param filter applied to each element, possibly from several threads at once
+     * @return a set of the elements of this which satisfy filter
+     */
+    ImmutableSet<E> findAllParallel(Predicate<? super E> filter);
 }
@@ -1,5 +1,7 @@
 package org.pcollections;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -26,6 +28,7 @@ public final class AmortizedPDeque<E> extends AbstractQueue<E> implements PDeque
 
     private final ConsPStack<E> front;
     private final ConsPStack<E> back;
+    private transient int hashCode; // computed on first use, 0 if not yet
 
     private AmortizedPDeque() {
         front = ConsPStack.empty();
@@ -123,30 +126,42 @@ public final class AmortizedPDeque<E> extends AbstractQueue<E> implements PDeque
 
     @Override
     public int hashCode() {
-        int hashCode = 0;
-        for (E e : this) {
-            hashCode += (e == null ? 0 : e.hashCode());
+        if (hashCode == 0) {
+            int hashCode = 0;
+            for (E e : this) {
+                hashCode += (e == null ? 0 : e.hashCode());
+            }
+            this.hashCode = hashCode;
         }
         return hashCode;
     }
 
-    @SuppressWarnings("unchecked")
+    // compares the elements in order, walking both deques together rather than recursing on tail():
     @Override
     public boolean equals(Object that) {
+        if (that == this)
+            return true;
         if (!(that instanceof PDeque))
             return false;
-        PDeque queue = (PDeque) that;
+        PDeque<?> queue = (PDeque<?>) that;
 
         if (size() != queue.size())
             return false;
+        if (queue instanceof AmortizedPDeque) {
+            AmortizedPDeque<?> deque = (AmortizedPDeque<?>) queue;
+            if (hashCode != 0 && deque.hashCode != 0 && hashCode != deque.hashCode)
+                return false;
+            if (front == deque.front && back == deque.back)
+                return true;
+        }
 
-        if (size() == 0) {
-            return queue.size() == 0;
-        } else {
-            Object obj1 = peek();
-            Object obj2 = queue.peek();
-            return (obj1 == null ? obj2 == null : obj1.equals(obj2)) && tail().equals(queue.tail());
+        Iterator<?> i = queue.iterator();
+        for (E e : this) {
+            Object f = i.next();
+            if (!(e == null ? f == null : e.equals(f)))
+                return false;
         }
+        return true;
     }
 
     // Worst-case O(1)
@@ -430,4 +445,12 @@ public final class AmortizedPDeque<E> extends AbstractQueue<E> implements PDeque
     public void clear() {
         throw new UnsupportedOperationException();
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.AMORTIZED_DEQUE, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
 }
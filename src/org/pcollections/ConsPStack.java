@@ -1,11 +1,18 @@
 package org.pcollections;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * A simple immutable and persistent stack. Elements can be null.
  * <p/>
+ * Every operation walks the stack in a loop rather than recursing, so there is no limit on the
+ * size of the stack other than memory. Operations below the top copy the elements above the
+ * change and share the rest of the stack.
+ * <p/>
  * This implementation is thread-safe (assuming Java's AbstractSequentialList is thread-safe),
  * although its iterators may not be.
  *
@@ -34,17 +41,9 @@ public final class ConsPStack<E> extends AbstractSequentialList<E> implements PS
     /**
      * @return a stack consisting of the elements of list in the order of list.iterator()
      */
-    @SuppressWarnings("unchecked")
     public static <E> ConsPStack<E> from(Iterable<? extends E> list) {
-        // but that's good enough for an immutable
-        // (i.e. we can't mess someone else up by adding the wrong type to it)
-        return from(list.iterator());
-    }
-
-    private static <E> ConsPStack<E> from(Iterator<? extends E> i) {
-        if (!i.hasNext()) return empty();
-        E e = i.next();
-        return from(i).plus(e);
+        final Object[] elements = Utils.asCollection(list).toArray();
+        return ConsPStack.<E>empty().pushAll(elements, 0, elements.length);
     }
 
     private final E first;
@@ -67,6 +66,31 @@ public final class ConsPStack<E> extends AbstractSequentialList<E> implements PS
         size = 1 + rest.size;
     }
 
+    /**
+     * @return elements[from..to-1] pushed onto this, keeping their order, so elements[from] is on top
+     */
+    @SuppressWarnings("unchecked")
+    private ConsPStack<E> pushAll(final Object[] elements, final int from, final int to) {
+        ConsPStack<E> result = this;
+        for (int i = to - 1; i >= from; i--) {
+            result = new ConsPStack<E>((E) elements[i], result);
+        }
+        return result;
+    }
+
+    /**
+     * @return a stack of the first n elements of this on top of stack
+     */
+    private ConsPStack<E> prefixOnto(final int n, final ConsPStack<E> stack) {
+        final Object[] elements = new Object[n];
+        ConsPStack<E> node = this;
+        for (int i = 0; i < n; i++) {
+            elements[i] = node.first;
+            node = node.rest;
+        }
+        return stack.pushAll(elements, 0, n);
+    }
+
     public int size() {
         return size;
     }
@@ -104,6 +128,62 @@ public final class ConsPStack<E> extends AbstractSequentialList<E> implements PS
         };
     }
 
+    @Override
+    public Spliterator<E> spliterator() {
+        return new StackSpliterator<E>(this, size);
+    }
+
+    // a stack cannot be split in the middle without walking to it, so trySplit walks over
+    // the first half, which is still cheaper than copying it as the default spliterator does:
+    private static final class StackSpliterator<E> implements Spliterator<E> {
+        private ConsPStack<E> stack;
+        private int n; // remaining elements of stack
+
+        StackSpliterator(ConsPStack<E> stack, int n) {
+            this.stack = stack;
+            this.n = n;
+        }
+
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (n == 0)
+                return false;
+            action.accept(stack.first);
+            stack = stack.rest;
+            n--;
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            for (; n > 0; n--) {
+                action.accept(stack.first);
+                stack = stack.rest;
+            }
+        }
+
+        public Spliterator<E> trySplit() {
+            if (n < 2)
+                return null;
+            final int half = n / 2;
+            final StackSpliterator<E> prefix = new StackSpliterator<E>(stack, half);
+            for (int i = 0; i < half; i++)
+                stack = stack.rest;
+            n -= half;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return n;
+        }
+
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+        }
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public ListIterator<E> listIterator(int index) {
@@ -118,18 +198,18 @@ public final class ConsPStack<E> extends AbstractSequentialList<E> implements PS
         if (start == end) // want nothing
             return empty();
 
-        if (start == 0) // want the current element
-            return new ConsPStack<E>(first, rest.subList(0, end - 1));
-
-        // otherwise, don't want the current element:
-        return rest.subList(start - 1, end - 1);
+        return subList(start).prefixOnto(end - start, ConsPStack.<E>empty());
     }
 
     public ConsPStack<E> subList(int start) {
         if (start < 0 || start > size)
             throw new IndexOutOfBoundsException();
 
-        return start == 0 ? this : rest.subList(start - 1);
+        ConsPStack<E> node = this;
+        for (; start > 0; start--) {
+            node = node.rest;
+        }
+        return node;
     }
 
     public ConsPStack<E> plus(E element) {
@@ -156,7 +236,7 @@ public final class ConsPStack<E> extends AbstractSequentialList<E> implements PS
         if (index == 0) // insert at beginning
             return plus(element);
 
-        return new ConsPStack<E>(first, rest.plus(index - 1, element));
+        return prefixOnto(index, subList(index).plus(element));
     }
 
     public ConsPStack<E> plusAll(int i, Collection<? extends E> list) {
@@ -164,41 +244,42 @@ public final class ConsPStack<E> extends AbstractSequentialList<E> implements PS
     }
 
     public ConsPStack<E> plusAll(int index, Iterable<? extends E> iterable) {
-        // TODO inefficient if iterable is empty
         if (index < 0 || index > size)
             throw new IndexOutOfBoundsException();
 
         if (index == 0)
             return plusAll(iterable);
 
-        return new ConsPStack<E>(first, rest.plusAll(index - 1, iterable));
+        final ConsPStack<E> rest = subList(index);
+        final ConsPStack<E> newRest = rest.plusAll(iterable);
+        return newRest.size == rest.size ? this : prefixOnto(index, newRest);
     }
 
     public ConsPStack<E> with(int index, E element) {
         if (index < 0 || index >= size)
             throw new IndexOutOfBoundsException();
 
-        if (index == 0)
-            return objectEquals(first, element) ? this : new ConsPStack<E>(element, rest);
+        if (objectEquals(get(index), element))
+            return this;
 
-        ConsPStack<E> newRest = rest.with(index - 1, element);
-        return newRest == rest ? this : new ConsPStack<E>(first, newRest);
+        return prefixOnto(index, subList(index + 1).plus(element));
     }
 
     public ConsPStack<E> minus(int index) {
-        return minus(get(index));
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException();
+
+        return prefixOnto(index, subList(index + 1));
     }
 
     public ConsPStack<E> minus(Object element) {
-        if (size == 0)
-            return this;
-
-        if (objectEquals(first, element)) // found it
-            return rest; // don't recurse (only remove one)
-
-        // otherwise keep looking:
-        ConsPStack<E> newRest = rest.minus(element);
-        return newRest == rest ? this : new ConsPStack<E>(first, newRest);
+        int index = 0;
+        for (E e : this) {
+            if (objectEquals(e, element)) // found it
+                return minus(index); // only remove one
+            index++;
+        }
+        return this;
     }
 
     public ConsPStack<E> minusAll(Collection<?> list) {
@@ -210,12 +291,21 @@ public final class ConsPStack<E> extends AbstractSequentialList<E> implements PS
             return this;
 
         Collection<?> list = Utils.asCollection(iterable);
-        if (list.contains(first)) // get rid of current element
-            return rest.minusAll(list); // recursively delete all
-
-        // either way keep looking:
-        ConsPStack<E> newRest = rest.minusAll(list);
-        return newRest == rest ? this : new ConsPStack<E>(first, newRest);
+        // the elements kept before the last one removed are copied, and the rest is shared:
+        final Object[] kept = new Object[size];
+        int n = 0, keptBefore = 0, index = 0, last = -1;
+        for (E e : this) {
+            if (list.contains(e)) {
+                keptBefore = n;
+                last = index;
+            } else {
+                kept[n++] = e;
+            }
+            index++;
+        }
+        if (last == -1)
+            return this;
+        return subList(last + 1).pushAll(kept, 0, keptBefore);
     }
 
     private static boolean objectEquals(Object a, Object b) {
@@ -275,4 +365,12 @@ public final class ConsPStack<E> extends AbstractSequentialList<E> implements PS
     public E remove(int index) {
         throw new UnsupportedOperationException();
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.STACK, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
 }
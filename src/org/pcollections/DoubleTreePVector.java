@@ -0,0 +1,216 @@
+package org.pcollections;
+
+import groovy.util.immutable.ImmutableDoubleList;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * An immutable and persistent vector of double values.
+ * <p/>
+ * Unlike a {@link TreePVector} of Doubles, the elements are not boxed but packed into leaves which are
+ * double arrays of 32 elements, with a separate tail leaf holding the last elements. Querying and setting
+ * take O(log32 n) time and appending takes amortized O(1) time. The elements can also be read as
+ * a list of Doubles through {@link #asList()}.
+ * <p/>
+ * This is also the {@link ImmutableDoubleList} of {@link groovy.util.immutable.ImmutableCollections}.
+ * <p/>
+ * This implementation is thread-safe.
+ *
+ * @author Yu Kobayashi
+ */
+public final class DoubleTreePVector extends PrimitiveTrie<double[], DoubleTreePVector> implements ImmutableDoubleList {
+    private static final DoubleTreePVector EMPTY = new DoubleTreePVector();
+    private static final long serialVersionUID = -1437786405228873616L;
+
+    /**
+     * @return an empty vector
+     */
+    public static DoubleTreePVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return empty().plus(e)
+     */
+    public static DoubleTreePVector singleton(double e) {
+        return EMPTY.plus(e);
+    }
+
+    /**
+     * Builds the vector in linear time.
+     *
+     * @return a vector of the elements of array
+     */
+    public static DoubleTreePVector from(double[] array) {
+        return EMPTY.plusRange(array, 0, array.length);
+    }
+
+    /**
+     * Builds the vector in linear time.
+     *
+     * @return a vector of the elements of array from start (inclusive) to end (exclusive)
+     */
+    public static DoubleTreePVector from(double[] array, int start, int end) {
+        if (start < 0 || end > array.length || start > end)
+            throw new IndexOutOfBoundsException();
+        return EMPTY.plusRange(array, start, end);
+    }
+
+    /**
+     * @return a vector of the elements of iterable, which must not contain null
+     */
+    public static DoubleTreePVector from(Iterable<? extends Double> iterable) {
+        final Collection<? extends Double> collection = Utils.asCollection(iterable);
+        final double[] array = new double[collection.size()];
+        int i = 0;
+        for (Double e : collection)
+            array[i++] = e;
+        return from(array);
+    }
+
+    private DoubleTreePVector() { // EMPTY constructor
+        super(new double[0]);
+    }
+
+    private DoubleTreePVector(int size, Object[] root, int shift, double[] tail) {
+        super(size, root, shift, tail);
+    }
+
+    DoubleTreePVector create(int size, Object[] root, int shift, double[] tail) {
+        return new DoubleTreePVector(size, root, shift, tail);
+    }
+
+    double[] newLeaf(int length) {
+        return new double[length];
+    }
+
+    boolean leafEquals(double[] a, double[] b) {
+        return Arrays.equals(a, b);
+    }
+
+    Object boxed(int index) {
+        return get(index);
+    }
+
+    public double get(int index) {
+        return leafFor(index)[index & MASK];
+    }
+
+    public double getDouble(int index) {
+        return get(index);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this with e appended
+     */
+    public DoubleTreePVector plus(double e) {
+        final double[] leaf = grownTail();
+        leaf[leaf.length - 1] = e;
+        return withGrownTail(leaf);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this with the elements of array appended
+     */
+    public DoubleTreePVector plusAll(double[] array) {
+        return plusRange(array, 0, array.length);
+    }
+
+    public DoubleTreePVector plus(double[] array) {
+        return plusAll(array);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this, with the element at index replaced by e
+     * @throws IndexOutOfBoundsException if index &lt; 0 || index &gt;= this.size()
+     */
+    public DoubleTreePVector with(int index, double e) {
+        if (Double.doubleToLongBits(get(index)) == Double.doubleToLongBits(e))
+            return this;
+        final double[] leaf = leafFor(index).clone();
+        leaf[index & MASK] = e;
+        return withLeaf(index, leaf);
+    }
+
+    public DoubleTreePVector replaceAt(int index, double e) {
+        return with(index, e);
+    }
+
+    /**
+     * @return the elements of this, in a new array
+     */
+    public double[] toArray() {
+        return copyOf(0, size);
+    }
+
+    /**
+     * @return the elements of this from start (inclusive) to end (exclusive), in a new array
+     */
+    public double[] toArray(int start, int end) {
+        return copyOf(start, end);
+    }
+
+    public double[] toDoubleArray() {
+        return toArray();
+    }
+
+    public double[] toDoubleArray(int from, int to) {
+        return toArray(from, to);
+    }
+
+    /**
+     * Copies the elements of this from start (inclusive) to end (exclusive) into dest,
+     * a leaf at a time.
+     */
+    public void copyTo(int start, int end, double[] dest, int destPos) {
+        copyInto(start, end, dest, destPos);
+    }
+
+    /**
+     * Applies action to each element of this in order, without boxing them.
+     */
+    public void forEach(DoubleConsumer action) {
+        for (int index = 0; index < size; index += WIDTH) {
+            for (double e : leafFor(index))
+                action.accept(e);
+        }
+    }
+
+    /**
+     * @return an unmodifiable view of this as a list of Doubles, which boxes elements as they are read
+     */
+    public List<Double> asList() {
+        return new BoxedList<Double>(this);
+    }
+
+    @Override
+    public int hashCode() { // same as for a List of Doubles
+        if (hashCode == 0) {
+            int h = 1;
+            for (int index = 0; index < size; index += WIDTH) {
+                for (double e : leafFor(index))
+                    h = 31 * h + (int) (Double.doubleToLongBits(e) ^ (Double.doubleToLongBits(e) >>> 32));
+            }
+            hashCode = h;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof DoubleTreePVector && sameElements((DoubleTreePVector) o);
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.DOUBLE_VECTOR, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
+}
@@ -26,7 +26,7 @@ public final class Empty {
     }
 
     public static <E> PDeque<E> deque() {
-        return AmortizedPDeque.empty();
+        return FingerTreePDeque.empty();
     }
 
     public static <E> PVector<E> vector() {
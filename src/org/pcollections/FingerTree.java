@@ -0,0 +1,477 @@
+package org.pcollections;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A non-public utility class for the 2-3 finger trees of {@link FingerTreePDeque}, annotated with sizes.
+ * <p/>
+ * A tree is empty, a single item, or deep: a digit of 1 to 4 items at each end, and in between
+ * a tree whose items are nodes of 2 or 3 items of this tree. The items of the outermost tree
+ * are the elements, and are at level 0; the items of a tree at level l are nodes at level l,
+ * each holding items at level l-1. Since elements may be anything, including null, the level
+ * is passed to every method which looks at items, rather than marking them.
+ * <p/>
+ * Adding or removing an item at either end takes amortized O(1) time, since a digit only
+ * overflows into or borrows from the middle tree once in a while, and worst-case O(log n) time.
+ * Finding an index, splitting and concatenating take O(log n) time. See:
+ * <p/>
+ * Ralf Hinze and Ross Paterson, "Finger trees: a simple general-purpose data structure",
+ * Journal of Functional Programming 16(2):197-217, 2006.
+ * <p/>
+ * Trees and nodes are never modified once made, so this class is thread-safe.
+ *
+ * @author Yu Kobayashi
+ */
+final class FingerTree {
+    private static final Object[] NO_ITEMS = new Object[0];
+
+    static final Tree EMPTY = new Empty();
+
+    // not instantiable:
+    private FingerTree() {
+    }
+
+    // a node of 2 or 3 items, with the number of elements under it:
+    static final class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int size;
+        final Object[] items;
+
+        Node(final int size, final Object[] items) {
+            this.size = size;
+            this.items = items;
+        }
+    }
+
+    abstract static class Tree implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int size; // the number of elements in this
+
+        Tree(final int size) {
+            this.size = size;
+        }
+    }
+
+    private static final class Empty extends Tree {
+        private static final long serialVersionUID = 1L;
+
+        Empty() {
+            super(0);
+        }
+
+        // keeps EMPTY unique:
+        private Object readResolve() {
+            return EMPTY;
+        }
+    }
+
+    private static final class Single extends Tree {
+        private static final long serialVersionUID = 1L;
+
+        final Object item;
+
+        Single(final int size, final Object item) {
+            super(size);
+            this.item = item;
+        }
+    }
+
+    private static final class Deep extends Tree {
+        private static final long serialVersionUID = 1L;
+
+        final Object[] prefix, suffix; // 1 to 4 items each
+        final Tree middle; // of nodes at level + 1
+
+        Deep(final int size, final Object[] prefix, final Tree middle, final Object[] suffix) {
+            super(size);
+            this.prefix = prefix;
+            this.middle = middle;
+            this.suffix = suffix;
+        }
+    }
+
+    //// SIZES ////
+
+    private static int size(final Object item, final int level) {
+        return level == 0 ? 1 : ((Node) item).size;
+    }
+
+    private static int size(final Object[] items, final int level) {
+        if (level == 0)
+            return items.length;
+        int size = 0;
+        for (Object item : items) {
+            size += ((Node) item).size;
+        }
+        return size;
+    }
+
+    private static Tree single(final Object item, final int level) {
+        return new Single(size(item, level), item);
+    }
+
+    private static Tree deep(final Object[] prefix, final Tree middle, final Object[] suffix, final int level) {
+        return new Deep(size(prefix, level) + middle.size + size(suffix, level), prefix, middle, suffix);
+    }
+
+    // a node at level + 1 of the items from..to-1:
+    private static Node node(final Object[] items, final int from, final int to, final int level) {
+        final Object[] nodeItems = Arrays.copyOfRange(items, from, to);
+        return new Node(size(nodeItems, level), nodeItems);
+    }
+
+    //// ENDS ////
+
+    static Object first(final Tree tree) {
+        return tree instanceof Single ? ((Single) tree).item : ((Deep) tree).prefix[0];
+    }
+
+    static Object last(final Tree tree) {
+        if (tree instanceof Single)
+            return ((Single) tree).item;
+        final Object[] suffix = ((Deep) tree).suffix;
+        return suffix[suffix.length - 1];
+    }
+
+    static Tree pushFront(final Tree tree, final Object item, final int level) {
+        if (tree instanceof Empty)
+            return single(item, level);
+        final int size = tree.size + size(item, level);
+        if (tree instanceof Single)
+            return new Deep(size, new Object[]{item}, EMPTY, new Object[]{((Single) tree).item});
+        final Deep deep = (Deep) tree;
+        final Object[] prefix = deep.prefix;
+        if (prefix.length < 4) {
+            final Object[] newPrefix = new Object[prefix.length + 1];
+            newPrefix[0] = item;
+            System.arraycopy(prefix, 0, newPrefix, 1, prefix.length);
+            return new Deep(size, newPrefix, deep.middle, deep.suffix);
+        }
+        // the last three items of a full prefix move into the middle as a node:
+        return new Deep(size, new Object[]{item, prefix[0]},
+                pushFront(deep.middle, node(prefix, 1, 4, level), level + 1), deep.suffix);
+    }
+
+    static Tree pushBack(final Tree tree, final Object item, final int level) {
+        if (tree instanceof Empty)
+            return single(item, level);
+        final int size = tree.size + size(item, level);
+        if (tree instanceof Single)
+            return new Deep(size, new Object[]{((Single) tree).item}, EMPTY, new Object[]{item});
+        final Deep deep = (Deep) tree;
+        final Object[] suffix = deep.suffix;
+        if (suffix.length < 4) {
+            final Object[] newSuffix = Arrays.copyOf(suffix, suffix.length + 1);
+            newSuffix[suffix.length] = item;
+            return new Deep(size, deep.prefix, deep.middle, newSuffix);
+        }
+        // the first three items of a full suffix move into the middle as a node:
+        return new Deep(size, deep.prefix,
+                pushBack(deep.middle, node(suffix, 0, 3, level), level + 1), new Object[]{suffix[3], item});
+    }
+
+    /**
+     * @return tree without its first item, which must be nonempty
+     */
+    static Tree popFront(final Tree tree, final int level) {
+        if (tree instanceof Single)
+            return EMPTY;
+        final Deep deep = (Deep) tree;
+        return deepLeft(Arrays.copyOfRange(deep.prefix, 1, deep.prefix.length), deep.middle, deep.suffix, level);
+    }
+
+    /**
+     * @return tree without its last item, which must be nonempty
+     */
+    static Tree popBack(final Tree tree, final int level) {
+        if (tree instanceof Single)
+            return EMPTY;
+        final Deep deep = (Deep) tree;
+        return deepRight(deep.prefix, deep.middle, Arrays.copyOf(deep.suffix, deep.suffix.length - 1), level);
+    }
+
+    // a deep tree whose prefix may be empty, in which case it is refilled from the middle:
+    private static Tree deepLeft(final Object[] prefix, final Tree middle, final Object[] suffix, final int level) {
+        if (prefix.length > 0)
+            return deep(prefix, middle, suffix, level);
+        if (middle instanceof Empty)
+            return fromItems(suffix, level);
+        return new Deep(middle.size + size(suffix, level),
+                ((Node) first(middle)).items, popFront(middle, level + 1), suffix);
+    }
+
+    // a deep tree whose suffix may be empty, in which case it is refilled from the middle:
+    private static Tree deepRight(final Object[] prefix, final Tree middle, final Object[] suffix, final int level) {
+        if (suffix.length > 0)
+            return deep(prefix, middle, suffix, level);
+        if (middle instanceof Empty)
+            return fromItems(prefix, level);
+        return new Deep(size(prefix, level) + middle.size,
+                prefix, popBack(middle, level + 1), ((Node) last(middle)).items);
+    }
+
+    // a tree of 0 to 4 items:
+    private static Tree fromItems(final Object[] items, final int level) {
+        switch (items.length) {
+            case 0:
+                return EMPTY;
+            case 1:
+                return single(items[0], level);
+            default:
+                final int half = items.length / 2;
+                return deep(Arrays.copyOf(items, half), EMPTY,
+                        Arrays.copyOfRange(items, half, items.length), level);
+        }
+    }
+
+    // a tree of the items, built bottom-up in O(n) time rather than pushing them one at a time;
+    // the items are copied, so the array is not kept:
+    static Tree fromArray(final Object[] items, final int level) {
+        final int n = items.length;
+        if (n <= 4)
+            return fromItems(items, level);
+        // two items at each end, unless that would leave a single item for the middle:
+        final int prefixLength = n == 5 ? 3 : 2;
+        final int suffixFrom = n - 2;
+        final int m = suffixFrom - prefixLength;
+        // the middle items go into nodes of 3, with the last one or two nodes of 2:
+        final Object[] nodes = new Object[(m + 2) / 3];
+        final int threes = nodes.length - (3 * nodes.length - m);
+        int from = prefixLength;
+        for (int i = 0; i < nodes.length; i++) {
+            final int to = from + (i < threes ? 3 : 2);
+            nodes[i] = node(items, from, to, level);
+            from = to;
+        }
+        return deep(Arrays.copyOf(items, prefixLength), fromArray(nodes, level + 1),
+                Arrays.copyOfRange(items, suffixFrom, n), level);
+    }
+
+    //// INDEXING ////
+
+    /**
+     * @return the element at index, with 0 <= index < tree.size
+     */
+    static Object get(final Tree tree, int index, final int level) {
+        if (tree instanceof Single)
+            return get(((Single) tree).item, index, level);
+        final Deep deep = (Deep) tree;
+        final int prefixSize = size(deep.prefix, level);
+        if (index < prefixSize)
+            return get(deep.prefix, index, level);
+        index -= prefixSize;
+        if (index < deep.middle.size)
+            return get(deep.middle, index, level + 1);
+        return get(deep.suffix, index - deep.middle.size, level);
+    }
+
+    private static Object get(final Object[] items, int index, final int level) {
+        for (Object item : items) {
+            final int size = size(item, level);
+            if (index < size)
+                return get(item, index, level);
+            index -= size;
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    private static Object get(final Object item, final int index, final int level) {
+        return level == 0 ? item : get(((Node) item).items, index, level - 1);
+    }
+
+    //// SPLITTING ////
+
+    /**
+     * @return the elements of tree before index, and those from index on, with 0 <= index <= tree.size
+     */
+    static Tree[] splitAt(final Tree tree, final int index) {
+        if (index == 0)
+            return new Tree[]{EMPTY, tree};
+        if (index == tree.size)
+            return new Tree[]{tree, EMPTY};
+        final Split split = split(tree, index, 0);
+        return new Tree[]{split.left, pushFront(split.right, split.item, 0)};
+    }
+
+    // a tree cut around the item holding an index:
+    private static final class Split {
+        final Tree left;
+        final Object item;
+        final Tree right;
+
+        Split(final Tree left, final Object item, final Tree right) {
+            this.left = left;
+            this.item = item;
+            this.right = right;
+        }
+    }
+
+    // cuts tree around the item holding index, with 0 <= index < tree.size:
+    private static Split split(final Tree tree, int index, final int level) {
+        if (tree instanceof Single)
+            return new Split(EMPTY, ((Single) tree).item, EMPTY);
+        final Deep deep = (Deep) tree;
+        final int prefixSize = size(deep.prefix, level);
+        if (index < prefixSize) {
+            final int i = itemIndex(deep.prefix, index, level);
+            return new Split(fromItems(Arrays.copyOf(deep.prefix, i), level), deep.prefix[i],
+                    deepLeft(Arrays.copyOfRange(deep.prefix, i + 1, deep.prefix.length), deep.middle, deep.suffix, level));
+        }
+        index -= prefixSize;
+        if (index < deep.middle.size) {
+            final Split middle = split(deep.middle, index, level + 1);
+            final Object[] items = ((Node) middle.item).items;
+            final int i = itemIndex(items, index - middle.left.size, level);
+            return new Split(deepRight(deep.prefix, middle.left, Arrays.copyOf(items, i), level), items[i],
+                    deepLeft(Arrays.copyOfRange(items, i + 1, items.length), middle.right, deep.suffix, level));
+        }
+        index -= deep.middle.size;
+        final int i = itemIndex(deep.suffix, index, level);
+        return new Split(deepRight(deep.prefix, deep.middle, Arrays.copyOf(deep.suffix, i), level), deep.suffix[i],
+                fromItems(Arrays.copyOfRange(deep.suffix, i + 1, deep.suffix.length), level));
+    }
+
+    // the position of the item holding index among items:
+    private static int itemIndex(final Object[] items, int index, final int level) {
+        for (int i = 0; i < items.length; i++) {
+            index -= size(items[i], level);
+            if (index < 0)
+                return i;
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    //// CONCATENATION ////
+
+    /**
+     * @return a tree of the items of left followed by those of right
+     */
+    static Tree concat(final Tree left, final Tree right) {
+        return concat(left, NO_ITEMS, right, 0);
+    }
+
+    // left, then items, then right, all at level:
+    private static Tree concat(Tree left, final Object[] items, Tree right, final int level) {
+        if (left instanceof Empty || left instanceof Single) {
+            for (int i = items.length - 1; i >= 0; i--) {
+                right = pushFront(right, items[i], level);
+            }
+            return left instanceof Single ? pushFront(right, ((Single) left).item, level) : right;
+        }
+        if (right instanceof Empty || right instanceof Single) {
+            for (Object item : items) {
+                left = pushBack(left, item, level);
+            }
+            return right instanceof Single ? pushBack(left, ((Single) right).item, level) : left;
+        }
+        // the digits along the seam, with the items between them, become nodes of the middle:
+        final Deep l = (Deep) left, r = (Deep) right;
+        final Object[] seam = new Object[l.suffix.length + items.length + r.prefix.length];
+        System.arraycopy(l.suffix, 0, seam, 0, l.suffix.length);
+        System.arraycopy(items, 0, seam, l.suffix.length, items.length);
+        System.arraycopy(r.prefix, 0, seam, l.suffix.length + items.length, r.prefix.length);
+        return new Deep(left.size + size(items, level) + right.size, l.prefix,
+                concat(l.middle, nodes(seam, level), r.middle, level + 1), r.suffix);
+    }
+
+    // 2 to 12 items grouped into nodes of 3, and of 2 where needed:
+    private static Object[] nodes(final Object[] items, final int level) {
+        final int n = items.length;
+        final Object[] nodes = new Object[(n + 2) / 3];
+        int from = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            final int remaining = n - from;
+            final int width = remaining == 2 || remaining == 4 ? 2 : 3;
+            nodes[i] = node(items, from, from + width, level);
+            from += width;
+        }
+        return nodes;
+    }
+
+    //// ITERATION ////
+
+    /**
+     * Walks the elements of a tree in order or in reverse, keeping the trees and items still to
+     * be visited on a stack, so that every tree and node is visited once.
+     */
+    static final class ElementIterator<E> implements Iterator<E> {
+        private final boolean reverse;
+        private Object[] stack = new Object[32]; // grown if ever needed
+        private int[] levels = new int[32]; // the level of each item, or ~level for a tree
+        private int depth = 0;
+
+        ElementIterator(final Tree tree, final boolean reverse) {
+            this.reverse = reverse;
+            pushTree(tree, 0);
+        }
+
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            while (depth > 0) {
+                final Object top = stack[--depth];
+                stack[depth] = null;
+                final int level = levels[depth];
+                if (level < 0) {
+                    expand((Tree) top, ~level);
+                } else if (level > 0) {
+                    pushItems(((Node) top).items, level - 1);
+                } else {
+                    return (E) top;
+                }
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void expand(final Tree tree, final int level) {
+            if (tree instanceof Single) {
+                push(((Single) tree).item, level);
+                return;
+            }
+            final Deep deep = (Deep) tree;
+            // the part visited last goes on the stack first:
+            pushItems(reverse ? deep.prefix : deep.suffix, level);
+            pushTree(deep.middle, level + 1);
+            pushItems(reverse ? deep.suffix : deep.prefix, level);
+        }
+
+        private void pushTree(final Tree tree, final int level) {
+            if (tree.size > 0)
+                push(tree, ~level);
+        }
+
+        // pushes items so that they are popped in the order of iteration:
+        private void pushItems(final Object[] items, final int level) {
+            if (reverse) {
+                for (Object item : items) {
+                    push(item, level);
+                }
+            } else {
+                for (int i = items.length - 1; i >= 0; i--) {
+                    push(items[i], level);
+                }
+            }
+        }
+
+        private void push(final Object o, final int level) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, 2 * depth);
+                levels = Arrays.copyOf(levels, 2 * depth);
+            }
+            stack[depth] = o;
+            levels[depth++] = level;
+        }
+    }
+}
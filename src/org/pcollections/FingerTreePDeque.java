@@ -0,0 +1,437 @@
+package org.pcollections;
+
+import groovy.util.immutable.ImmutableDeque;
+import groovy.util.immutable.ImmutableList;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A persistent deque backed by a 2-3 finger tree annotated with sizes.
+ * <p/>
+ * Both ends are kept within reach of the root, so elements are added and removed at either end
+ * in amortized O(1) time and worst-case O(log n) time, even if an old version of the deque is
+ * used again. The sizes make get(int), splitting and concatenation take O(log n) time, and the
+ * iterators visit every node once.
+ * <p/>
+ * This is also the {@link ImmutableDeque} of {@link groovy.util.immutable.ImmutableCollections}.
+ *
+ * @author Yu Kobayashi
+ */
+public final class FingerTreePDeque<E> extends AbstractQueue<E> implements PDeque<E>, ImmutableDeque<E>, Serializable {
+    private static final FingerTreePDeque<Object> EMPTY = new FingerTreePDeque<Object>(FingerTree.EMPTY);
+    private static final long serialVersionUID = -2497405473361539616L;
+
+    @SuppressWarnings("unchecked")
+    public static <E> FingerTreePDeque<E> empty() {
+        return (FingerTreePDeque<E>) EMPTY;
+    }
+
+    public static <E> FingerTreePDeque<E> singleton(E e) {
+        return FingerTreePDeque.<E>empty().plus(e);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> FingerTreePDeque<E> from(Iterable<? extends E> iterable) {
+        if (iterable instanceof FingerTreePDeque)
+            return (FingerTreePDeque<E>) iterable;
+        if (iterable instanceof Collection)
+            return FingerTreePDeque.<E>empty().withTree(FingerTree.fromArray(((Collection<?>) iterable).toArray(), 0));
+        return FingerTreePDeque.<E>empty().plusAll(iterable);
+    }
+
+    /**
+     * @return a deque of the given elements, built in one pass
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <E> FingerTreePDeque<E> of(E... elements) {
+        return FingerTreePDeque.<E>empty().withTree(FingerTree.fromArray(elements, 0));
+    }
+
+    private final FingerTree.Tree tree;
+    private transient int hashCode; // computed on first use, 0 if not yet
+
+    private FingerTreePDeque(FingerTree.Tree tree) {
+        this.tree = tree;
+    }
+
+    private FingerTreePDeque<E> withTree(FingerTree.Tree tree) {
+        if (tree == this.tree)
+            return this;
+        return tree.size == 0 ? FingerTreePDeque.<E>empty() : new FingerTreePDeque<E>(tree);
+    }
+
+    // Worst-case O(n) for all elements
+    @Override
+    public Iterator<E> iterator() {
+        return new FingerTree.ElementIterator<E>(tree, false);
+    }
+
+    // Worst-case O(n) for all elements
+    public Iterator<E> descendingIterator() {
+        return new FingerTree.ElementIterator<E>(tree, true);
+    }
+
+    @Override
+    public int hashCode() {
+        if (hashCode == 0) {
+            int hashCode = 0;
+            for (E e : this) {
+                hashCode += (e == null ? 0 : e.hashCode());
+            }
+            this.hashCode = hashCode;
+        }
+        return hashCode;
+    }
+
+    // compares the elements in order, walking both deques together:
+    @Override
+    public boolean equals(Object that) {
+        if (that == this)
+            return true;
+        if (!(that instanceof PDeque))
+            return false;
+        PDeque<?> queue = (PDeque<?>) that;
+
+        if (size() != queue.size())
+            return false;
+        if (queue instanceof FingerTreePDeque) {
+            FingerTreePDeque<?> deque = (FingerTreePDeque<?>) queue;
+            if (hashCode != 0 && deque.hashCode != 0 && hashCode != deque.hashCode)
+                return false;
+            if (tree == deque.tree)
+                return true;
+        }
+
+        Iterator<?> i = queue.iterator();
+        for (E e : this) {
+            Object f = i.next();
+            if (!(e == null ? f == null : e.equals(f)))
+                return false;
+        }
+        return true;
+    }
+
+    // Worst-case O(1)
+    @Override
+    public int size() {
+        return tree.size;
+    }
+
+    // Worst-case O(log n)
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException();
+        return (E) FingerTree.get(tree, index, 0);
+    }
+
+    // Worst-case O(1)
+    @SuppressWarnings("unchecked")
+    public E peekFirst() {
+        return size() == 0 ? null : (E) FingerTree.first(tree);
+    }
+
+    // Worst-case O(1)
+    public E getFirst() {
+        if (size() == 0)
+            throw new NoSuchElementException();
+        return peekFirst();
+    }
+
+    public E peek() {
+        return peekFirst();
+    }
+
+    public E element() {
+        return getFirst();
+    }
+
+    public E head() {
+        return getFirst();
+    }
+
+    public E first() {
+        return getFirst();
+    }
+
+    // Worst-case O(1)
+    @SuppressWarnings("unchecked")
+    public E peekLast() {
+        return size() == 0 ? null : (E) FingerTree.last(tree);
+    }
+
+    // Worst-case O(1)
+    public E getLast() {
+        if (size() == 0)
+            throw new NoSuchElementException();
+        return peekLast();
+    }
+
+    public E last() {
+        return getLast();
+    }
+
+    // Amortized O(1), worst-case O(log n)
+    public FingerTreePDeque<E> tail() {
+        if (size() == 0)
+            throw new NoSuchElementException();
+        return withTree(FingerTree.popFront(tree, 0));
+    }
+
+    // Amortized O(1), worst-case O(log n)
+    public FingerTreePDeque<E> init() {
+        if (size() == 0)
+            throw new NoSuchElementException();
+        return withTree(FingerTree.popBack(tree, 0));
+    }
+
+    // Amortized O(1), worst-case O(log n)
+    public FingerTreePDeque<E> plusFirst(E element) {
+        return withTree(FingerTree.pushFront(tree, element, 0));
+    }
+
+    // Amortized O(k)
+    public FingerTreePDeque<E> plusFirst(Iterable<? extends E> iterable) {
+        FingerTree.Tree tree = this.tree;
+        for (E e : iterable) {
+            tree = FingerTree.pushFront(tree, e, 0);
+        }
+        return withTree(tree);
+    }
+
+    // Amortized O(1), worst-case O(log n)
+    public FingerTreePDeque<E> plusLast(E element) {
+        return withTree(FingerTree.pushBack(tree, element, 0));
+    }
+
+    /**
+     * Another FingerTreePDeque is appended by {@link #concat}.
+     */
+    @SuppressWarnings("unchecked")
+    public FingerTreePDeque<E> plusLast(Iterable<? extends E> iterable) {
+        if (iterable instanceof FingerTreePDeque)
+            return concat((FingerTreePDeque<? extends E>) iterable);
+        FingerTree.Tree tree = this.tree;
+        for (E e : iterable) {
+            tree = FingerTree.pushBack(tree, e, 0);
+        }
+        return withTree(tree);
+    }
+
+    public FingerTreePDeque<E> plus(E element) {
+        return plusLast(element);
+    }
+
+    public FingerTreePDeque<E> plusAll(Iterable<? extends E> iterable) {
+        return plusLast(iterable);
+    }
+
+    public FingerTreePDeque<E> plusAll(Collection<? extends E> iterable) {
+        return plusAll((Iterable<? extends E>) iterable);
+    }
+
+    public FingerTreePDeque<E> plus(Iterable<? extends E> iterable) {
+        return plusAll(iterable);
+    }
+
+    /**
+     * Joins the trees of this and other, making new nodes only along the seam between them.
+     * <p/>
+     * Complexity: O(log min(size(), other.size()))
+     *
+     * @return a deque of the elements of this followed by those of other
+     */
+    @SuppressWarnings("unchecked")
+    public FingerTreePDeque<E> concat(FingerTreePDeque<? extends E> other) {
+        if (other.size() == 0)
+            return this;
+        if (size() == 0)
+            return (FingerTreePDeque<E>) other;
+        return new FingerTreePDeque<E>(FingerTree.concat(tree, other.tree));
+    }
+
+    /**
+     * Complexity: O(log n)
+     *
+     * @return a deque of the first n elements of this
+     * @throws IndexOutOfBoundsException if n &lt; 0 || n &gt; size()
+     */
+    public FingerTreePDeque<E> take(int n) {
+        return withTree(split(n)[0]);
+    }
+
+    /**
+     * Complexity: O(log n)
+     *
+     * @return a deque of the elements of this after the first n
+     * @throws IndexOutOfBoundsException if n &lt; 0 || n &gt; size()
+     */
+    public FingerTreePDeque<E> drop(int n) {
+        return withTree(split(n)[1]);
+    }
+
+    // Worst-case O(log n)
+    public ImmutableList<ImmutableDeque<E>> splitAt(int index) {
+        FingerTree.Tree[] parts = split(index);
+        return TreePVector.<ImmutableDeque<E>>empty().plus(withTree(parts[0])).plus(withTree(parts[1]));
+    }
+
+    private FingerTree.Tree[] split(int index) {
+        if (index < 0 || index > size())
+            throw new IndexOutOfBoundsException();
+        return FingerTree.splitAt(tree, index);
+    }
+
+    // Worst-case O(n), to find the element, and O(log n) to cut it out
+    public FingerTreePDeque<E> minus(Object element) {
+        int index = 0;
+        for (E e : this) {
+            if (e == null ? element == null : e.equals(element)) {
+                FingerTree.Tree[] parts = FingerTree.splitAt(tree, index);
+                return withTree(FingerTree.concat(parts[0], FingerTree.popFront(parts[1], 0)));
+            }
+            index++;
+        }
+        return this;
+    }
+
+    // Worst-case O(n) lookups in iterable
+    public FingerTreePDeque<E> minusAll(Iterable<?> iterable) {
+        Collection<?> c = Utils.asCollection(iterable);
+        FingerTree.Tree tree = FingerTree.EMPTY;
+        for (E e : this) {
+            if (!c.contains(e))
+                tree = FingerTree.pushBack(tree, e, 0);
+        }
+        return tree.size == size() ? this : withTree(tree);
+    }
+
+    public FingerTreePDeque<E> minusAll(Collection<?> iterable) {
+        return minusAll((Iterable<?>) iterable);
+    }
+
+    public FingerTreePDeque<E> minus(Iterable<?> iterable) {
+        return minusAll(iterable);
+    }
+
+    @Deprecated
+    public boolean offer(E o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public E poll() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public void addFirst(E e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public void addLast(E e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public boolean offerFirst(E e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public boolean offerLast(E e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public E removeFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public E removeLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public E pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public E pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public boolean removeFirstOccurrence(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public boolean removeLastOccurrence(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public void push(E e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public E pop() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean add(E e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean addAll(Collection<? extends E> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.DEQUE, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
+}
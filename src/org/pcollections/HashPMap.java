@@ -1,24 +1,33 @@
 package org.pcollections;
 
+import groovy.util.immutable.ImmutableMap;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * An immutable and persistent map from non-null keys to nullable values.
  * <p/>
- * This map uses a given integer map to map hashcodes to lists of elements
- * with the same hashcode. Thus if all elements have the same hashcode, performance
- * is reduced to that of an association list.
+ * This map is backed by a hash array mapped trie, which branches 32 ways on the hashcodes
+ * of the keys and stores keys and values inline in its nodes. Lookups therefore take
+ * O(log32 n) steps. Elements with the same hashcode are kept in a flat list, so if all
+ * elements have the same hashcode, performance is reduced to that of an association list.
  * <p/>
  * This implementation is thread-safe (assuming Java's AbstractMap and AbstractSet are thread-safe),
  * although its iterators may not be.
+ * <p/>
+ * This is also the {@link ImmutableMap} of {@link groovy.util.immutable.ImmutableCollections}.
  *
  * @author harold
  * @author Yu Kobayashi
  */
-public final class HashPMap<K, V> extends AbstractMap<K, V> implements PMap<K, V>, Serializable {
-    private static final HashPMap<Object, Object> EMPTY = HashPMap.empty(IntTreePMap.<PSequence<Entry<Object, Object>>>empty());
-    private static final long serialVersionUID = -3538508895284495077L;
+public final class HashPMap<K, V> extends AbstractMap<K, V> implements PMap<K, V>, ImmutableMap<K, V>, Serializable {
+    private static final HashPMap<Object, Object> EMPTY = new HashPMap<Object, Object>(HashTrie.empty());
+    private static final long serialVersionUID = 5497424281536451364L;
 
     /**
      * @return an empty map
@@ -36,26 +45,41 @@ public final class HashPMap<K, V> extends AbstractMap<K, V> implements PMap<K, V
     }
 
     /**
-     * @return empty().plus(map)
+     * @return empty().plus(map), or map itself if it is already a HashPMap
      */
+    @SuppressWarnings("unchecked")
     public static <K, V> HashPMap<K, V> from(Map<? extends K, ? extends V> map) {
+        if (map instanceof HashPMap)
+            return (HashPMap<K, V>) map;
         return HashPMap.<K, V>empty().plusAll(map);
     }
 
     /**
-     * @return a map backed by an empty version of intMap, i.e. backed by intMap.minusAll(intMap.keySet())
+     * The hashcodes are no longer kept in an integer map, so intMap is ignored.
+     *
+     * @return an empty map
+     * @deprecated use {@link #empty()}
      */
+    @Deprecated
     public static <K, V> HashPMap<K, V> empty(PMap<Integer, PSequence<Entry<K, V>>> intMap) {
-        return new HashPMap<K, V>(intMap.minus(intMap.keySet()), 0);
+        return empty();
     }
 
-    private final PMap<Integer, PSequence<Entry<K, V>>> intMap;
-    private final int size;
+    private final HashTrie<K, V> root;
 
     // not externally instantiable (or subclassable):
-    private HashPMap(PMap<Integer, PSequence<Entry<K, V>>> intMap, int size) {
-        this.intMap = intMap;
-        this.size = size;
+    private HashPMap(HashTrie<K, V> root) {
+        this.root = root;
+    }
+
+    private HashPMap<K, V> withRoot(HashTrie<K, V> root) {
+        if (root == this.root) return this;
+        return fromRoot(root);
+    }
+
+    static <K, V> HashPMap<K, V> fromRoot(HashTrie<K, V> root) {
+        if (root.size() == 0) return empty();
+        return new HashPMap<K, V>(root);
     }
 
     // this cache variable is thread-safe since assignment in Java is atomic:
@@ -67,12 +91,17 @@ public final class HashPMap<K, V> extends AbstractMap<K, V> implements PMap<K, V
                 // REQUIRED METHODS OF AbstractSet //
                 @Override
                 public int size() {
-                    return size;
+                    return root.size();
                 }
 
                 @Override
                 public Iterator<Entry<K, V>> iterator() {
-                    return new SequenceIterator<Entry<K, V>>(intMap.values().iterator());
+                    return root.iterator();
+                }
+
+                @Override
+                public Spliterator<Entry<K, V>> spliterator() {
+                    return root.entrySpliterator();
                 }
 
                 // OVERRIDDEN METHODS OF AbstractSet //
@@ -87,105 +116,302 @@ public final class HashPMap<K, V> extends AbstractMap<K, V> implements PMap<K, V
         return entrySet;
     }
 
+    // this cache variable is thread-safe since assignment in Java is atomic:
+    private transient Set<K> keySet;
+
+    @Override
+    public Set<K> keySet() {
+        if (keySet == null)
+            keySet = new AbstractSet<K>() {
+                @Override
+                public int size() {
+                    return root.size();
+                }
+
+                @Override
+                public Iterator<K> iterator() {
+                    return root.keyIterator();
+                }
+
+                @Override
+                public Spliterator<K> spliterator() {
+                    return root.keySpliterator();
+                }
+
+                @Override
+                public boolean contains(Object key) {
+                    return containsKey(key);
+                }
+
+                @Override
+                public int hashCode() {
+                    return root.keyHashSum();
+                }
+            };
+        return keySet;
+    }
+
+    // this cache variable is thread-safe since assignment in Java is atomic:
+    private transient Collection<V> values;
+
+    @Override
+    public Collection<V> values() {
+        if (values == null)
+            values = new AbstractCollection<V>() {
+                @Override
+                public int size() {
+                    return root.size();
+                }
+
+                @Override
+                public Iterator<V> iterator() {
+                    return root.valueIterator();
+                }
+
+                @Override
+                public Spliterator<V> spliterator() {
+                    return root.valueSpliterator();
+                }
+            };
+        return values;
+    }
+
+    // walks the entries without making an Entry for each:
+    HashTrie.Cursor<K, V> cursor() {
+        return root.cursor();
+    }
 
     public int size() {
-        return size;
+        return root.size();
+    }
+
+    /**
+     * The hash code is kept up to date by every update, so this takes O(1) time.
+     */
+    @Override
+    public int hashCode() {
+        return root.entryHashSum();
+    }
+
+    /**
+     * Another HashPMap is compared by size and hash code first, and then node by node,
+     * skipping any nodes the two maps share.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (o instanceof HashPMap)
+            return HashTrie.equal(root, ((HashPMap<?, ?>) o).root, true);
+        return super.equals(o);
+    }
+
+    // whether the key sets of this and map are equal, in the same way:
+    boolean keysEqual(HashPMap<?, ?> map) {
+        return HashTrie.equal(root, map.root, false);
+    }
+
+    // the following compare the tries node by node as well, reusing any sub-trie which is not changed:
+
+    // the entries of this whose keys are in map:
+    HashPMap<K, V> retainKeys(HashPMap<?, ?> map) {
+        return withRoot(HashTrie.intersect(root, map.root));
+    }
+
+    // the entries of this whose keys are not in map:
+    HashPMap<K, V> removeKeys(HashPMap<?, ?> map) {
+        return withRoot(HashTrie.difference(root, map.root));
+    }
+
+    // whether all keys of this are in map:
+    boolean keysSubsetOf(HashPMap<?, ?> map) {
+        return HashTrie.subset(root, map.root);
     }
 
     public boolean containsKey(Object key) {
-        return keyIndexIn(getEntries(key.hashCode()), key) != -1;
+        return root.containsKey(key, key.hashCode());
     }
 
     public V get(Object key) {
-        PSequence<Entry<K, V>> entries = getEntries(key.hashCode());
-        for (Entry<K, V> entry : entries) {
-            if (entry.getKey().equals(key)) {
-                return entry.getValue();
-            }
-        }
-        return null;
+        return root.get(key, key.hashCode());
     }
 
+    /**
+     * Another HashPMap is merged node by node, reusing every sub-trie which only one of the maps has.
+     */
+    @SuppressWarnings("unchecked")
     public HashPMap<K, V> plusAll(Map<? extends K, ? extends V> map) {
-        HashPMap<K, V> result = this;
-        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
-            result = result.plus(entry.getKey(), entry.getValue());
-        }
-        return result;
+        if (map.isEmpty())
+            return this;
+        if (map instanceof HashPMap)
+            return withRoot(HashTrie.union(root, ((HashPMap<K, V>) map).root));
+        return withRoot(asTransient().putAll(map).persistentRoot());
+    }
+
+    public HashPMap<K, V> plus(Map<? extends K, ? extends V> map) {
+        return plusAll(map);
     }
 
-    public PMap<K, V> minusAll(Collection<?> keys) {
+    public HashPMap<K, V> minusAll(Collection<?> keys) {
         return minusAll((Iterable<?>) keys);
     }
 
     public HashPMap<K, V> minusAll(Iterable<?> keys) {
-        HashPMap<K, V> result = this;
+        Transient<K, V> t = asTransient();
         for (Object key : keys) {
-            result = result.minus(key);
+            t.remove(key);
         }
-        return result;
+        return withRoot(t.persistentRoot());
+    }
+
+    public HashPMap<K, V> minus(Iterable<?> keys) {
+        return minusAll(keys);
     }
 
     public HashPMap<K, V> plus(K key, V value) {
-        PSequence<Entry<K, V>> entries = getEntries(key.hashCode());
-        int size0 = entries.size();
-        int i = keyIndexIn(entries, key);
-        if (i != -1)
-            entries = entries.minus(i);
-        entries = entries.plus(new SimpleImmutableEntry<K, V>(key, value));
-        return new HashPMap<K, V>(intMap.plus(key.hashCode(), entries), size - size0 + entries.size());
+        return withRoot(root.plus(null, key, key.hashCode(), value, 0));
     }
 
     public HashPMap<K, V> minus(Object key) {
-        PSequence<Entry<K, V>> entries = getEntries(key.hashCode());
-        int i = keyIndexIn(entries, key);
-        if (i == -1) // key not in this
-            return this;
-        entries = entries.minus(i);
-        if (entries.size() == 0) // get rid of the entire hash entry
-            return new HashPMap<K, V>(intMap.minus(key.hashCode()), size - 1);
-        // otherwise replace hash entry with new smaller one:
-        return new HashPMap<K, V>(intMap.plus(key.hashCode(), entries), size - 1);
+        return withRoot(root.minus(null, key, key.hashCode(), 0));
+    }
+
+    /**
+     * Applies f to every element of source in parallel, on the common {@link java.util.concurrent.ForkJoinPool},
+     * splitting source by its spliterator. Each task builds a trie of its part of the result,
+     * and the tries are merged node by node. Of several results with the same key, the later
+     * one is kept if source is ordered, and any one otherwise.
+     *
+     * @return a map of the entries f returns
+     */
+    public static <T, K, V> HashPMap<K, V> parallelFrom(Collection<? extends T> source,
+                                                        final Function<? super T, ? extends Entry<? extends K, ? extends V>> f) {
+        return fromRoot(new Parallel.TrieBuilder<T, K, V>() {
+            @Override
+            void apply(T e, Transient<K, V> out) {
+                Entry<? extends K, ? extends V> result = f.apply(e);
+                out.put(result.getKey(), result.getValue());
+            }
+        }.invoke(Parallel.<T>spliterator(source)));
     }
 
-    private PSequence<Entry<K, V>> getEntries(int hash) {
-        PSequence<Entry<K, V>> entries = intMap.get(hash);
-        if (entries == null) return ConsPStack.empty();
-        return entries;
+    /**
+     * @return parallelFrom(entrySet(), transform)
+     */
+    public <K2, V2> HashPMap<K2, V2> collectEntriesParallel(
+            Function<? super Entry<K, V>, ? extends Entry<? extends K2, ? extends V2>> transform) {
+        return parallelFrom(entrySet(), transform);
     }
 
-    private static <K, V> int keyIndexIn(PSequence<Entry<K, V>> entries, Object key) {
-        int i = 0;
-        for (Entry<K, V> entry : entries) {
-            if (entry.getKey().equals(key))
-                return i;
-            i++;
-        }
-        return -1;
+    /**
+     * Each task builds a trie of the entries of its part which satisfy filter, and the tries are
+     * merged node by node.
+     *
+     * @return a map of the entries of this which satisfy filter
+     */
+    public HashPMap<K, V> findAllParallel(final Predicate<? super Entry<K, V>> filter) {
+        HashTrie<K, V> result = new Parallel.TrieBuilder<Entry<K, V>, K, V>() {
+            @Override
+            void apply(Entry<K, V> e, Transient<K, V> out) {
+                if (filter.test(e))
+                    out.put(e.getKey(), e.getValue());
+            }
+        }.invoke(root.entrySpliterator());
+        return result.size() == root.size() ? this : fromRoot(result);
     }
 
-    static class SequenceIterator<E> implements Iterator<E> {
-        private final Iterator<PSequence<E>> i;
-        private PSequence<E> seq = ConsPStack.empty();
+    /**
+     * Returns a transient copy of this map, which can be updated in place and turned back
+     * into a persistent map in O(1) time, to build large maps without allocating
+     * a new path of nodes for every entry. This map is not affected.
+     *
+     * @return a transient map holding the entries of this map
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<K, V>(this);
+    }
 
-        SequenceIterator(Iterator<PSequence<E>> i) {
-            this.i = i;
+    /**
+     * A mutable map which is built on the nodes of a HashPMap. Nodes created by a transient map
+     * are owned by it and updated in place, while nodes shared with persistent maps are copied
+     * the first time they are updated, so an update only allocates as many nodes as it touches
+     * for the first time.
+     * <p/>
+     * A transient map can be used until {@link #persistent()} is called, and is not thread-safe.
+     *
+     * @param <K>
+     * @param <V>
+     */
+    public static final class Transient<K, V> {
+        private HashTrie<K, V> root;
+        private Object owner = new Object();
+
+        private Transient(HashPMap<K, V> map) {
+            this.root = map.root;
+        }
+
+        private Object owner() {
+            if (owner == null)
+                throw new IllegalStateException("persistent() has already been called");
+            return owner;
         }
 
-        public boolean hasNext() {
-            return seq.size() > 0 || i.hasNext();
+        public int size() {
+            owner();
+            return root.size();
         }
 
-        public E next() {
-            if (seq.size() == 0)
-                seq = i.next();
-            final E result = seq.get(0);
-            seq = seq.subList(1, seq.size());
-            return result;
+        public boolean containsKey(Object key) {
+            owner();
+            return root.containsKey(key, key.hashCode());
         }
 
-        public void remove() {
-            throw new UnsupportedOperationException();
+        public V get(Object key) {
+            owner();
+            return root.get(key, key.hashCode());
+        }
+
+        /**
+         * @return this
+         */
+        public Transient<K, V> put(K key, V value) {
+            root = root.plus(owner(), key, key.hashCode(), value, 0);
+            return this;
+        }
+
+        /**
+         * @return this
+         */
+        public Transient<K, V> putAll(Map<? extends K, ? extends V> map) {
+            Object owner = owner();
+            for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+                K key = entry.getKey();
+                root = root.plus(owner, key, key.hashCode(), entry.getValue(), 0);
+            }
+            return this;
+        }
+
+        /**
+         * @return this
+         */
+        public Transient<K, V> remove(Object key) {
+            root = root.minus(owner(), key, key.hashCode(), 0);
+            return this;
+        }
+
+        /**
+         * Ends the use of this transient map, so that its nodes are never modified again.
+         *
+         * @return a persistent map holding the entries of this map
+         */
+        public HashPMap<K, V> persistent() {
+            return fromRoot(persistentRoot());
+        }
+
+        HashTrie<K, V> persistentRoot() {
+            owner();
+            owner = null;
+            return root;
         }
     }
 
@@ -217,4 +443,12 @@ public final class HashPMap<K, V> extends AbstractMap<K, V> implements PMap<K, V
     public void clear() {
         throw new UnsupportedOperationException();
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.MAP, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
 }
@@ -1,12 +1,11 @@
 package org.pcollections;
 
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * A static convenience class for creating efficient persistent maps.
  * <p/>
- * This class simply creates HashPMaps backed by IntTreePMaps.
+ * This class simply creates HashPMaps, which are backed by hash array mapped tries.
  *
  * @author harold
  */
@@ -15,7 +14,7 @@ public final class HashTreePMap {
     private HashTreePMap() {
     }
 
-    private static final HashPMap<Object, Object> EMPTY = HashPMap.empty(IntTreePMap.<PSequence<Entry<Object, Object>>>empty());
+    private static final HashPMap<Object, Object> EMPTY = HashPMap.empty();
 
     /**
      * @param <K>
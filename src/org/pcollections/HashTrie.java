@@ -0,0 +1,990 @@
+package org.pcollections;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A non-public utility class for persistent hash array mapped tries.
+ * <p/>
+ * Each node consumes 5 bits of the key's hash code and holds up to 32 children, using
+ * two bitmaps to compress away the empty slots: one for keys stored inline in the node
+ * and one for sub-tries. Keys and values are stored next to each other in a single array,
+ * followed by the sub-tries in reverse order. The hash code of each key is kept in a parallel
+ * int array, so keys are only compared with equals when their hash codes match, and keys never
+ * have to be rehashed when they move. Once all 32 bits of the hash are consumed, a node
+ * degenerates into a flat collision list.
+ * <p/>
+ * The trie is kept in canonical form: a sub-trie always holds at least two entries, so
+ * removing entries collapses paths back into their parent. Two tries holding the same
+ * entries therefore have the same shape.
+ * <p/>
+ * Nodes may also belong to an owner, a token held by a transient map. A transient may
+ * update the nodes it owns in place instead of copying them, which is safe as long as they
+ * are not reachable from any persistent map yet. All other nodes are copied on update.
+ * <p/>
+ * This implementation is thread-safe except for its iterators and its owned nodes.
+ * <p/>
+ * The layout follows the "compressed hash-array mapped prefix-tree" described by:
+ * <p/>
+ * Michael J. Steindorfer and Jurgen J. Vinju, "Optimizing Hash-Array Mapped Tries for
+ * Fast and Lean Immutable JVM Collections", OOPSLA 2015.
+ * <p/>
+ * Phil Bagwell, "Ideal Hash Trees", EPFL Technical Report, 2001.
+ *
+ * @author Yu Kobayashi
+ */
+final class HashTrie<K, V> implements Serializable {
+    private static final long serialVersionUID = -6040419883210751532L;
+
+    static final int BITS = 5;
+    static final int MASK = (1 << BITS) - 1;
+    // shift at which all hash bits are consumed and nodes become collision lists:
+    static final int MAX_SHIFT = 32;
+
+    // marker value:
+    static final HashTrie<Object, Object> EMPTYNODE = new HashTrie<Object, Object>(null, 0, 0, new Object[0], new int[0], 0, 0, 0);
+
+    // these are only modified in place while this node is owned by a transient map:
+    private int dataMap; // slots holding an inline key and value
+    private int nodeMap; // slots holding a sub-trie
+    private Object[] content; // k0, v0, k1, v1, ..., node1, node0
+    private int[] hashes; // hash codes of k0, k1, ...; never modified in place, so it may be shared
+    private int size; // number of entries in this and all sub-tries
+    // sums over the entries in this and all sub-tries, which are the hash codes of the key set and the map:
+    private int keyHashSum; // of key.hashCode()
+    private int entryHashSum; // of key.hashCode() ^ value.hashCode()
+    private transient Object owner; // null if no transient may modify this node
+
+    private HashTrie(final Object owner, final int dataMap, final int nodeMap,
+                     final Object[] content, final int[] hashes, final int size,
+                     final int keyHashSum, final int entryHashSum) {
+        this.owner = owner;
+        this.dataMap = dataMap;
+        this.nodeMap = nodeMap;
+        this.content = content;
+        this.hashes = hashes;
+        this.size = size;
+        this.keyHashSum = keyHashSum;
+        this.entryHashSum = entryHashSum;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrie<K, V> empty() {
+        return (HashTrie<K, V>) EMPTYNODE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int keyHashSum() {
+        return keyHashSum;
+    }
+
+    int entryHashSum() {
+        return entryHashSum;
+    }
+
+    Iterator<Entry<K, V>> iterator() {
+        return new EntryIterator<K, V>(this);
+    }
+
+    // iterate over the keys or values alone, without making an entry for each:
+
+    Iterator<K> keyIterator() {
+        return new KeyIterator<K, V>(this);
+    }
+
+    Iterator<V> valueIterator() {
+        return new ValueIterator<K, V>(this);
+    }
+
+    Cursor<K, V> cursor() {
+        return new Cursor<K, V>(this);
+    }
+
+    // split along sub-tries, for parallel streams:
+
+    Spliterator<Entry<K, V>> entrySpliterator() {
+        return new TrieSpliterator<K, V, Entry<K, V>>(this, TrieSpliterator.ENTRIES);
+    }
+
+    Spliterator<K> keySpliterator() {
+        return new TrieSpliterator<K, V, K>(this, TrieSpliterator.KEYS);
+    }
+
+    Spliterator<V> valueSpliterator() {
+        return new TrieSpliterator<K, V, V>(this, TrieSpliterator.VALUES);
+    }
+
+    boolean containsKey(final Object key, final int hash) {
+        return containsKey(key, hash, 0);
+    }
+
+    // whether the slot at bit of this node at the given shift holds key:
+    private boolean containsKey(final int bit, final Object key, final int hash, final int shift) {
+        if ((dataMap & bit) != 0)
+            return keyEquals(index(dataMap, bit), key, hash);
+        return (nodeMap & bit) != 0 && nodeAt(index(nodeMap, bit)).containsKey(key, hash, shift + BITS);
+    }
+
+    // for a sub-trie at fromShift, whose keys share the lowest fromShift bits of their hash codes:
+    private boolean containsKey(final Object key, final int hash, final int fromShift) {
+        HashTrie<K, V> node = this;
+        for (int shift = fromShift; shift < MAX_SHIFT; shift += BITS) {
+            final int bit = bitpos(hash, shift);
+            if ((node.dataMap & bit) != 0)
+                return node.keyEquals(index(node.dataMap, bit), key, hash);
+            if ((node.nodeMap & bit) == 0)
+                return false;
+            node = node.nodeAt(index(node.nodeMap, bit));
+        }
+        return node.collisionIndexOf(key) != -1;
+    }
+
+    V get(final Object key, final int hash) {
+        return get(key, hash, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V get(final Object key, final int hash, final int fromShift) {
+        HashTrie<K, V> node = this;
+        for (int shift = fromShift; shift < MAX_SHIFT; shift += BITS) {
+            final int bit = bitpos(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                final int d = index(node.dataMap, bit);
+                return node.keyEquals(d, key, hash) ? (V) node.content[2 * d + 1] : null;
+            }
+            if ((node.nodeMap & bit) == 0)
+                return null;
+            node = node.nodeAt(index(node.nodeMap, bit));
+        }
+        final int i = node.collisionIndexOf(key);
+        return i == -1 ? null : (V) node.content[i + 1];
+    }
+
+    // the instance equal to key which this sub-trie at fromShift holds, where it must hold one:
+    private Object storedKey(final Object key, final int hash, final int fromShift) {
+        HashTrie<K, V> node = this;
+        for (int shift = fromShift; shift < MAX_SHIFT; shift += BITS) {
+            final int bit = bitpos(hash, shift);
+            if ((node.dataMap & bit) != 0)
+                return node.content[2 * index(node.dataMap, bit)];
+            node = node.nodeAt(index(node.nodeMap, bit));
+        }
+        return node.content[node.collisionIndexOf(key)];
+    }
+
+    /**
+     * @param owner the owner of a transient map, whose nodes may be updated in place, or null
+     */
+    HashTrie<K, V> plus(final Object owner, final K key, final int hash, final V value, final int shift) {
+        if (shift >= MAX_SHIFT)
+            return collisionPlus(owner, key, hash, value);
+
+        final int bit = bitpos(hash, shift);
+        if ((dataMap & bit) != 0) {
+            final int d = index(dataMap, bit);
+            final int i = 2 * d;
+            if (keyEquals(d, key, hash)) { // replace the value, with no effect on shape:
+                if (value == content[i + 1])
+                    return this;
+                final int newEntryHashSum = entryHashSum - entryHash(hash, content[i + 1]) + entryHash(hash, value);
+                final Object[] newContent = editableContent(owner);
+                newContent[i + 1] = value;
+                return with(owner, dataMap, nodeMap, newContent, hashes, size, keyHashSum, newEntryHashSum);
+            }
+            // otherwise both entries move down into a new sub-trie:
+            @SuppressWarnings("unchecked")
+            final HashTrie<K, V> sub = merge(owner, (K) content[i], hashes[d], (V) content[i + 1], key, hash, value, shift + BITS);
+            return copyAndMigrateToNode(owner, bit, sub);
+        }
+        if ((nodeMap & bit) != 0) {
+            final int j = index(nodeMap, bit);
+            final HashTrie<K, V> sub = nodeAt(j);
+            final int subSize = sub.size, subKeyHashSum = sub.keyHashSum, subEntryHashSum = sub.entryHashSum;
+            final HashTrie<K, V> newSub = sub.plus(owner, key, hash, value, shift + BITS);
+            if (newSub == sub) // unchanged, or updated in place (and then so is this):
+                return withSumsChangedBy(newSub.size - subSize,
+                        newSub.keyHashSum - subKeyHashSum, newSub.entryHashSum - subEntryHashSum);
+            return withNode(owner, j, sub, newSub);
+        }
+        return copyAndInsertData(owner, bit, key, hash, value);
+    }
+
+    /**
+     * @param owner the owner of a transient map, whose nodes may be updated in place, or null
+     */
+    HashTrie<K, V> minus(final Object owner, final Object key, final int hash, final int shift) {
+        if (shift >= MAX_SHIFT)
+            return collisionMinus(owner, key);
+
+        final int bit = bitpos(hash, shift);
+        if ((dataMap & bit) != 0) {
+            final int d = index(dataMap, bit);
+            if (!keyEquals(d, key, hash))
+                return this;
+            if (size == 1)
+                return empty();
+            return copyAndRemoveData(owner, bit, d);
+        }
+        if ((nodeMap & bit) != 0) {
+            final int j = index(nodeMap, bit);
+            final HashTrie<K, V> sub = nodeAt(j);
+            final int subSize = sub.size, subKeyHashSum = sub.keyHashSum, subEntryHashSum = sub.entryHashSum;
+            final HashTrie<K, V> newSub = sub.minus(owner, key, hash, shift + BITS);
+            if (newSub == sub && newSub.size == subSize)
+                return this;
+            if (newSub.size == 1) // a single entry is always kept inline:
+                return copyAndMigrateToData(owner, bit, j, newSub.content[0], newSub.hashes[0], newSub.content[1],
+                        subKeyHashSum, subEntryHashSum);
+            if (newSub == sub)
+                return withSumsChangedBy(newSub.size - subSize,
+                        newSub.keyHashSum - subKeyHashSum, newSub.entryHashSum - subEntryHashSum);
+            return withNode(owner, j, sub, newSub);
+        }
+        return this;
+    }
+
+    /**
+     * Merges two tries node by node, reusing every sub-trie which only one of them has.
+     *
+     * @return a trie holding the entries of a and b, with the values of b for keys in both
+     */
+    static <K, V> HashTrie<K, V> union(final HashTrie<K, V> a, final HashTrie<K, V> b) {
+        return union(a, b, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> HashTrie<K, V> union(final HashTrie<K, V> a, final HashTrie<K, V> b, final int shift) {
+        if (a.size == 0 || a == b)
+            return b;
+        if (b.size == 0)
+            return a;
+        if (shift >= MAX_SHIFT) {
+            HashTrie<K, V> result = a;
+            for (int i = 0; i < b.content.length; i += 2)
+                result = result.collisionPlus(null, (K) b.content[i], b.hashes[i / 2], (V) b.content[i + 1]);
+            return result;
+        }
+
+        final int slots = a.dataMap | a.nodeMap | b.dataMap | b.nodeMap;
+        int dataMap = 0, nodeMap = 0;
+        // at most 32 slots, each holding an entry or a sub-trie:
+        final Object[] entries = new Object[2 * Integer.bitCount(slots)];
+        final int[] hashes = new int[Integer.bitCount(slots)];
+        final HashTrie<?, ?>[] nodes = new HashTrie<?, ?>[hashes.length];
+        int d = 0, j = 0, size = 0, keyHashSum = 0, entryHashSum = 0;
+        for (int rest = slots; rest != 0; rest &= rest - 1) {
+            final int bit = rest & -rest;
+            final HashTrie<K, V> node;
+            if ((b.dataMap & bit) != 0) {
+                final int bd = index(b.dataMap, bit);
+                final K key = (K) b.content[2 * bd];
+                final int hash = b.hashes[bd];
+                final V value = (V) b.content[2 * bd + 1];
+                if ((a.nodeMap & bit) != 0) {
+                    node = a.nodeAt(index(a.nodeMap, bit)).plus(null, key, hash, value, shift + BITS);
+                } else if ((a.dataMap & bit) != 0 && !a.keyEquals(index(a.dataMap, bit), key, hash)) {
+                    final int ad = index(a.dataMap, bit);
+                    node = merge(null, (K) a.content[2 * ad], a.hashes[ad], (V) a.content[2 * ad + 1],
+                            key, hash, value, shift + BITS);
+                } else { // the entry of b stays inline:
+                    node = null;
+                    entries[2 * d] = key;
+                    entries[2 * d + 1] = value;
+                    hashes[d++] = hash;
+                    dataMap |= bit;
+                    size++;
+                    keyHashSum += hash;
+                    entryHashSum += entryHash(hash, value);
+                }
+            } else if ((b.nodeMap & bit) != 0) {
+                final HashTrie<K, V> bNode = b.nodeAt(index(b.nodeMap, bit));
+                if ((a.nodeMap & bit) != 0) {
+                    node = union(a.nodeAt(index(a.nodeMap, bit)), bNode, shift + BITS);
+                } else if ((a.dataMap & bit) != 0) {
+                    final int ad = index(a.dataMap, bit);
+                    final K key = (K) a.content[2 * ad];
+                    final int hash = a.hashes[ad];
+                    node = bNode.containsKey(key, hash, shift + BITS) ? bNode
+                            : bNode.plus(null, key, hash, (V) a.content[2 * ad + 1], shift + BITS);
+                } else {
+                    node = bNode;
+                }
+            } else if ((a.dataMap & bit) != 0) {
+                final int ad = index(a.dataMap, bit);
+                node = null;
+                entries[2 * d] = a.content[2 * ad];
+                entries[2 * d + 1] = a.content[2 * ad + 1];
+                hashes[d++] = a.hashes[ad];
+                dataMap |= bit;
+                size++;
+                keyHashSum += a.hashes[ad];
+                entryHashSum += entryHash(a.hashes[ad], a.content[2 * ad + 1]);
+            } else {
+                node = a.nodeAt(index(a.nodeMap, bit));
+            }
+            if (node != null) {
+                nodes[j++] = node;
+                nodeMap |= bit;
+                size += node.size;
+                keyHashSum += node.keyHashSum;
+                entryHashSum += node.entryHashSum;
+            }
+        }
+
+        return newNode(dataMap, nodeMap, entries, hashes, d, nodes, j, size, keyHashSum, entryHashSum);
+    }
+
+    /**
+     * Intersects two tries node by node, skipping any sub-trie they share.
+     *
+     * @return a trie holding the entries of a whose keys are in b
+     */
+    static <K, V> HashTrie<K, V> intersect(final HashTrie<K, V> a, final HashTrie<?, ?> b) {
+        return retain(a, b, true, 0);
+    }
+
+    /**
+     * Subtracts a trie from another node by node, skipping any sub-trie they share.
+     *
+     * @return a trie holding the entries of a whose keys are not in b
+     */
+    static <K, V> HashTrie<K, V> difference(final HashTrie<K, V> a, final HashTrie<?, ?> b) {
+        return retain(a, b, false, 0);
+    }
+
+    // the entries of a whose keys are in b if inB is true, or not in b otherwise, or a itself if that is all of them:
+    @SuppressWarnings("unchecked")
+    private static <K, V> HashTrie<K, V> retain(final HashTrie<K, V> a, final HashTrie<?, ?> b,
+                                                final boolean inB, final int shift) {
+        if (a == b)
+            return inB ? a : HashTrie.<K, V>empty();
+        if (a.size == 0 || b.size == 0)
+            return inB ? HashTrie.<K, V>empty() : a;
+        if (shift >= MAX_SHIFT) {
+            HashTrie<K, V> result = a;
+            for (int i = 0; i < a.content.length; i += 2) {
+                if ((b.collisionIndexOf(a.content[i]) != -1) != inB)
+                    result = result.collisionMinus(null, a.content[i]);
+            }
+            return result;
+        }
+
+        final int slots = a.dataMap | a.nodeMap;
+        int dataMap = 0, nodeMap = 0;
+        final Object[] entries = new Object[2 * Integer.bitCount(slots)];
+        final int[] hashes = new int[Integer.bitCount(slots)];
+        final HashTrie<?, ?>[] nodes = new HashTrie<?, ?>[hashes.length];
+        int d = 0, j = 0, size = 0, keyHashSum = 0, entryHashSum = 0;
+        for (int rest = slots; rest != 0; rest &= rest - 1) {
+            final int bit = rest & -rest;
+            if ((a.dataMap & bit) != 0) {
+                final int ad = index(a.dataMap, bit);
+                if (b.containsKey(bit, a.content[2 * ad], a.hashes[ad], shift) == inB) {
+                    entries[2 * d] = a.content[2 * ad];
+                    entries[2 * d + 1] = a.content[2 * ad + 1];
+                    hashes[d++] = a.hashes[ad];
+                    dataMap |= bit;
+                    size++;
+                    keyHashSum += a.hashes[ad];
+                    entryHashSum += entryHash(a.hashes[ad], a.content[2 * ad + 1]);
+                }
+                continue;
+            }
+            HashTrie<K, V> node = a.nodeAt(index(a.nodeMap, bit));
+            if ((b.nodeMap & bit) != 0) {
+                node = retain(node, b.nodeAt(index(b.nodeMap, bit)), inB, shift + BITS);
+            } else if ((b.dataMap & bit) != 0) { // at most one key of the sub-trie is in b:
+                final int bd = index(b.dataMap, bit);
+                final Object key = b.content[2 * bd];
+                final int hash = b.hashes[bd];
+                if (!inB) {
+                    node = node.minus(null, key, hash, shift + BITS);
+                } else if (node.containsKey(key, hash, shift + BITS)) {
+                    entries[2 * d] = node.storedKey(key, hash, shift + BITS);
+                    entries[2 * d + 1] = node.get(key, hash, shift + BITS);
+                    hashes[d++] = hash;
+                    dataMap |= bit;
+                    size++;
+                    keyHashSum += hash;
+                    entryHashSum += entryHash(hash, entries[2 * d - 1]);
+                    continue;
+                } else {
+                    continue;
+                }
+            } else if (inB) {
+                continue;
+            }
+            if (node.size == 1) { // a single entry is always kept inline:
+                entries[2 * d] = node.content[0];
+                entries[2 * d + 1] = node.content[1];
+                hashes[d++] = node.hashes[0];
+                dataMap |= bit;
+            } else if (node.size > 1) {
+                nodes[j++] = node;
+                nodeMap |= bit;
+            }
+            size += node.size;
+            keyHashSum += node.keyHashSum;
+            entryHashSum += node.entryHashSum;
+        }
+        if (size == a.size)
+            return a;
+        return newNode(dataMap, nodeMap, entries, hashes, d, nodes, j, size, keyHashSum, entryHashSum);
+    }
+
+    /**
+     * Compares two tries node by node, skipping any sub-trie they share.
+     *
+     * @return whether all keys of a are in b
+     */
+    static boolean subset(final HashTrie<?, ?> a, final HashTrie<?, ?> b) {
+        return subset(a, b, 0);
+    }
+
+    private static boolean subset(final HashTrie<?, ?> a, final HashTrie<?, ?> b, final int shift) {
+        if (a == b || a.size == 0)
+            return true;
+        if (a.size > b.size)
+            return false;
+        if (shift >= MAX_SHIFT) {
+            for (int i = 0; i < a.content.length; i += 2) {
+                if (b.collisionIndexOf(a.content[i]) == -1)
+                    return false;
+            }
+            return true;
+        }
+        // a sub-trie holds at least two keys, so b needs a sub-trie in the same slot:
+        if (((a.dataMap | a.nodeMap) & ~(b.dataMap | b.nodeMap)) != 0 || (a.nodeMap & b.dataMap) != 0)
+            return false;
+        for (int rest = a.dataMap; rest != 0; rest &= rest - 1) {
+            final int bit = rest & -rest;
+            final int ad = index(a.dataMap, bit);
+            if (!b.containsKey(bit, a.content[2 * ad], a.hashes[ad], shift))
+                return false;
+        }
+        for (int rest = a.nodeMap; rest != 0; rest &= rest - 1) {
+            final int bit = rest & -rest;
+            if (!subset(a.nodeAt(index(a.nodeMap, bit)), b.nodeAt(index(b.nodeMap, bit)), shift + BITS))
+                return false;
+        }
+        return true;
+    }
+
+    // a node of the first d entries and first j sub-tries, which were collected in slot order:
+    private static <K, V> HashTrie<K, V> newNode(final int dataMap, final int nodeMap,
+                                                 final Object[] entries, final int[] hashes, final int d,
+                                                 final HashTrie<?, ?>[] nodes, final int j,
+                                                 final int size, final int keyHashSum, final int entryHashSum) {
+        final Object[] content = new Object[2 * d + j];
+        System.arraycopy(entries, 0, content, 0, 2 * d);
+        for (int k = 0; k < j; k++)
+            content[content.length - 1 - k] = nodes[k];
+        final int[] newHashes = new int[d];
+        System.arraycopy(hashes, 0, newHashes, 0, d);
+        return new HashTrie<K, V>(null, dataMap, nodeMap, content, newHashes, size, keyHashSum, entryHashSum);
+    }
+
+    //// NODE HELPERS ////
+
+    private static int bitpos(final int hash, final int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(final int bitmap, final int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    // whether the d-th inline key is key, comparing the cached hash code before calling equals:
+    private boolean keyEquals(final int d, final Object key, final int hash) {
+        return hashes[d] == hash && key.equals(content[2 * d]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private HashTrie<K, V> nodeAt(final int j) {
+        return (HashTrie<K, V>) content[content.length - 1 - j];
+    }
+
+    private boolean isOwnedBy(final Object owner) {
+        return owner != null && this.owner == owner;
+    }
+
+    // content itself if owner may update this in place, or a copy of it otherwise:
+    private Object[] editableContent(final Object owner) {
+        return isOwnedBy(owner) ? content : content.clone();
+    }
+
+    // this with the given fields, updated in place if owner may do so:
+    private HashTrie<K, V> with(final Object owner, final int dataMap, final int nodeMap,
+                                final Object[] content, final int[] hashes, final int size,
+                                final int keyHashSum, final int entryHashSum) {
+        if (!isOwnedBy(owner))
+            return new HashTrie<K, V>(owner, dataMap, nodeMap, content, hashes, size, keyHashSum, entryHashSum);
+        this.dataMap = dataMap;
+        this.nodeMap = nodeMap;
+        this.content = content;
+        this.hashes = hashes;
+        this.size = size;
+        this.keyHashSum = keyHashSum;
+        this.entryHashSum = entryHashSum;
+        return this;
+    }
+
+    // called after a sub-trie was updated in place, which means this is owned as well:
+    private HashTrie<K, V> withSumsChangedBy(final int sizeDelta, final int keyHashDelta, final int entryHashDelta) {
+        size += sizeDelta;
+        keyHashSum += keyHashDelta;
+        entryHashSum += entryHashDelta;
+        return this;
+    }
+
+    // the contribution of an entry to the hash code of a map, as in Map.Entry.hashCode():
+    private static int entryHash(final int hash, final Object value) {
+        return hash ^ (value == null ? 0 : value.hashCode());
+    }
+
+    private static int[] insertHash(final int[] hashes, final int d, final int hash) {
+        final int[] newHashes = new int[hashes.length + 1];
+        System.arraycopy(hashes, 0, newHashes, 0, d);
+        newHashes[d] = hash;
+        System.arraycopy(hashes, d, newHashes, d + 1, hashes.length - d);
+        return newHashes;
+    }
+
+    private static int[] removeHash(final int[] hashes, final int d) {
+        final int[] newHashes = new int[hashes.length - 1];
+        System.arraycopy(hashes, 0, newHashes, 0, d);
+        System.arraycopy(hashes, d + 1, newHashes, d, hashes.length - d - 1);
+        return newHashes;
+    }
+
+    private static <K, V> HashTrie<K, V> merge(final Object owner,
+                                               final K key0, final int hash0, final V value0,
+                                               final K key1, final int hash1, final V value1,
+                                               final int shift) {
+        final int keyHashSum = hash0 + hash1;
+        final int entryHashSum = entryHash(hash0, value0) + entryHash(hash1, value1);
+        if (shift >= MAX_SHIFT)
+            return new HashTrie<K, V>(owner, 0, 0, new Object[]{key0, value0, key1, value1}, new int[]{hash0, hash1}, 2,
+                    keyHashSum, entryHashSum);
+
+        final int slot0 = (hash0 >>> shift) & MASK;
+        final int slot1 = (hash1 >>> shift) & MASK;
+        if (slot0 == slot1) // still the same prefix, go one level deeper:
+            return new HashTrie<K, V>(owner, 0, 1 << slot0,
+                    new Object[]{merge(owner, key0, hash0, value0, key1, hash1, value1, shift + BITS)}, new int[0], 2,
+                    keyHashSum, entryHashSum);
+
+        // otherwise both fit inline, ordered by their slots:
+        if (slot0 < slot1)
+            return new HashTrie<K, V>(owner, (1 << slot0) | (1 << slot1), 0,
+                    new Object[]{key0, value0, key1, value1}, new int[]{hash0, hash1}, 2, keyHashSum, entryHashSum);
+        return new HashTrie<K, V>(owner, (1 << slot0) | (1 << slot1), 0,
+                new Object[]{key1, value1, key0, value0}, new int[]{hash1, hash0}, 2, keyHashSum, entryHashSum);
+    }
+
+    // replaces the j-th sub-trie, which was not updated in place, with node:
+    private HashTrie<K, V> withNode(final Object owner, final int j, final HashTrie<K, V> old, final HashTrie<K, V> node) {
+        final Object[] newContent = editableContent(owner);
+        newContent[content.length - 1 - j] = node;
+        return with(owner, dataMap, nodeMap, newContent, hashes, size - old.size + node.size,
+                keyHashSum - old.keyHashSum + node.keyHashSum, entryHashSum - old.entryHashSum + node.entryHashSum);
+    }
+
+    private HashTrie<K, V> copyAndInsertData(final Object owner, final int bit, final K key, final int hash, final V value) {
+        final int d = index(dataMap, bit);
+        final int i = 2 * d;
+        final Object[] newContent = new Object[content.length + 2];
+        System.arraycopy(content, 0, newContent, 0, i);
+        newContent[i] = key;
+        newContent[i + 1] = value;
+        System.arraycopy(content, i, newContent, i + 2, content.length - i);
+        return with(owner, dataMap | bit, nodeMap, newContent, insertHash(hashes, d, hash), size + 1,
+                keyHashSum + hash, entryHashSum + entryHash(hash, value));
+    }
+
+    private HashTrie<K, V> copyAndRemoveData(final Object owner, final int bit, final int d) {
+        final int i = 2 * d;
+        final Object[] newContent = new Object[content.length - 2];
+        System.arraycopy(content, 0, newContent, 0, i);
+        System.arraycopy(content, i + 2, newContent, i, content.length - i - 2);
+        return with(owner, dataMap ^ bit, nodeMap, newContent, removeHash(hashes, d), size - 1,
+                keyHashSum - hashes[d], entryHashSum - entryHash(hashes[d], content[i + 1]));
+    }
+
+    // replaces the inline entry at bit with a sub-trie holding it:
+    private HashTrie<K, V> copyAndMigrateToNode(final Object owner, final int bit, final HashTrie<K, V> node) {
+        final int d = index(dataMap, bit);
+        final int i = 2 * d;
+        // the sub-trie goes at its reversed position among the other sub-tries:
+        final int j = content.length - 2 - index(nodeMap, bit);
+        final Object[] newContent = new Object[content.length - 1];
+        System.arraycopy(content, 0, newContent, 0, i);
+        System.arraycopy(content, i + 2, newContent, i, j - i);
+        newContent[j] = node;
+        System.arraycopy(content, j + 2, newContent, j + 1, content.length - j - 2);
+        return with(owner, dataMap ^ bit, nodeMap | bit, newContent, removeHash(hashes, d), size + 1,
+                keyHashSum - hashes[d] + node.keyHashSum,
+                entryHashSum - entryHash(hashes[d], content[i + 1]) + node.entryHashSum);
+    }
+
+    // replaces the sub-trie at bit (the j-th sub-trie), whose sums were as given, with a single inline entry:
+    private HashTrie<K, V> copyAndMigrateToData(final Object owner, final int bit, final int j,
+                                                final Object key, final int hash, final Object value,
+                                                final int subKeyHashSum, final int subEntryHashSum) {
+        final int d = index(dataMap, bit);
+        final int i = 2 * d;
+        final int nodePos = content.length - 1 - j;
+        final Object[] newContent = new Object[content.length + 1];
+        System.arraycopy(content, 0, newContent, 0, i);
+        newContent[i] = key;
+        newContent[i + 1] = value;
+        System.arraycopy(content, i, newContent, i + 2, nodePos - i);
+        System.arraycopy(content, nodePos + 1, newContent, nodePos + 2, content.length - nodePos - 1);
+        return with(owner, dataMap | bit, nodeMap ^ bit, newContent, insertHash(hashes, d, hash), size - 1,
+                keyHashSum - subKeyHashSum + hash, entryHashSum - subEntryHashSum + entryHash(hash, value));
+    }
+
+    //// COLLISION LISTS ////
+    // all keys of a collision list have the same hash code, so only equals is called:
+
+    private int collisionIndexOf(final Object key) {
+        for (int i = 0; i < content.length; i += 2) {
+            if (key.equals(content[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    private HashTrie<K, V> collisionPlus(final Object owner, final K key, final int hash, final V value) {
+        final int i = collisionIndexOf(key);
+        if (i != -1) {
+            if (value == content[i + 1])
+                return this;
+            final int newEntryHashSum = entryHashSum - entryHash(hash, content[i + 1]) + entryHash(hash, value);
+            final Object[] newContent = editableContent(owner);
+            newContent[i + 1] = value;
+            return with(owner, 0, 0, newContent, hashes, size, keyHashSum, newEntryHashSum);
+        }
+        final Object[] newContent = new Object[content.length + 2];
+        System.arraycopy(content, 0, newContent, 0, content.length);
+        newContent[content.length] = key;
+        newContent[content.length + 1] = value;
+        return with(owner, 0, 0, newContent, insertHash(hashes, hashes.length, hash), size + 1,
+                keyHashSum + hash, entryHashSum + entryHash(hash, value));
+    }
+
+    private HashTrie<K, V> collisionMinus(final Object owner, final Object key) {
+        final int i = collisionIndexOf(key);
+        if (i == -1)
+            return this;
+        final Object[] newContent = new Object[content.length - 2];
+        System.arraycopy(content, 0, newContent, 0, i);
+        System.arraycopy(content, i + 2, newContent, i, content.length - i - 2);
+        return with(owner, 0, 0, newContent, removeHash(hashes, i / 2), size - 1,
+                keyHashSum - hashes[i / 2], entryHashSum - entryHash(hashes[i / 2], content[i + 1]));
+    }
+
+    //// EQUALITY ////
+
+    /**
+     * Tries are kept in canonical form, so tries holding equal keys have the same shape,
+     * and can be compared node by node, skipping any sub-trie they share.
+     *
+     * @param values whether to compare the values as well as the keys
+     * @return whether a and b hold equal keys, mapped to equal values if values is true
+     */
+    static boolean equal(final HashTrie<?, ?> a, final HashTrie<?, ?> b, final boolean values) {
+        if (a == b)
+            return true;
+        if (a.size != b.size || a.keyHashSum != b.keyHashSum || values && a.entryHashSum != b.entryHashSum)
+            return false;
+        if (a.dataMap != b.dataMap || a.nodeMap != b.nodeMap)
+            return false;
+        if ((a.dataMap | a.nodeMap) == 0)
+            return collisionEqual(a, b, values);
+        for (int d = 0; d < a.hashes.length; d++) {
+            if (a.hashes[d] != b.hashes[d] || !a.content[2 * d].equals(b.content[2 * d]))
+                return false;
+            if (values && !valueEquals(a.content[2 * d + 1], b.content[2 * d + 1]))
+                return false;
+        }
+        for (int j = Integer.bitCount(a.nodeMap) - 1; j >= 0; j--) {
+            if (!equal(a.nodeAt(j), b.nodeAt(j), values))
+                return false;
+        }
+        return true;
+    }
+
+    // collision lists are not ordered, so each entry of a is looked up in b:
+    private static boolean collisionEqual(final HashTrie<?, ?> a, final HashTrie<?, ?> b, final boolean values) {
+        for (int i = 0; i < a.content.length; i += 2) {
+            final int j = b.collisionIndexOf(a.content[i]);
+            if (j == -1 || values && !valueEquals(a.content[i + 1], b.content[j + 1]))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean valueEquals(final Object v, final Object w) {
+        return v == null ? w == null : v == w || v.equals(w);
+    }
+
+
+    //// entrySet().iterator() IMPLEMENTATION ////
+    // walks the inline entries of each node, depth first, without allocating:
+    static final class Cursor<K, V> {
+        // the trie is at most 8 levels deep (7 bitmap levels and a collision list):
+        private final HashTrie<?, ?>[] nodes = new HashTrie<?, ?>[MAX_SHIFT / BITS + 2];
+        private final int[] nextNode = new int[nodes.length]; // next sub-trie to visit, per level
+        private int depth = 0;
+        private HashTrie<?, ?> current; // node whose inline entries are being walked
+        private int next, end; // positions in current.content
+        private int position = -1; // position of the current entry in current.content, or -1
+
+        Cursor(final HashTrie<K, V> root) {
+            nodes[0] = root;
+            setCurrent(root);
+        }
+
+        /**
+         * @return whether there is an entry after the current one, without moving to it
+         */
+        boolean hasNext() {
+            if (next < end)
+                return true;
+            // descend to the next node with inline entries, if any:
+            while (depth >= 0) {
+                final HashTrie<?, ?> node = nodes[depth];
+                if (nextNode[depth] < Integer.bitCount(node.nodeMap)) {
+                    final HashTrie<?, ?> sub = node.nodeAt(nextNode[depth]++);
+                    nodes[++depth] = sub;
+                    nextNode[depth] = 0;
+                    setCurrent(sub);
+                    if (next < end)
+                        return true;
+                } else {
+                    nodes[depth--] = null;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves to the next entry.
+         *
+         * @return false if there is none
+         */
+        boolean next() {
+            if (!hasNext()) {
+                position = -1;
+                return false;
+            }
+            position = next;
+            next += 2;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        K key() {
+            if (position == -1)
+                throw new NoSuchElementException();
+            return (K) current.content[position];
+        }
+
+        @SuppressWarnings("unchecked")
+        V value() {
+            if (position == -1)
+                throw new NoSuchElementException();
+            return (V) current.content[position + 1];
+        }
+
+        private void setCurrent(final HashTrie<?, ?> node) {
+            current = node;
+            next = 0;
+            // collision lists are all entries, bitmap nodes have sub-tries at the end:
+            end = (node.dataMap | node.nodeMap) == 0 ? node.content.length : 2 * Integer.bitCount(node.dataMap);
+        }
+    }
+
+    //// spliterator() IMPLEMENTATION ////
+    // walks the inline entries of a node and then a range of its sub-tries, which is halved by trySplit:
+    private static final class TrieSpliterator<K, V, T> implements Spliterator<T> {
+        static final int KEYS = 0, VALUES = 1, ENTRIES = 2;
+
+        private final int kind;
+        private HashTrie<K, V> node;
+        private int next, end; // remaining inline entries, as positions in node.content
+        private int nextNode, endNode; // remaining sub-tries of node
+        private Cursor<K, V> cursor = null; // walks sub-trie nextNode - 1, if any
+        private long size; // number of remaining entries
+
+        TrieSpliterator(final HashTrie<K, V> root, final int kind) {
+            this.kind = kind;
+            this.size = root.size;
+            setNode(root);
+        }
+
+        private TrieSpliterator(final HashTrie<K, V> node, final int kind, final int nextNode, final int endNode,
+                                final long size) {
+            this.kind = kind;
+            this.node = node;
+            this.nextNode = nextNode;
+            this.endNode = endNode;
+            this.size = size;
+        }
+
+        private void setNode(final HashTrie<K, V> node) {
+            this.node = node;
+            next = 0;
+            if ((node.dataMap | node.nodeMap) == 0) { // a collision list, or empty
+                end = node.content.length;
+                endNode = 0;
+            } else {
+                end = 2 * Integer.bitCount(node.dataMap);
+                endNode = Integer.bitCount(node.nodeMap);
+            }
+            nextNode = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T result(final Object key, final Object value) {
+            switch (kind) {
+                case KEYS:
+                    return (T) key;
+                case VALUES:
+                    return (T) value;
+                default:
+                    return (T) new AbstractMap.SimpleImmutableEntry<Object, Object>(key, value);
+            }
+        }
+
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (next < end) {
+                action.accept(result(node.content[next], node.content[next + 1]));
+                next += 2;
+                size--;
+                return true;
+            }
+            while (cursor == null || !cursor.next()) {
+                if (nextNode == endNode)
+                    return false;
+                cursor = new Cursor<K, V>(node.nodeAt(nextNode++));
+            }
+            action.accept(result(cursor.key(), cursor.value()));
+            size--;
+            return true;
+        }
+
+        public void forEachRemaining(final Consumer<? super T> action) {
+            if (action == null)
+                throw new NullPointerException();
+            for (; next < end; next += 2)
+                action.accept(result(node.content[next], node.content[next + 1]));
+            while (true) {
+                if (cursor != null) {
+                    while (cursor.next())
+                        action.accept(result(cursor.key(), cursor.value()));
+                }
+                if (nextNode == endNode)
+                    break;
+                cursor = new Cursor<K, V>(node.nodeAt(nextNode++));
+            }
+            size = 0;
+        }
+
+        public Spliterator<T> trySplit() {
+            if (cursor != null && !cursor.hasNext())
+                cursor = null;
+            // with nothing left but a single sub-trie, split that instead:
+            while (cursor == null && next == end && endNode - nextNode == 1)
+                setNode(node.nodeAt(nextNode));
+            final int n = endNode - nextNode;
+            if (n < 2)
+                return null;
+            final int mid = nextNode + n / 2;
+            long splitSize = 0;
+            for (int j = mid; j < endNode; j++)
+                splitSize += node.nodeAt(j).size;
+            final TrieSpliterator<K, V, T> split = new TrieSpliterator<K, V, T>(node, kind, mid, endNode, splitSize);
+            endNode = mid;
+            size -= splitSize;
+            return split;
+        }
+
+        public long estimateSize() {
+            return size;
+        }
+
+        public int characteristics() {
+            final int c = SIZED | SUBSIZED | IMMUTABLE;
+            return kind == VALUES ? c : c | DISTINCT | NONNULL;
+        }
+    }
+
+    private abstract static class CursorIterator<K, V, T> implements Iterator<T> {
+        final Cursor<K, V> cursor;
+
+        CursorIterator(final HashTrie<K, V> root) {
+            cursor = new Cursor<K, V>(root);
+        }
+
+        abstract T result();
+
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        public T next() {
+            if (!cursor.next())
+                throw new NoSuchElementException();
+            return result();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class EntryIterator<K, V> extends CursorIterator<K, V, Entry<K, V>> {
+        EntryIterator(final HashTrie<K, V> root) {
+            super(root);
+        }
+
+        @Override
+        Entry<K, V> result() {
+            return new AbstractMap.SimpleImmutableEntry<K, V>(cursor.key(), cursor.value());
+        }
+    }
+
+    private static final class KeyIterator<K, V> extends CursorIterator<K, V, K> {
+        KeyIterator(final HashTrie<K, V> root) {
+            super(root);
+        }
+
+        @Override
+        K result() {
+            return cursor.key();
+        }
+    }
+
+    private static final class ValueIterator<K, V> extends CursorIterator<K, V, V> {
+        ValueIterator(final HashTrie<K, V> root) {
+            super(root);
+        }
+
+        @Override
+        V result() {
+            return cursor.value();
+        }
+    }
+}
@@ -2,9 +2,12 @@ package org.pcollections;
 
 import java.io.Serializable;
 import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 /**
  * A non-public utility class for persistent balanced tree maps with integer keys.
@@ -43,6 +46,11 @@ public final class IntTree<V> implements Serializable {
     private final IntTree<V> left, right;
     private final int size;
 
+    @SuppressWarnings("unchecked")
+    static <V> IntTree<V> empty() {
+        return (IntTree<V>) EMPTYNODE;
+    }
+
     private IntTree() {
         if (EMPTYNODE != null)
             throw new RuntimeException("empty constructor should only be used once");
@@ -62,6 +70,30 @@ public final class IntTree<V> implements Serializable {
         size = 1 + left.size + right.size;
     }
 
+    /**
+     * Builds a perfectly balanced tree in one pass, with one allocation per node.
+     *
+     * @param keys   keys in strictly increasing order, or null for the keys 0 to values.length-1
+     * @param values the values of the keys
+     * @return a tree mapping keys[i] to values[i]
+     */
+    static <V> IntTree<V> fromSorted(final long[] keys, final Object[] values) {
+        return build(keys, values, 0, values.length, 0);
+    }
+
+    // the tree of the entries from..to-1, with its key relative to parentKey:
+    @SuppressWarnings("unchecked")
+    private static <V> IntTree<V> build(final long[] keys, final Object[] values,
+                                        final int from, final int to, final long parentKey) {
+        if (from == to)
+            return empty();
+        final int mid = (from + to) >>> 1;
+        final long key = keys == null ? mid : keys[mid];
+        return new IntTree<V>(key - parentKey, (V) values[mid],
+                IntTree.<V>build(keys, values, from, mid, key),
+                IntTree.<V>build(keys, values, mid + 1, to, key));
+    }
+
     private IntTree<V> withKey(final long newKey) {
         if (size == 0 || newKey == key) return this;
         return new IntTree<V>(newKey, value, left, right);
@@ -71,6 +103,20 @@ public final class IntTree<V> implements Serializable {
         return new EntryIterator<V>(this);
     }
 
+    // iterates over the values in key order, without making an entry for each:
+    Iterator<V> valueIterator() {
+        return new ValueIterator<V>(this);
+    }
+
+    Cursor<V> cursor() {
+        return new Cursor<V>(this);
+    }
+
+    // split along sub-trees, for parallel streams:
+    Spliterator<V> valueSpliterator(final int characteristics) {
+        return new ValueSpliterator<V>(null, this, characteristics);
+    }
+
     int size() {
         return size;
     }
@@ -202,6 +248,31 @@ public final class IntTree<V> implements Serializable {
         return new IntTree<V>(this.key, value, newLeft, right);
     }
 
+    // the number of keys in this which are less than key:
+    int rank(final long key) {
+        if (size == 0)
+            return 0;
+        if (key <= this.key)
+            return left.rank(key - this.key);
+        return left.size + 1 + right.rank(key - this.key);
+    }
+
+    // the value of the index-th smallest key in this, with 0 <= index < size:
+    V valueAt(final int index) {
+        if (index < left.size)
+            return left.valueAt(index);
+        if (index > left.size)
+            return right.valueAt(index - left.size - 1);
+        return value;
+    }
+
+    // max key in this, which must be nonempty:
+    long maxKey() {
+        if (right.size == 0)
+            return key;
+        return right.maxKey() + this.key;
+    }
+
     // min key in this:
     private long minKey() {
         if (left.size == 0)
@@ -268,24 +339,55 @@ public final class IntTree<V> implements Serializable {
 
     ////entrySet().iterator() IMPLEMENTATION ////
     // TODO make this a ListIterator?
-    private static final class EntryIterator<V> implements Iterator<Entry<Integer, V>> {
-        private ConsPStack<IntTree<V>> stack = ConsPStack.empty(); //path of nonempty nodes
-        private int key = 0; // note we use _int_ here since this is a truly absolute key
-
-        EntryIterator(final IntTree<V> root) {
+    // walks the tree in key order, keeping its path in a reusable array:
+    static final class Cursor<V> implements IntPMap.Cursor<V> {
+        @SuppressWarnings("unchecked")
+        private IntTree<V>[] path = (IntTree<V>[]) new IntTree<?>[32]; // path of nonempty nodes, grown if ever needed
+        private int depth = 0;
+        private long key = 0; // absolute key of path[depth-1]
+        private boolean started = false; // whether next() was called
+
+        Cursor(final IntTree<V> root) {
             gotoMinOf(root);
         }
 
-        public boolean hasNext() {
-            return stack.size() > 0;
+        public boolean next() {
+            if (started)
+                advance();
+            started = true;
+            return depth > 0;
         }
 
-        public Entry<Integer, V> next() {
-            if (stack.isEmpty())
+        public int key() {
+            if (!started || depth == 0)
                 throw new NoSuchElementException();
+            return (int) key;
+        }
+
+        public V value() {
+            if (!started || depth == 0)
+                throw new NoSuchElementException();
+            return path[depth - 1].value;
+        }
+
+        // the methods below ignore started, and are used by the iterators:
+
+        boolean atEnd() {
+            return depth == 0;
+        }
+
+        int currentKey() {
+            return (int) key;
+        }
 
-            IntTree<V> node = stack.get(0);
-            final Entry<Integer, V> result = new AbstractMap.SimpleImmutableEntry<Integer, V>(key, node.value);
+        V currentValue() {
+            return path[depth - 1].value;
+        }
+
+        void advance() {
+            if (depth == 0)
+                return;
+            IntTree<V> node = path[depth - 1];
 
             // find next node.
             // we've already done everything smaller,
@@ -297,28 +399,142 @@ public final class IntTree<V> implements Serializable {
             else // can't descend to the right -- try ascending to the right
                 while (true) { // find current node's least larger ancestor, if any
                     key -= node.key; // revert to parent's key
-                    stack = stack.subList(1); // climb up to parent
+                    depth--; // climb up to parent
                     // if parent was larger than child or there was no parent, we're done:
-                    if (node.key < 0 || stack.size() == 0)
+                    if (node.key < 0 || depth == 0)
                         break;
                     // otherwise parent was smaller -- try its parent:
-                    node = stack.get(0);
+                    node = path[depth - 1];
                 }
+        }
+
+        // extend the path to its least non-empty node:
+        private void gotoMinOf(IntTree<V> node) {
+            while (node.size > 0) {
+                if (depth == path.length)
+                    path = Arrays.copyOf(path, 2 * depth);
+                path[depth++] = node;
+                key += node.key;
+                node = node.left;
+            }
+        }
+    }
+
+    private static final class EntryIterator<V> implements Iterator<Entry<Integer, V>> {
+        private final Cursor<V> cursor;
+
+        EntryIterator(final IntTree<V> root) {
+            cursor = new Cursor<V>(root);
+        }
+
+        public boolean hasNext() {
+            return !cursor.atEnd();
+        }
 
+        public Entry<Integer, V> next() {
+            if (cursor.atEnd())
+                throw new NoSuchElementException();
+            final Entry<Integer, V> result =
+                    new AbstractMap.SimpleImmutableEntry<Integer, V>(cursor.currentKey(), cursor.currentValue());
+            cursor.advance();
             return result;
         }
 
         public void remove() {
             throw new UnsupportedOperationException();
         }
+    }
 
-        // extend the stack to its least non-empty node:
-        private void gotoMinOf(IntTree<V> node) {
-            while (node.size > 0) {
-                stack = stack.plus(node);
-                key += node.key;
-                node = node.left;
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Cursor<V> cursor;
+
+        ValueIterator(final IntTree<V> root) {
+            cursor = new Cursor<V>(root);
+        }
+
+        public boolean hasNext() {
+            return !cursor.atEnd();
+        }
+
+        public V next() {
+            if (cursor.atEnd())
+                throw new NoSuchElementException();
+            final V result = cursor.currentValue();
+            cursor.advance();
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // the value of first, if any, followed by the values of tree in key order. A split hands
+    // over first and tree.left, and keeps the root of tree and tree.right, so each part is
+    // about half of the remaining tree; once a part has begun walking with a cursor, it is not
+    // split any more:
+    private static final class ValueSpliterator<V> implements Spliterator<V> {
+        private IntTree<V> first; // a node whose value comes before tree, or null
+        private IntTree<V> tree;
+        private Cursor<V> cursor; // walking tree, once started
+        private long remaining;
+        private final int characteristics;
+
+        ValueSpliterator(final IntTree<V> first, final IntTree<V> tree, final int characteristics) {
+            this.first = first;
+            this.tree = tree;
+            this.remaining = (first == null ? 0 : 1) + tree.size;
+            this.characteristics = characteristics | ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+        public boolean tryAdvance(final Consumer<? super V> action) {
+            if (first != null) {
+                final V value = first.value;
+                first = null;
+                remaining--;
+                action.accept(value);
+                return true;
+            }
+            if (cursor == null)
+                cursor = new Cursor<V>(tree);
+            if (cursor.atEnd())
+                return false;
+            final V value = cursor.currentValue();
+            cursor.advance();
+            remaining--;
+            action.accept(value);
+            return true;
+        }
+
+        public void forEachRemaining(final Consumer<? super V> action) {
+            if (first != null) {
+                action.accept(first.value);
+                first = null;
+            }
+            if (cursor == null)
+                cursor = new Cursor<V>(tree);
+            for (; !cursor.atEnd(); cursor.advance()) {
+                action.accept(cursor.currentValue());
             }
+            remaining = 0;
+        }
+
+        public Spliterator<V> trySplit() {
+            if (cursor != null || tree.size == 0 || tree.left.size == 0)
+                return null;
+            final ValueSpliterator<V> prefix = new ValueSpliterator<V>(first, tree.left, characteristics);
+            first = tree;
+            tree = tree.right;
+            remaining -= prefix.remaining;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return remaining;
+        }
+
+        public int characteristics() {
+            return characteristics;
         }
     }
 }
@@ -1,12 +1,22 @@
 package org.pcollections;
 
+import groovy.util.immutable.ImmutableIntMap;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * An efficient immutable and persistent map from integer keys to non-null values.
  * <p/>
- * Iteration occurs in the integer order of the keys.
+ * Iteration occurs in the integer order of the keys. The methods taking primitive keys
+ * and {@link #cursor()} avoid boxing keys.
+ * <p/>
+ * This is also the {@link ImmutableIntMap} of {@link groovy.util.immutable.ImmutableCollections}.
  * <p/>
  * This implementation is thread-safe (assuming Java's AbstractMap and AbstractSet are thread-safe),
  * although its iterators may not be.
@@ -24,7 +34,7 @@ import java.util.*;
  * @author harold
  * @author Yu Kobayashi
  */
-public final class IntTreePMap<V> extends AbstractMap<Integer, V> implements PMap<Integer, V>, Serializable {
+public final class IntTreePMap<V> extends AbstractMap<Integer, V> implements IntPMap<V>, ImmutableIntMap<V>, Serializable {
     private static final IntTreePMap<Object> EMPTY = new IntTreePMap<Object>(IntTree.EMPTYNODE);
     private static final long serialVersionUID = -777938930078650943L;
 
@@ -53,6 +63,24 @@ public final class IntTreePMap<V> extends AbstractMap<Integer, V> implements PMa
         return IntTreePMap.<V>empty().plusAll(map);
     }
 
+    /**
+     * Builds the map in linear time, as a perfectly balanced tree.
+     *
+     * @return a map from the indices 0 to values.size()-1 to the corresponding values
+     */
+    public static <V> IntTreePMap<V> fromList(Collection<? extends V> values) {
+        if (values.isEmpty())
+            return empty();
+        return new IntTreePMap<V>(IntTree.<V>fromSorted(null, values.toArray()));
+    }
+
+    // builds the map in linear time from entries in increasing order of their keys:
+    static <V> IntTreePMap<V> fromSorted(long[] keys, Object[] values) {
+        if (values.length == 0)
+            return empty();
+        return new IntTreePMap<V>(IntTree.<V>fromSorted(keys, values));
+    }
+
     private final IntTree<V> root;
 
     // not externally instantiable (or subclassable):
@@ -103,6 +131,27 @@ public final class IntTreePMap<V> extends AbstractMap<Integer, V> implements PMa
         return entrySet;
     }
 
+    // this cache variable is thread-safe, since assignment in Java is atomic:
+    private transient Collection<V> values;
+
+    @Override
+    public Collection<V> values() {
+        if (values == null) {
+            values = new AbstractCollection<V>() {
+                @Override
+                public int size() {
+                    return IntTreePMap.this.size();
+                }
+
+                @Override
+                public Iterator<V> iterator() {
+                    return root.valueIterator();
+                }
+            };
+        }
+        return values;
+    }
+
     public int size() {
         return root.size();
     }
@@ -111,23 +160,65 @@ public final class IntTreePMap<V> extends AbstractMap<Integer, V> implements PMa
         return key instanceof Integer && root.containsKey((Integer) key);
     }
 
+    public boolean containsKey(int key) {
+        return root.containsKey(key);
+    }
+
     public V get(Object key) {
         return key instanceof Integer ? root.get((Integer) key) : null;
     }
 
+    public V get(int key) {
+        return root.get(key);
+    }
+
+    public IntPMap.Cursor<V> cursor() {
+        return root.cursor();
+    }
+
     public IntTreePMap<V> plus(Integer key, V value) {
+        return plusInt(key.intValue(), value);
+    }
+
+    public IntTreePMap<V> plusInt(int key, V value) {
         return withRoot(root.plus(key, value));
     }
 
+    @SuppressWarnings("unchecked")
     public IntTreePMap<V> plusAll(final Map<? extends Integer, ? extends V> map) {
+        if (root.size() == 0) {
+            if (map instanceof IntTreePMap)
+                return (IntTreePMap<V>) map;
+            if (map instanceof SortedMap && ((SortedMap<?, ?>) map).comparator() == null)
+                return fromSorted(map);
+        }
         IntTree<V> root = this.root;
         for (Entry<? extends Integer, ? extends V> entry : map.entrySet())
             root = root.plus(entry.getKey(), entry.getValue());
         return withRoot(root);
     }
 
+    // builds a map from entries already in increasing order of their keys:
+    private static <V> IntTreePMap<V> fromSorted(final Map<? extends Integer, ? extends V> map) {
+        final long[] keys = new long[map.size()];
+        final Object[] values = new Object[keys.length];
+        int i = 0;
+        for (Entry<? extends Integer, ? extends V> entry : map.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+        if (i == 0)
+            return empty();
+        return new IntTreePMap<V>(IntTree.<V>fromSorted(keys, values));
+    }
+
     public IntTreePMap<V> minus(Object key) {
-        return key instanceof Integer ? withRoot(root.minus((Integer) key)) : this;
+        return key instanceof Integer ? minus(((Integer) key).intValue()) : this;
+    }
+
+    public IntTreePMap<V> minus(int key) {
+        return withRoot(root.minus(key));
     }
 
     public IntTreePMap<V> minusAll(Collection<?> keys) {
@@ -144,6 +235,36 @@ public final class IntTreePMap<V> extends AbstractMap<Integer, V> implements PMa
         return withRoot(root);
     }
 
+    public IntTreePMap<V> plus(Map<? extends Integer, ? extends V> map) {
+        return plusAll(map);
+    }
+
+    public IntTreePMap<V> minus(Iterable<?> keys) {
+        return minusAll(keys);
+    }
+
+    /**
+     * @return HashPMap.parallelFrom(entrySet(), transform)
+     */
+    public <K2, V2> HashPMap<K2, V2> collectEntriesParallel(
+            Function<? super Entry<Integer, V>, ? extends Entry<? extends K2, ? extends V2>> transform) {
+        return HashPMap.<Entry<Integer, V>, K2, V2>parallelFrom(entrySet(), transform);
+    }
+
+    // the entries are tested in parallel, and those which fail are then removed from the tree:
+    public IntTreePMap<V> findAllParallel(final Predicate<? super Entry<Integer, V>> filter) {
+        List<Integer> rejected = entrySet().parallelStream().filter(new Predicate<Entry<Integer, V>>() {
+            public boolean test(Entry<Integer, V> entry) {
+                return !filter.test(entry);
+            }
+        }).map(new Function<Entry<Integer, V>, Integer>() {
+            public Integer apply(Entry<Integer, V> entry) {
+                return entry.getKey();
+            }
+        }).collect(Collectors.<Integer>toList());
+        return rejected.isEmpty() ? this : minusAll(rejected);
+    }
+
     @Deprecated
     public V putAt(Integer key, V v) {
         throw new UnsupportedOperationException();
@@ -172,4 +293,12 @@ public final class IntTreePMap<V> extends AbstractMap<Integer, V> implements PMa
     public void clear() {
         throw new UnsupportedOperationException();
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.INT_MAP, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
 }
@@ -0,0 +1,216 @@
+package org.pcollections;
+
+import groovy.util.immutable.ImmutableIntList;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable and persistent vector of int values.
+ * <p/>
+ * Unlike a {@link TreePVector} of Integers, the elements are not boxed but packed into leaves which are
+ * int arrays of 32 elements, with a separate tail leaf holding the last elements. Querying and setting
+ * take O(log32 n) time and appending takes amortized O(1) time. The elements can also be read as
+ * a list of Integers through {@link #asList()}.
+ * <p/>
+ * This is also the {@link ImmutableIntList} of {@link groovy.util.immutable.ImmutableCollections}.
+ * <p/>
+ * This implementation is thread-safe.
+ *
+ * @author Yu Kobayashi
+ */
+public final class IntTreePVector extends PrimitiveTrie<int[], IntTreePVector> implements ImmutableIntList {
+    private static final IntTreePVector EMPTY = new IntTreePVector();
+    private static final long serialVersionUID = -3856304938613204021L;
+
+    /**
+     * @return an empty vector
+     */
+    public static IntTreePVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return empty().plus(e)
+     */
+    public static IntTreePVector singleton(int e) {
+        return EMPTY.plus(e);
+    }
+
+    /**
+     * Builds the vector in linear time.
+     *
+     * @return a vector of the elements of array
+     */
+    public static IntTreePVector from(int[] array) {
+        return EMPTY.plusRange(array, 0, array.length);
+    }
+
+    /**
+     * Builds the vector in linear time.
+     *
+     * @return a vector of the elements of array from start (inclusive) to end (exclusive)
+     */
+    public static IntTreePVector from(int[] array, int start, int end) {
+        if (start < 0 || end > array.length || start > end)
+            throw new IndexOutOfBoundsException();
+        return EMPTY.plusRange(array, start, end);
+    }
+
+    /**
+     * @return a vector of the elements of iterable, which must not contain null
+     */
+    public static IntTreePVector from(Iterable<? extends Integer> iterable) {
+        final Collection<? extends Integer> collection = Utils.asCollection(iterable);
+        final int[] array = new int[collection.size()];
+        int i = 0;
+        for (Integer e : collection)
+            array[i++] = e;
+        return from(array);
+    }
+
+    private IntTreePVector() { // EMPTY constructor
+        super(new int[0]);
+    }
+
+    private IntTreePVector(int size, Object[] root, int shift, int[] tail) {
+        super(size, root, shift, tail);
+    }
+
+    IntTreePVector create(int size, Object[] root, int shift, int[] tail) {
+        return new IntTreePVector(size, root, shift, tail);
+    }
+
+    int[] newLeaf(int length) {
+        return new int[length];
+    }
+
+    boolean leafEquals(int[] a, int[] b) {
+        return Arrays.equals(a, b);
+    }
+
+    Object boxed(int index) {
+        return get(index);
+    }
+
+    public int get(int index) {
+        return leafFor(index)[index & MASK];
+    }
+
+    public int getInt(int index) {
+        return get(index);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this with e appended
+     */
+    public IntTreePVector plus(int e) {
+        final int[] leaf = grownTail();
+        leaf[leaf.length - 1] = e;
+        return withGrownTail(leaf);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this with the elements of array appended
+     */
+    public IntTreePVector plusAll(int[] array) {
+        return plusRange(array, 0, array.length);
+    }
+
+    public IntTreePVector plus(int[] array) {
+        return plusAll(array);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this, with the element at index replaced by e
+     * @throws IndexOutOfBoundsException if index &lt; 0 || index &gt;= this.size()
+     */
+    public IntTreePVector with(int index, int e) {
+        if (get(index) == e)
+            return this;
+        final int[] leaf = leafFor(index).clone();
+        leaf[index & MASK] = e;
+        return withLeaf(index, leaf);
+    }
+
+    public IntTreePVector replaceAt(int index, int e) {
+        return with(index, e);
+    }
+
+    /**
+     * @return the elements of this, in a new array
+     */
+    public int[] toArray() {
+        return copyOf(0, size);
+    }
+
+    /**
+     * @return the elements of this from start (inclusive) to end (exclusive), in a new array
+     */
+    public int[] toArray(int start, int end) {
+        return copyOf(start, end);
+    }
+
+    public int[] toIntArray() {
+        return toArray();
+    }
+
+    public int[] toIntArray(int from, int to) {
+        return toArray(from, to);
+    }
+
+    /**
+     * Copies the elements of this from start (inclusive) to end (exclusive) into dest,
+     * a leaf at a time.
+     */
+    public void copyTo(int start, int end, int[] dest, int destPos) {
+        copyInto(start, end, dest, destPos);
+    }
+
+    /**
+     * Applies action to each element of this in order, without boxing them.
+     */
+    public void forEach(IntConsumer action) {
+        for (int index = 0; index < size; index += WIDTH) {
+            for (int e : leafFor(index))
+                action.accept(e);
+        }
+    }
+
+    /**
+     * @return an unmodifiable view of this as a list of Integers, which boxes elements as they are read
+     */
+    public List<Integer> asList() {
+        return new BoxedList<Integer>(this);
+    }
+
+    @Override
+    public int hashCode() { // same as for a List of Integers
+        if (hashCode == 0) {
+            int h = 1;
+            for (int index = 0; index < size; index += WIDTH) {
+                for (int e : leafFor(index))
+                    h = 31 * h + e;
+            }
+            hashCode = h;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof IntTreePVector && sameElements((IntTreePVector) o);
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.INT_VECTOR, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
+}
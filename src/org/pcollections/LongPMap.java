@@ -0,0 +1,99 @@
+package org.pcollections;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A persistent map from long keys to non-null values, which can also be used
+ * with primitive keys, without boxing them.
+ * 
+ * @author Yu Kobayashi
+ *
+ * @param <V>
+ */
+public interface LongPMap<V> extends PMap<Long,V> {
+	/**
+	 * @param key
+	 * @return the value of key, or null if there is none
+	 */
+	public V get(long key);
+
+	/**
+	 * @param key
+	 * @return whether this has a value for key
+	 */
+	public boolean containsKey(long key);
+
+	/**
+	 * The same as plus(Long, V), but without boxing key. It has its own name, since an
+	 * overload of plus would be ambiguous with plus(Long, V) for a value which has to be boxed.
+	 *
+	 * @param key
+	 * @param value non-null
+	 * @return a map with the mappings of this but with key mapped to value
+	 */
+	public LongPMap<V> plusLong(long key, V value);
+
+	/**
+	 * @param key
+	 * @return a map with the mappings of this but with no value for key
+	 */
+	public LongPMap<V> minus(long key);
+
+	/**
+	 * @return a cursor over the entries of this, in increasing order of their keys
+	 */
+	public Cursor<V> cursor();
+
+	/**
+	 * @param key non-null
+	 * @param value non-null
+	 * @return a map with the mappings of this but with key mapped to value
+	 * @throws NullPointerException if key is null
+	 */
+	//@Override
+	public LongPMap<V> plus(Long key, V value);
+
+	//@Override
+	public LongPMap<V> plusAll(Map<? extends Long, ? extends V> map);
+
+	//@Override
+	public LongPMap<V> minus(Object key);
+
+	//@Override
+	public LongPMap<V> minusAll(Iterable<?> keys);
+
+	//@Override
+	public LongPMap<V> minusAll(Collection<?> keys);
+
+	/**
+	 * Walks over the entries of a map, without creating an entry or boxing a key for each.
+	 * <pre>
+	 * LongPMap.Cursor&lt;V&gt; c = map.cursor();
+	 * while (c.next())
+	 *     use(c.key(), c.value());
+	 * </pre>
+	 *
+	 * @param <V>
+	 */
+	public interface Cursor<V> {
+		/**
+		 * Moves to the first entry, or the entry after the current one.
+		 *
+		 * @return false if there is no such entry
+		 */
+		public boolean next();
+
+		/**
+		 * @return the key of the current entry
+		 * @throws java.util.NoSuchElementException if there is no current entry
+		 */
+		public long key();
+
+		/**
+		 * @return the value of the current entry
+		 * @throws java.util.NoSuchElementException if there is no current entry
+		 */
+		public V value();
+	}
+}
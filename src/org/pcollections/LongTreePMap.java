@@ -0,0 +1,368 @@
+package org.pcollections;
+
+import groovy.util.immutable.ImmutableLongMap;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * An efficient immutable and persistent map from long keys to non-null values.
+ * <p/>
+ * Iteration occurs in the numeric order of the keys. The methods taking primitive keys
+ * and {@link #cursor()} avoid boxing keys.
+ * <p/>
+ * The relative keys of {@link IntTree} can overflow for keys that far apart, so this map
+ * splits each key in two ints: its high half is the key of an IntTree of IntTrees, and its
+ * low half is the key within the inner IntTree. Keys below 2^32, such as typical ids,
+ * therefore share a single inner tree.
+ * <p/>
+ * This is also the {@link ImmutableLongMap} of {@link groovy.util.immutable.ImmutableCollections}.
+ * <p/>
+ * This implementation is thread-safe (assuming Java's AbstractMap and AbstractSet are thread-safe),
+ * although its iterators may not be.
+ *
+ * @author Yu Kobayashi
+ */
+public final class LongTreePMap<V> extends AbstractMap<Long, V> implements LongPMap<V>, ImmutableLongMap<V>, Serializable {
+    private static final LongTreePMap<Object> EMPTY = new LongTreePMap<Object>(IntTree.<IntTree<Object>>empty(), 0);
+    private static final long serialVersionUID = 2609718405338562641L;
+
+    /**
+     * @return an empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> LongTreePMap<V> empty() {
+        return (LongTreePMap<V>) EMPTY;
+    }
+
+    /**
+     * @return empty().plus(key, value)
+     */
+    public static <V> LongTreePMap<V> singleton(long key, V value) {
+        return LongTreePMap.<V>empty().plusLong(key, value);
+    }
+
+    /**
+     * @return empty().plus(map)
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> LongTreePMap<V> from(Map<? extends Long, ? extends V> map) {
+        if (map instanceof LongTreePMap)
+            return (LongTreePMap<V>) map;
+        return LongTreePMap.<V>empty().plusAll(map);
+    }
+
+    // builds the map in linear time from entries in increasing order of their keys,
+    // which are grouped into inner trees by their high halves:
+    static <V> LongTreePMap<V> fromSorted(long[] keys, Object[] values) {
+        if (values.length == 0)
+            return empty();
+        int groups = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || high(keys[i]) != high(keys[i - 1]))
+                groups++;
+        }
+        final long[] highs = new long[groups];
+        final Object[] inners = new Object[groups];
+        int from = 0;
+        for (int g = 0; g < groups; g++) {
+            final int high = high(keys[from]);
+            int to = from + 1;
+            while (to < keys.length && high(keys[to]) == high)
+                to++;
+            final long[] lows = new long[to - from];
+            for (int i = 0; i < lows.length; i++) {
+                lows[i] = low(keys[from + i]);
+            }
+            highs[g] = high;
+            inners[g] = IntTree.<V>fromSorted(lows, Arrays.copyOfRange(values, from, to));
+            from = to;
+        }
+        return new LongTreePMap<V>(IntTree.<IntTree<V>>fromSorted(highs, inners), keys.length);
+    }
+
+    private final IntTree<IntTree<V>> root; // inner trees by the high halves of their keys
+    private final int size;
+
+    // not externally instantiable (or subclassable):
+    private LongTreePMap(IntTree<IntTree<V>> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    private static int high(long key) {
+        return (int) (key >> 32);
+    }
+
+    // flips the sign bit, so that the low halves are ordered as unsigned ints:
+    private static int low(long key) {
+        return (int) key ^ Integer.MIN_VALUE;
+    }
+
+    private static long toKey(int high, int low) {
+        return ((long) high << 32) | ((low ^ Integer.MIN_VALUE) & 0xffffffffL);
+    }
+
+    private IntTree<V> inner(long key) {
+        IntTree<V> inner = root.get(high(key));
+        return inner == null ? IntTree.<V>empty() : inner;
+    }
+
+    // this cache variable is thread-safe, since assignment in Java is atomic:
+    private transient Set<Entry<Long, V>> entrySet;
+
+    public Set<Entry<Long, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<Long, V>>() {
+                @Override
+                public int size() { // same as Map
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<Long, V>> iterator() {
+                    return new CursorIterator<Entry<Long, V>>() {
+                        @Override
+                        Entry<Long, V> result(LongPMap.Cursor<V> cursor) {
+                            return new SimpleImmutableEntry<Long, V>(cursor.key(), cursor.value());
+                        }
+                    };
+                }
+
+                @Override
+                public boolean contains(Object e) {
+                    if (!(e instanceof Entry))
+                        return false;
+                    V value = get(((Entry<?, ?>) e).getKey());
+                    return value != null && value.equals(((Entry<?, ?>) e).getValue());
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    // this cache variable is thread-safe, since assignment in Java is atomic:
+    private transient Collection<V> values;
+
+    @Override
+    public Collection<V> values() {
+        if (values == null) {
+            values = new AbstractCollection<V>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<V> iterator() {
+                    return new CursorIterator<V>() {
+                        @Override
+                        V result(LongPMap.Cursor<V> cursor) {
+                            return cursor.value();
+                        }
+                    };
+                }
+            };
+        }
+        return values;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(Object key) {
+        return key instanceof Long && containsKey(((Long) key).longValue());
+    }
+
+    public boolean containsKey(long key) {
+        return inner(key).containsKey(low(key));
+    }
+
+    public V get(Object key) {
+        return key instanceof Long ? get(((Long) key).longValue()) : null;
+    }
+
+    public V get(long key) {
+        return inner(key).get(low(key));
+    }
+
+    public LongPMap.Cursor<V> cursor() {
+        return new Cursor<V>(root);
+    }
+
+    public LongTreePMap<V> plus(Long key, V value) {
+        return plusLong(key.longValue(), value);
+    }
+
+    public LongTreePMap<V> plusLong(long key, V value) {
+        IntTree<V> inner = inner(key);
+        IntTree<V> newInner = inner.plus(low(key), value);
+        if (newInner == inner)
+            return this;
+        return new LongTreePMap<V>(root.plus(high(key), newInner), size + newInner.size() - inner.size());
+    }
+
+    public LongTreePMap<V> plusAll(final Map<? extends Long, ? extends V> map) {
+        LongTreePMap<V> result = this;
+        for (Entry<? extends Long, ? extends V> entry : map.entrySet())
+            result = result.plusLong(entry.getKey(), entry.getValue());
+        return result;
+    }
+
+    public LongTreePMap<V> minus(Object key) {
+        return key instanceof Long ? minus(((Long) key).longValue()) : this;
+    }
+
+    public LongTreePMap<V> minus(long key) {
+        IntTree<V> inner = inner(key);
+        IntTree<V> newInner = inner.minus(low(key));
+        if (newInner == inner)
+            return this;
+        if (newInner.size() == 0)
+            return new LongTreePMap<V>(root.minus(high(key)), size - 1);
+        return new LongTreePMap<V>(root.plus(high(key), newInner), size - 1);
+    }
+
+    public LongTreePMap<V> minusAll(Collection<?> keys) {
+        return minusAll((Iterable<?>) keys);
+    }
+
+    public LongTreePMap<V> minusAll(Iterable<?> keys) {
+        LongTreePMap<V> result = this;
+        for (Object key : keys)
+            result = result.minus(key);
+        return result;
+    }
+
+    public LongTreePMap<V> plus(Map<? extends Long, ? extends V> map) {
+        return plusAll(map);
+    }
+
+    public LongTreePMap<V> minus(Iterable<?> keys) {
+        return minusAll(keys);
+    }
+
+    /**
+     * @return HashPMap.parallelFrom(entrySet(), transform)
+     */
+    public <K2, V2> HashPMap<K2, V2> collectEntriesParallel(
+            Function<? super Entry<Long, V>, ? extends Entry<? extends K2, ? extends V2>> transform) {
+        return HashPMap.<Entry<Long, V>, K2, V2>parallelFrom(entrySet(), transform);
+    }
+
+    // the entries are tested in parallel, and those which fail are then removed from the tree:
+    public LongTreePMap<V> findAllParallel(final Predicate<? super Entry<Long, V>> filter) {
+        List<Long> rejected = entrySet().parallelStream().filter(new Predicate<Entry<Long, V>>() {
+            public boolean test(Entry<Long, V> entry) {
+                return !filter.test(entry);
+            }
+        }).map(new Function<Entry<Long, V>, Long>() {
+            public Long apply(Entry<Long, V> entry) {
+                return entry.getKey();
+            }
+        }).collect(Collectors.<Long>toList());
+        return rejected.isEmpty() ? this : minusAll(rejected);
+    }
+
+    @Deprecated
+    public V putAt(Long key, V v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public V put(Long k, V v) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public V remove(Object k) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void putAll(Map<? extends Long, ? extends V> m) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    //// CURSOR IMPLEMENTATION ////
+    // walks the inner trees one after another:
+    private static final class Cursor<V> implements LongPMap.Cursor<V> {
+        private final IntTree.Cursor<IntTree<V>> outer;
+        private IntTree.Cursor<V> inner; // null before the first and after the last entry
+
+        Cursor(IntTree<IntTree<V>> root) {
+            outer = root.cursor();
+        }
+
+        public boolean next() {
+            while (inner == null || !inner.next()) {
+                if (!outer.next()) {
+                    inner = null;
+                    return false;
+                }
+                inner = outer.value().cursor();
+            }
+            return true;
+        }
+
+        public long key() {
+            if (inner == null)
+                throw new NoSuchElementException();
+            return toKey(outer.key(), inner.key());
+        }
+
+        public V value() {
+            if (inner == null)
+                throw new NoSuchElementException();
+            return inner.value();
+        }
+    }
+
+    private abstract class CursorIterator<T> implements Iterator<T> {
+        private final LongPMap.Cursor<V> cursor = cursor();
+        private boolean hasNext = cursor.next();
+
+        abstract T result(LongPMap.Cursor<V> cursor);
+
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        public T next() {
+            if (!hasNext)
+                throw new NoSuchElementException();
+            T result = result(cursor);
+            hasNext = cursor.next();
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    //// SERIALIZATION ////
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.LONG_MAP, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
+}
@@ -0,0 +1,216 @@
+package org.pcollections;
+
+import groovy.util.immutable.ImmutableLongList;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * An immutable and persistent vector of long values.
+ * <p/>
+ * Unlike a {@link TreePVector} of Longs, the elements are not boxed but packed into leaves which are
+ * long arrays of 32 elements, with a separate tail leaf holding the last elements. Querying and setting
+ * take O(log32 n) time and appending takes amortized O(1) time. The elements can also be read as
+ * a list of Longs through {@link #asList()}.
+ * <p/>
+ * This is also the {@link ImmutableLongList} of {@link groovy.util.immutable.ImmutableCollections}.
+ * <p/>
+ * This implementation is thread-safe.
+ *
+ * @author Yu Kobayashi
+ */
+public final class LongTreePVector extends PrimitiveTrie<long[], LongTreePVector> implements ImmutableLongList {
+    private static final LongTreePVector EMPTY = new LongTreePVector();
+    private static final long serialVersionUID = 4906152710287013458L;
+
+    /**
+     * @return an empty vector
+     */
+    public static LongTreePVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return empty().plus(e)
+     */
+    public static LongTreePVector singleton(long e) {
+        return EMPTY.plus(e);
+    }
+
+    /**
+     * Builds the vector in linear time.
+     *
+     * @return a vector of the elements of array
+     */
+    public static LongTreePVector from(long[] array) {
+        return EMPTY.plusRange(array, 0, array.length);
+    }
+
+    /**
+     * Builds the vector in linear time.
+     *
+     * @return a vector of the elements of array from start (inclusive) to end (exclusive)
+     */
+    public static LongTreePVector from(long[] array, int start, int end) {
+        if (start < 0 || end > array.length || start > end)
+            throw new IndexOutOfBoundsException();
+        return EMPTY.plusRange(array, start, end);
+    }
+
+    /**
+     * @return a vector of the elements of iterable, which must not contain null
+     */
+    public static LongTreePVector from(Iterable<? extends Long> iterable) {
+        final Collection<? extends Long> collection = Utils.asCollection(iterable);
+        final long[] array = new long[collection.size()];
+        int i = 0;
+        for (Long e : collection)
+            array[i++] = e;
+        return from(array);
+    }
+
+    private LongTreePVector() { // EMPTY constructor
+        super(new long[0]);
+    }
+
+    private LongTreePVector(int size, Object[] root, int shift, long[] tail) {
+        super(size, root, shift, tail);
+    }
+
+    LongTreePVector create(int size, Object[] root, int shift, long[] tail) {
+        return new LongTreePVector(size, root, shift, tail);
+    }
+
+    long[] newLeaf(int length) {
+        return new long[length];
+    }
+
+    boolean leafEquals(long[] a, long[] b) {
+        return Arrays.equals(a, b);
+    }
+
+    Object boxed(int index) {
+        return get(index);
+    }
+
+    public long get(int index) {
+        return leafFor(index)[index & MASK];
+    }
+
+    public long getLong(int index) {
+        return get(index);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this with e appended
+     */
+    public LongTreePVector plus(long e) {
+        final long[] leaf = grownTail();
+        leaf[leaf.length - 1] = e;
+        return withGrownTail(leaf);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this with the elements of array appended
+     */
+    public LongTreePVector plusAll(long[] array) {
+        return plusRange(array, 0, array.length);
+    }
+
+    public LongTreePVector plus(long[] array) {
+        return plusAll(array);
+    }
+
+    /**
+     * @return a vector consisting of the elements of this, with the element at index replaced by e
+     * @throws IndexOutOfBoundsException if index &lt; 0 || index &gt;= this.size()
+     */
+    public LongTreePVector with(int index, long e) {
+        if (get(index) == e)
+            return this;
+        final long[] leaf = leafFor(index).clone();
+        leaf[index & MASK] = e;
+        return withLeaf(index, leaf);
+    }
+
+    public LongTreePVector replaceAt(int index, long e) {
+        return with(index, e);
+    }
+
+    /**
+     * @return the elements of this, in a new array
+     */
+    public long[] toArray() {
+        return copyOf(0, size);
+    }
+
+    /**
+     * @return the elements of this from start (inclusive) to end (exclusive), in a new array
+     */
+    public long[] toArray(int start, int end) {
+        return copyOf(start, end);
+    }
+
+    public long[] toLongArray() {
+        return toArray();
+    }
+
+    public long[] toLongArray(int from, int to) {
+        return toArray(from, to);
+    }
+
+    /**
+     * Copies the elements of this from start (inclusive) to end (exclusive) into dest,
+     * a leaf at a time.
+     */
+    public void copyTo(int start, int end, long[] dest, int destPos) {
+        copyInto(start, end, dest, destPos);
+    }
+
+    /**
+     * Applies action to each element of this in order, without boxing them.
+     */
+    public void forEach(LongConsumer action) {
+        for (int index = 0; index < size; index += WIDTH) {
+            for (long e : leafFor(index))
+                action.accept(e);
+        }
+    }
+
+    /**
+     * @return an unmodifiable view of this as a list of Longs, which boxes elements as they are read
+     */
+    public List<Long> asList() {
+        return new BoxedList<Long>(this);
+    }
+
+    @Override
+    public int hashCode() { // same as for a List of Longs
+        if (hashCode == 0) {
+            int h = 1;
+            for (int index = 0; index < size; index += WIDTH) {
+                for (long e : leafFor(index))
+                    h = 31 * h + (int) (e ^ (e >>> 32));
+            }
+            hashCode = h;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof LongTreePVector && sameElements((LongTreePVector) o);
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.LONG_VECTOR, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
+}
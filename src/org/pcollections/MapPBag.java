@@ -1,14 +1,24 @@
 package org.pcollections;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 
 /**
  * A map-backed immutable and persistent bag.
  * <p/>
+ * Each distinct element is stored once, mapped to the number of times it occurs. The size
+ * and hash code are updated by every operation, so they never walk the counts.
+ * <p/>
+ * The counts are Integers, since a bag can be backed by any PMap and hands that map out from
+ * {@link #entryCounts()}. Counts up to 127 are the instances Integer.valueOf caches, so the
+ * counts of typical bags cost no objects of their own.
+ * <p/>
  * If the backing map is thread-safe, then this implementation is thread-safe
  * (assuming Java's AbstractCollection is thread-safe), although its iterators
  * may not be.
@@ -46,16 +56,29 @@ public final class MapPBag<E> extends AbstractCollection<E> implements PBag<E>,
      * @return a ImmutableMapBag backed by an empty version of map, i.e. by map.minusAll(map.keySet())
      */
     public static <E> MapPBag<E> empty(PMap<E, Integer> map) {
-        return new MapPBag<E>(map.minus(map.keySet()), 0);
+        return new MapPBag<E>(map.minus(map.keySet()), 0, 0);
+    }
+
+    // a bag with the given positive counts, backed by them:
+    static <E> MapPBag<E> fromCounts(HashPMap<E, Integer> counts) {
+        int size = 0;
+        int hashCode = 0;
+        for (HashTrie.Cursor<E, Integer> c = counts.cursor(); c.next(); ) {
+            size += c.value();
+            hashCode += c.value() * c.key().hashCode();
+        }
+        return new MapPBag<E>(counts, size, hashCode);
     }
 
     private final PMap<E, Integer> map;
     private final int size;
+    private final int hashCode; // kept up to date like size, rather than computed on demand
 
     // not instantiable (or subclassable):
-    private MapPBag(PMap<E, Integer> map, int size) {
+    private MapPBag(PMap<E, Integer> map, int size, int hashCode) {
         this.map = map;
         this.size = size;
+        this.hashCode = hashCode;
     }
 
     @Override
@@ -65,6 +88,8 @@ public final class MapPBag<E> extends AbstractCollection<E> implements PBag<E>,
 
     @Override
     public Iterator<E> iterator() {
+        if (map instanceof HashPMap)
+            return new CountIterator<E>(((HashPMap<E, Integer>) map).cursor());
         final Iterator<Entry<E, Integer>> i = map.entrySet().iterator();
         return new Iterator<E>() {
             private E e;
@@ -90,6 +115,34 @@ public final class MapPBag<E> extends AbstractCollection<E> implements PBag<E>,
         };
     }
 
+    // repeats each key of a HashPMap as often as its count, without making entries:
+    private static final class CountIterator<E> implements Iterator<E> {
+        private final HashTrie.Cursor<E, Integer> cursor;
+        private int n = 0; // remaining repetitions of the current key
+
+        CountIterator(HashTrie.Cursor<E, Integer> cursor) {
+            this.cursor = cursor;
+        }
+
+        public boolean hasNext() {
+            return n > 0 || cursor.hasNext();
+        }
+
+        public E next() {
+            if (n == 0) { // finished with current element
+                if (!cursor.next())
+                    throw new NoSuchElementException();
+                n = cursor.value();
+            }
+            n--;
+            return cursor.key();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     @Override
     public boolean contains(Object e) {
         return map.containsKey(e);
@@ -97,27 +150,74 @@ public final class MapPBag<E> extends AbstractCollection<E> implements PBag<E>,
 
     @Override
     public int hashCode() {
-        int hashCode = 0;
-        for (E e : this) {
-            hashCode += e.hashCode();
-        }
         return hashCode;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public boolean equals(Object that) {
+        if (that == this)
+            return true;
         if (!(that instanceof PBag))
             return false;
         if (!(that instanceof MapPBag)) {
-            // make that into a ImmutableMapBag
-            that = MapPBag.empty().plus(that);
+            // make that into a MapPBag
+            that = MapPBag.empty().plusAll((PBag<?>) that);
         }
-        return this.map.equals(((MapPBag<?>) that).map);
+        MapPBag<?> bag = (MapPBag<?>) that;
+        if (size != bag.size || hashCode != bag.hashCode)
+            return false;
+        return this.map.equals(bag.map);
+    }
+
+    /**
+     * @return the number of times o occurs in this, or 0 if it does not
+     */
+    public int count(Object o) {
+        Integer n = map.get(o);
+        return n == null ? 0 : n;
+    }
+
+    /**
+     * @return a set of the distinct elements of this, backed by the counts of this
+     */
+    public MapPSet<E> elementSet() {
+        return MapPSet.from(map);
+    }
+
+    /**
+     * @return a map from each distinct element of this to its count, which is always positive
+     */
+    public PMap<E, Integer> entryCounts() {
+        return map;
     }
 
     public MapPBag<E> plus(E element) {
-        return new MapPBag<E>(map.plus(element, count(element) + 1), size + 1);
+        return plusCount(element, 1);
+    }
+
+    /**
+     * @param n the number of occurrences to add, at least 0
+     * @return this with n more occurrences of element
+     */
+    public MapPBag<E> plusCount(E element, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("negative count: " + n);
+        return setCount(element, count(element) + n);
+    }
+
+    /**
+     * @param n the new number of occurrences, at least 0
+     * @return this with element occurring exactly n times
+     */
+    public MapPBag<E> setCount(E element, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("negative count: " + n);
+        final int old = count(element);
+        if (n == old)
+            return this;
+        final int delta = n - old;
+        final PMap<E, Integer> map = n == 0 ? this.map.minus(element) : this.map.plus(element, n);
+        return new MapPBag<E>(map, size + delta, hashCode + delta * element.hashCode());
     }
 
     public MapPBag<E> plusAll(Collection<? extends E> list) {
@@ -125,11 +225,25 @@ public final class MapPBag<E> extends AbstractCollection<E> implements PBag<E>,
     }
 
     public MapPBag<E> plusAll(Iterable<? extends E> iterable) {
-        MapPBag<E> bag = this;
+        if (!(map instanceof HashPMap)) {
+            MapPBag<E> bag = this;
+            for (E e : iterable) {
+                bag = bag.plus(e);
+            }
+            return bag;
+        }
+        // count in place, rather than making a new bag for every element:
+        HashPMap.Transient<E, Integer> counts = ((HashPMap<E, Integer>) map).asTransient();
+        int size = this.size;
+        int hashCode = this.hashCode;
         for (E e : iterable) {
-            bag = bag.plus(e);
+            Integer n = counts.get(e);
+            counts.put(e, n == null ? 1 : n + 1);
+            size++;
+            hashCode += e.hashCode();
         }
-        return bag;
+        HashPMap<E, Integer> newMap = counts.persistent();
+        return size == this.size ? this : new MapPBag<E>(newMap, size, hashCode);
     }
 
     @SuppressWarnings("unchecked")
@@ -137,10 +251,7 @@ public final class MapPBag<E> extends AbstractCollection<E> implements PBag<E>,
         int n = count(element);
         if (n == 0)
             return this;
-        if (n == 1) // remove from map
-            return new MapPBag<E>(map.minus(element), size - 1);
-        // otherwise just decrement count:
-        return new MapPBag<E>(map.plus((E) element, n - 1), size - 1);
+        return setCount((E) element, n - 1);
     }
 
     public MapPBag<E> minusAll(Collection<?> list) {
@@ -148,22 +259,32 @@ public final class MapPBag<E> extends AbstractCollection<E> implements PBag<E>,
     }
 
     public MapPBag<E> minusAll(Iterable<?> iterable) {
-        // removes _all_ elements found in list, i.e. counts are irrelevant:
-        PMap<E, Integer> map = this.map.minusAll(iterable);
-        return new MapPBag<E>(map, size(map)); // (completely recomputes size)
-    }
-
-    @SuppressWarnings("unchecked")
-    private int count(Object o) {
-        return contains(o) ? map.get((E) o) : 0;
-    }
-
-    private static int size(PMap<?, Integer> map) {
-        int size = 0;
-        for (Integer n : map.values()) {
-            size += n;
+        // removes _all_ elements found in list, i.e. counts are irrelevant.
+        // the size and hash code are reduced by the counts of the elements as they are removed:
+        int size = this.size;
+        int hashCode = this.hashCode;
+        if (map instanceof HashPMap) {
+            HashPMap.Transient<E, Integer> counts = ((HashPMap<E, Integer>) map).asTransient();
+            for (Object e : iterable) {
+                Integer n = counts.get(e);
+                if (n != null) {
+                    counts.remove(e);
+                    size -= n;
+                    hashCode -= n * e.hashCode();
+                }
+            }
+            return size == this.size ? this : new MapPBag<E>(counts.persistent(), size, hashCode);
         }
-        return size;
+        PMap<E, Integer> map = this.map;
+        for (Object e : iterable) {
+            Integer n = map.get(e);
+            if (n != null) {
+                map = map.minus(e);
+                size -= n;
+                hashCode -= n * e.hashCode();
+            }
+        }
+        return map == this.map ? this : new MapPBag<E>(map, size, hashCode);
     }
 
     @Override
@@ -201,4 +322,12 @@ public final class MapPBag<E> extends AbstractCollection<E> implements PBag<E>,
     public void clear() {
         throw new UnsupportedOperationException();
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.BAG, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
 }
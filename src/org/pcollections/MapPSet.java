@@ -1,9 +1,19 @@
 package org.pcollections;
 
+import groovy.util.immutable.ImmutableSet;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * A map-backed immutable and persistent set.
@@ -11,14 +21,25 @@ import java.util.Iterator;
  * If the backing map is thread-safe, then this implementation is thread-safe
  * (assuming Java's AbstractSet is thread-safe), although its iterators
  * may not be.
+ * <p/>
+ * A set of up to 8 elements which is not backed by a map given to {@link #from(PMap)} keeps its
+ * elements in a flat array instead, which is scanned linearly. Such a set becomes backed by
+ * a {@link HashPMap} once it grows past 8 elements, and a set backed by a HashPMap goes back
+ * to an array once it shrinks to 8 elements or fewer.
+ * <p/>
+ * A set backed by a {@link HashPMap} or an array is also the {@link ImmutableSet} of
+ * {@link groovy.util.immutable.ImmutableCollections}.
  *
  * @author harold
  * @author Yu Kobayashi
  */
-public final class MapPSet<E> extends AbstractSet<E> implements PSet<E>, Serializable {
-    private static final MapPSet<Object> EMPTY = from(HashPMap.empty());
+public final class MapPSet<E> extends AbstractSet<E> implements PSet<E>, ImmutableSet<E>, Serializable {
+    private static final MapPSet<Object> EMPTY = new MapPSet<Object>(new Object[0]);
     private static final long serialVersionUID = -1344047864698590249L;
 
+    // the largest set kept as an array:
+    private static final int SMALL = 8;
+
     /**
      * @return an empty set
      */
@@ -35,12 +56,51 @@ public final class MapPSet<E> extends AbstractSet<E> implements PSet<E>, Seriali
     }
 
     /**
-     * @return empty().plus(list)
+     * @return empty().plus(list), or list itself if it is already a MapPSet
      */
+    @SuppressWarnings("unchecked")
     public static <E> MapPSet<E> from(Iterable<? extends E> list) {
+        if (list instanceof MapPSet)
+            return (MapPSet<E>) list;
+        if (list instanceof Collection)
+            return fromArray(((Collection<? extends E>) list).toArray());
         return MapPSet.<E>empty().plusAll(list);
     }
 
+    /**
+     * @return a set of the given elements, built in one pass
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <E> MapPSet<E> of(E... elements) {
+        return fromArray(elements);
+    }
+
+    // the distinct elements, scanned for in a new array if there are few enough of them,
+    // or added to a transient set otherwise:
+    private static <E> MapPSet<E> fromArray(Object[] elements) {
+        if (elements.length > SMALL) {
+            final Transient<E> t = new Transient<E>(HashPMap.<E, Object>empty());
+            for (Object e : elements) {
+                @SuppressWarnings("unchecked") E element = (E) e;
+                t.add(element);
+            }
+            return t.persistent();
+        }
+        final Object[] distinct = new Object[elements.length];
+        int n = 0;
+        for (Object e : elements) {
+            if (e == null)
+                throw new NullPointerException();
+            int i = 0;
+            while (i < n && !e.equals(distinct[i]))
+                i++;
+            if (i == n)
+                distinct[n++] = e;
+        }
+        return fromElements(n == distinct.length ? distinct : Arrays.copyOf(distinct, n));
+    }
+
     /**
      * @return a PSet with the elements of map.keySet(), backed by map
      */
@@ -63,26 +123,96 @@ public final class MapPSet<E> extends AbstractSet<E> implements PSet<E>, Seriali
         return from(map).plusAll(list);
     }
 
-    private final PMap<E, Object> map;
+    private final PMap<E, Object> map; // null if this is small
+    private final Object[] elements; // the elements if this is small, or null
 
     // not instantiable (or subclassable):
     private MapPSet(PMap<E, Object> map) {
         this.map = map;
+        this.elements = null;
+    }
+
+    private MapPSet(Object[] elements) {
+        this.map = null;
+        this.elements = elements;
+    }
+
+    private static <E> MapPSet<E> fromElements(Object[] elements) {
+        return elements.length == 0 ? MapPSet.<E>empty() : new MapPSet<E>(elements);
+    }
+
+    // a set backed by map, or by an array if map is a HashPMap of at most SMALL entries:
+    private static <E> MapPSet<E> fromHashMap(PMap<E, Object> map) {
+        if (map instanceof HashPMap && map.size() <= SMALL)
+            return fromElements(map.keySet().toArray());
+        return new MapPSet<E>(map);
+    }
+
+    // the elements of a small set as a HashPMap:
+    private static <E> HashPMap<E, Object> hashMapOf(Object[] elements) {
+        final HashPMap.Transient<E, Object> t = HashPMap.<E, Object>empty().asTransient();
+        for (Object e : elements) {
+            @SuppressWarnings("unchecked") E element = (E) e;
+            t.put(element, In.IN);
+        }
+        return t.persistent();
+    }
+
+    // the index of e in a small set; like a HashPMap, this holds no nulls:
+    private int indexOf(Object e) {
+        if (e == null)
+            throw new NullPointerException();
+        for (int i = 0; i < elements.length; i++) {
+            if (e.equals(elements[i]))
+                return i;
+        }
+        return -1;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public Iterator<E> iterator() {
+        if (elements != null)
+            return new ArrayListIterator<E>((E[]) elements, 0);
         return map.keySet().iterator();
     }
 
+    @Override
+    public Spliterator<E> spliterator() {
+        if (elements != null)
+            return Spliterators.spliterator(elements, Spliterator.DISTINCT | Spliterator.IMMUTABLE);
+        return map.keySet().spliterator(); // split along sub-tries by a HashPMap
+    }
+
     @Override
     public int size() {
-        return map.size();
+        return elements != null ? elements.length : map.size();
     }
 
     @Override
     public boolean contains(Object e) {
-        return map.containsKey(e);
+        return elements != null ? indexOf(e) >= 0 : map.containsKey(e);
+    }
+
+    @Override
+    public int hashCode() {
+        if (elements != null) {
+            int hashCode = 0;
+            for (Object e : elements) {
+                hashCode += e.hashCode();
+            }
+            return hashCode;
+        }
+        return map.keySet().hashCode(); // kept up to date by a HashPMap
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (o instanceof MapPSet && map instanceof HashPMap && ((MapPSet<?>) o).map instanceof HashPMap)
+            return ((HashPMap<E, Object>) map).keysEqual((HashPMap<?, ?>) ((MapPSet<?>) o).map);
+        return super.equals(o);
     }
 
     private static enum In {
@@ -90,30 +220,297 @@ public final class MapPSet<E> extends AbstractSet<E> implements PSet<E>, Seriali
     }
 
     public MapPSet<E> plus(E element) {
-        return contains(element) ? this : new MapPSet<E>(map.plus(element, In.IN));
+        if (contains(element))
+            return this;
+        if (elements == null)
+            return new MapPSet<E>(map.plus(element, In.IN));
+        if (elements.length < SMALL) {
+            final Object[] newElements = Arrays.copyOf(elements, elements.length + 1);
+            newElements[elements.length] = element;
+            return new MapPSet<E>(newElements);
+        }
+        final Transient<E> t = asTransient();
+        t.add(element);
+        return t.persistent();
     }
 
     public MapPSet<E> plusAll(Collection<? extends E> list) {
         return plusAll((Iterable<? extends E>) list);
     }
 
+    /**
+     * Another set backed by a {@link HashPMap}, if this is as well, is merged with this by {@link #union}.
+     */
     public MapPSet<E> plusAll(Iterable<? extends E> iterable) {
-        PMap<E, Object> map = this.map;
-        for (E e : iterable)
-            map = map.plus(e, In.IN);
-        return from(map);
+        if (hashMap(iterable) != null)
+            return union((MapPSet<? extends E>) iterable);
+        // a small set is grown one element at a time until it is backed by a HashPMap:
+        MapPSet<E> small = this;
+        Transient<E> t = elements != null ? null : asTransient();
+        boolean changed = false;
+        for (E e : iterable) {
+            if (t != null) {
+                changed |= t.add(e);
+            } else {
+                small = small.plus(e);
+                if (small.elements == null) {
+                    t = small.asTransient();
+                    changed = true;
+                }
+            }
+        }
+        if (t == null)
+            return small;
+        MapPSet<E> result = t.persistent();
+        return changed ? result : this;
+    }
+
+    public MapPSet<E> plus(Iterable<? extends E> iterable) {
+        return plusAll(iterable);
+    }
+
+    /**
+     * Returns a transient copy of this set, to build large sets without a new persistent
+     * set for every element. If the backing map is a {@link HashPMap}, the transient set updates
+     * it in place as a {@link HashPMap.Transient}; otherwise it falls back to persistent updates.
+     * A small set is copied into a HashPMap first. This set is not affected.
+     *
+     * @return a transient set holding the elements of this set
+     */
+    public Transient<E> asTransient() {
+        return new Transient<E>(elements != null ? MapPSet.<E>hashMapOf(elements) : map);
+    }
+
+    /**
+     * A mutable set which is built on the backing map of a MapPSet.
+     * <p/>
+     * A transient set can be used until {@link #persistent()} is called, and is not thread-safe.
+     *
+     * @param <E>
+     */
+    public static final class Transient<E> {
+        private final HashPMap.Transient<E, Object> hashMap; // null unless backed by a HashPMap
+        private PMap<E, Object> map; // null if backed by hashMap, or after persistent()
+
+        private Transient(PMap<E, Object> map) {
+            if (map instanceof HashPMap) {
+                this.hashMap = ((HashPMap<E, Object>) map).asTransient();
+            } else {
+                this.hashMap = null;
+                this.map = map;
+            }
+        }
+
+        private void checkNotPersistent() {
+            if (hashMap == null && map == null)
+                throw new IllegalStateException("persistent() has already been called");
+        }
+
+        public int size() {
+            checkNotPersistent();
+            return hashMap != null ? hashMap.size() : map.size();
+        }
+
+        public boolean contains(Object e) {
+            checkNotPersistent();
+            return hashMap != null ? hashMap.containsKey(e) : map.containsKey(e);
+        }
+
+        /**
+         * @return true if this set did not already contain element
+         */
+        public boolean add(E element) {
+            if (contains(element))
+                return false;
+            if (hashMap != null)
+                hashMap.put(element, In.IN);
+            else
+                map = map.plus(element, In.IN);
+            return true;
+        }
+
+        /**
+         * @return true if this set contained element
+         */
+        public boolean remove(Object element) {
+            if (!contains(element))
+                return false;
+            if (hashMap != null)
+                hashMap.remove(element);
+            else
+                map = map.minus(element);
+            return true;
+        }
+
+        /**
+         * Ends the use of this transient set.
+         *
+         * @return a persistent set holding the elements of this set
+         */
+        public MapPSet<E> persistent() {
+            checkNotPersistent();
+            if (hashMap != null)
+                return fromHashMap(hashMap.persistent());
+            final PMap<E, Object> map = this.map;
+            this.map = null;
+            return from(map);
+        }
+    }
+
+    /**
+     * Each task builds a trie of its part of the result, and the tries are merged node by node.
+     *
+     * @return a set of the results of transform, backed by a {@link HashPMap}
+     */
+    public <R> MapPSet<R> collectParallel(final Function<? super E, ? extends R> transform) {
+        return fromHashMap(HashPMap.fromRoot(new Parallel.TrieBuilder<E, R, Object>() {
+            @Override
+            void apply(E e, HashPMap.Transient<R, Object> out) {
+                out.put(transform.apply(e), In.IN);
+            }
+        }.invoke(spliterator())));
+    }
+
+    /**
+     * Like {@link #collectParallel}, with each element replaced by all elements of the iterable transform returns.
+     *
+     * @return a set of the elements of the results of transform, backed by a {@link HashPMap}
+     */
+    public <R> MapPSet<R> collectManyParallel(final Function<? super E, ? extends Iterable<? extends R>> transform) {
+        return fromHashMap(HashPMap.fromRoot(new Parallel.TrieBuilder<E, R, Object>() {
+            @Override
+            void apply(E e, HashPMap.Transient<R, Object> out) {
+                for (R r : transform.apply(e))
+                    out.put(r, In.IN);
+            }
+        }.invoke(spliterator())));
+    }
+
+    /**
+     * Like {@link #collectParallel}, keeping the elements which satisfy filter.
+     *
+     * @return a set of the elements of this which satisfy filter, backed by a {@link HashPMap}
+     */
+    public MapPSet<E> findAllParallel(final Predicate<? super E> filter) {
+        final MapPSet<E> result = fromHashMap(HashPMap.fromRoot(new Parallel.TrieBuilder<E, E, Object>() {
+            @Override
+            void apply(E e, HashPMap.Transient<E, Object> out) {
+                if (filter.test(e))
+                    out.put(e, In.IN);
+            }
+        }.invoke(spliterator())));
+        return result.size() == size() && (elements != null || map instanceof HashPMap) ? this : result;
     }
 
     public MapPSet<E> minus(Object element) {
-        return contains(element) ? new MapPSet<E>(map.minus(element)) : this;
+        if (elements == null)
+            return contains(element) ? fromHashMap(map.minus(element)) : this;
+        final int i = indexOf(element);
+        if (i < 0)
+            return this;
+        final Object[] newElements = new Object[elements.length - 1];
+        System.arraycopy(elements, 0, newElements, 0, i);
+        System.arraycopy(elements, i + 1, newElements, i, newElements.length - i);
+        return fromElements(newElements);
     }
 
     public MapPSet<E> minusAll(Collection<?> list) {
         return minusAll((Iterable<?>) list);
     }
 
+    /**
+     * Another set backed by a {@link HashPMap}, if this is as well, is subtracted from this by {@link #difference}.
+     */
     public MapPSet<E> minusAll(Iterable<?> iterable) {
-        return from(map.minusAll(iterable));
+        if (hashMap(iterable) != null)
+            return difference((MapPSet<?>) iterable);
+        if (elements != null) {
+            MapPSet<E> s = this;
+            for (Object e : iterable) {
+                s = s.minus(e);
+            }
+            return s;
+        }
+        return fromHashMap(map.minusAll(iterable));
+    }
+
+    public MapPSet<E> minus(Iterable<?> iterable) {
+        return minusAll(iterable);
+    }
+
+    //// SET ALGEBRA ////
+    // If both sets are backed by a HashPMap, their tries are merged node by node, reusing every
+    // sub-trie which only one of them has or which is not changed, and skipping any sub-trie they
+    // share. This takes time proportional to the differences between the sets rather than to their sizes.
+    // Otherwise, including when either set is small, the elements of the other set are added,
+    // removed or looked up one by one.
+
+    // the backing map of o if both o and this are backed by a HashPMap, or null:
+    private HashPMap<?, ?> hashMap(Object o) {
+        if (map instanceof HashPMap && o instanceof MapPSet && ((MapPSet<?>) o).map instanceof HashPMap)
+            return (HashPMap<?, ?>) ((MapPSet<?>) o).map;
+        return null;
+    }
+
+    /**
+     * @return a set holding the elements of this and of set
+     */
+    @SuppressWarnings("unchecked")
+    public MapPSet<E> union(Collection<? extends E> set) {
+        final HashPMap<?, ?> other = hashMap(set);
+        if (other == null)
+            return plusAll(set);
+        // the elements of this win, so that its sub-tries are kept as they are:
+        final HashPMap<E, Object> result = ((HashPMap<E, Object>) other).plusAll(map);
+        return result.size() == size() ? this : new MapPSet<E>(result);
+    }
+
+    /**
+     * @return a set holding the elements of this which are in set
+     */
+    public MapPSet<E> intersect(Collection<?> set) {
+        final HashPMap<?, ?> other = hashMap(set);
+        if (other != null)
+            return withMap(((HashPMap<E, Object>) map).retainKeys(other));
+        if (elements != null) {
+            final ArrayList<Object> kept = new ArrayList<Object>(elements.length);
+            for (Object e : elements) {
+                if (set.contains(e))
+                    kept.add(e);
+            }
+            return kept.size() == elements.length ? this : MapPSet.<E>fromElements(kept.toArray());
+        }
+        Transient<E> t = asTransient();
+        for (E e : this) {
+            if (!set.contains(e))
+                t.remove(e);
+        }
+        final MapPSet<E> result = t.persistent();
+        return result.size() == size() ? this : result;
+    }
+
+    /**
+     * @return a set holding the elements of this which are not in set
+     */
+    public MapPSet<E> difference(Collection<?> set) {
+        final HashPMap<?, ?> other = hashMap(set);
+        if (other != null)
+            return withMap(((HashPMap<E, Object>) map).removeKeys(other));
+        return minusAll(set);
+    }
+
+    /**
+     * @return whether all elements of this are in set
+     */
+    public boolean isSubsetOf(Collection<?> set) {
+        final HashPMap<?, ?> other = hashMap(set);
+        if (other != null)
+            return ((HashPMap<?, ?>) map).keysSubsetOf(other);
+        return size() <= set.size() && set.containsAll(this);
+    }
+
+    private MapPSet<E> withMap(PMap<E, Object> map) {
+        return map == this.map ? this : fromHashMap(map);
     }
 
     @Override
@@ -151,4 +548,14 @@ public final class MapPSet<E> extends AbstractSet<E> implements PSet<E>, Seriali
     public void clear() {
         throw new UnsupportedOperationException();
     }
+
+    //// SERIALIZATION ////
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.SET, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
 }
@@ -1,19 +1,43 @@
 package org.pcollections;
 
+import groovy.util.immutable.ImmutableListSet;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
- * An immutable and persistent set.
+ * An immutable and persistent set, which iterates over its elements in insertion order.
+ * <p/>
+ * Each element is numbered in the order it was added. A hash map from the elements to their
+ * numbers sits beside a size-balanced tree from the numbers back to the elements, so that
+ * contains, get(int), indexOf and minus take O(log n) time: the index of an element is
+ * the number of elements in the tree whose numbers are less than its own.
+ * <p/>
+ * A set of up to 8 elements keeps them in order in a flat array instead, which is scanned
+ * linearly. It is numbered once it grows past 8 elements, and goes back to an array once it
+ * shrinks to 8 elements or fewer.
+ * <p/>
+ * This is also the {@link ImmutableListSet} of {@link groovy.util.immutable.ImmutableCollections}.
  *
  * @author Yu Kobayashi
  */
-public final class OrderedPSet<E> extends AbstractSet<E> implements POrderedSet<E>, Serializable {
-    private static final OrderedPSet<Object> EMPTY = new OrderedPSet<Object>();
+public final class OrderedPSet<E> extends AbstractSet<E> implements POrderedSet<E>, ImmutableListSet<E>, Serializable {
+    private static final OrderedPSet<Object> EMPTY = new OrderedPSet<Object>(new Object[0]);
     private static final long serialVersionUID = -5920090981526873189L;
 
+    // the largest set kept as an array:
+    private static final int SMALL = 8;
+
     @SuppressWarnings("unchecked")
     public static <E> OrderedPSet<E> empty() {
         return (OrderedPSet<E>) EMPTY;
@@ -30,48 +54,224 @@ public final class OrderedPSet<E> extends AbstractSet<E> implements POrderedSet<
         return OrderedPSet.<E>empty().plusAll(list);
     }
 
-    private final MapPSet<E> contents;
-    private final TreePVector<E> order;
-
-    private OrderedPSet() {
-        this(MapPSet.<E>empty(), TreePVector.<E>empty());
+    /**
+     * @return a set of the given elements in order, built in one pass
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <E> OrderedPSet<E> of(E... elements) {
+        return OrderedPSet.<E>empty().plusAll(Arrays.asList(elements));
     }
 
-    private OrderedPSet(MapPSet<E> contents, TreePVector<E> order) {
-        this.contents = contents;
+    private final HashPMap<E, Long> numbers; // element -> its number, or null if this is small
+    private final IntTree<E> order; // number -> element, or null if this is small
+    private final Object[] elements; // the elements in order if this is small, or null
+
+    private OrderedPSet(HashPMap<E, Long> numbers, IntTree<E> order) {
+        this.numbers = numbers;
         this.order = order;
+        this.elements = null;
+    }
+
+    private OrderedPSet(Object[] elements) {
+        this.numbers = null;
+        this.order = null;
+        this.elements = elements;
+    }
+
+    private static <E> OrderedPSet<E> fromElements(Object[] elements) {
+        return elements.length == 0 ? OrderedPSet.<E>empty() : new OrderedPSet<E>(elements);
+    }
+
+    // the distinct elements, numbered from 0 in order:
+    private static <E> OrderedPSet<E> numbered(Object[] elements) {
+        HashPMap.Transient<E, Long> numbers = HashPMap.<E, Long>empty().asTransient();
+        for (int i = 0; i < elements.length; i++) {
+            @SuppressWarnings("unchecked") E element = (E) elements[i];
+            numbers.put(element, (long) i);
+        }
+        return new OrderedPSet<E>(numbers.persistent(), IntTree.<E>fromSorted(null, elements));
+    }
+
+    // the index of o in a small set; like a HashPMap, this holds no nulls:
+    private int find(Object o) {
+        if (o == null)
+            throw new NullPointerException();
+        for (int i = 0; i < elements.length; i++) {
+            if (o.equals(elements[i]))
+                return i;
+        }
+        return -1;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public Iterator<E> iterator() {
-        return order.iterator();
+        if (elements != null)
+            return new ArrayListIterator<E>((E[]) elements, 0);
+        return order.valueIterator();
+    }
+
+    /**
+     * A numbered set is split along the sub-trees of its order, for parallel streams.
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        if (elements != null)
+            return Spliterators.spliterator(elements, Spliterator.DISTINCT | Spliterator.ORDERED | Spliterator.IMMUTABLE);
+        return order.valueSpliterator(Spliterator.DISTINCT);
     }
 
     @Override
     public int size() {
-        return contents.size();
+        return elements != null ? elements.length : order.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return elements != null ? find(o) >= 0 : numbers.containsKey(o);
+    }
+
+    @Override
+    public int hashCode() {
+        if (elements != null) {
+            int hashCode = 0;
+            for (Object e : elements) {
+                hashCode += e.hashCode();
+            }
+            return hashCode;
+        }
+        return numbers.keySet().hashCode(); // kept up to date by a HashPMap
+    }
+
+    // the number for the next element added:
+    private long nextNumber() {
+        return order.size() == 0 ? 0 : order.maxKey() + 1;
+    }
+
+    /**
+     * Applies transform to every element in parallel, splitting this by its spliterator like
+     * {@link TreePVector#collectParallel}. Duplicate results are then removed sequentially.
+     *
+     * @return a set of the results of transform, in the order of this
+     */
+    public <R> OrderedPSet<R> collectParallel(final Function<? super E, ? extends R> transform) {
+        return OrderedPSet.<R>empty().plusAll(new Parallel.VectorBuilder<E, R>() {
+            @Override
+            void apply(E e, TreePVector.Transient<R> out) {
+                out.add(transform.apply(e));
+            }
+        }.invoke(spliterator()));
+    }
+
+    /**
+     * Like {@link #collectParallel}, with each element replaced by all elements of the iterable transform returns.
+     *
+     * @return a set of the elements of the results of transform, in the order of this
+     */
+    public <R> OrderedPSet<R> collectManyParallel(final Function<? super E, ? extends Iterable<? extends R>> transform) {
+        return OrderedPSet.<R>empty().plusAll(new Parallel.VectorBuilder<E, R>() {
+            @Override
+            void apply(E e, TreePVector.Transient<R> out) {
+                out.addAll(transform.apply(e));
+            }
+        }.invoke(spliterator()));
+    }
+
+    /**
+     * Tests every element in parallel, splitting this by its spliterator like
+     * {@link TreePVector#findAllParallel}. The kept elements are then numbered in one pass.
+     *
+     * @return a set of the elements of this which satisfy filter, in the order of this
+     */
+    public OrderedPSet<E> findAllParallel(final Predicate<? super E> filter) {
+        final TreePVector<E> kept = new Parallel.VectorBuilder<E, E>() {
+            @Override
+            void apply(E e, TreePVector.Transient<E> out) {
+                if (filter.test(e))
+                    out.add(e);
+            }
+        }.invoke(spliterator());
+        return kept.size() == size() ? this : subset(kept.toArray());
+    }
+
+    /**
+     * Like {@link #findAllParallel}, testing the elements one at a time in order.
+     *
+     * @return a set of the elements of this which satisfy filter, in the order of this
+     */
+    public OrderedPSet<E> findAll(Predicate<? super E> filter) {
+        final Object[] kept = new Object[size()];
+        int n = 0;
+        for (E e : this) {
+            if (filter.test(e))
+                kept[n++] = e;
+        }
+        return n == kept.length ? this : subset(Arrays.copyOf(kept, n));
     }
 
+    // a set of values, which are elements of this in the order of this, keeping their numbers:
+    private OrderedPSet<E> subset(Object[] values) {
+        if (values.length <= SMALL)
+            return fromElements(values);
+        final HashPMap.Transient<E, Long> newNumbers = HashPMap.<E, Long>empty().asTransient();
+        final long[] keys = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            @SuppressWarnings("unchecked") E e = (E) values[i];
+            keys[i] = numbers.get(e);
+            newNumbers.put(e, keys[i]);
+        }
+        return new OrderedPSet<E>(newNumbers.persistent(), IntTree.<E>fromSorted(keys, values));
+    }
+
+    // this with only the entries of newNumbers, whose elements are kept in the order of this,
+    // as an array if there are few enough of them:
+    private OrderedPSet<E> retain(HashPMap<E, Long> newNumbers, Iterable<E> kept) {
+        long[] keys = new long[newNumbers.size()];
+        Object[] values = new Object[keys.length];
+        int i = 0;
+        for (E e : kept) {
+            Long n = newNumbers.get(e);
+            if (n != null) {
+                keys[i] = n;
+                values[i++] = e;
+            }
+        }
+        if (values.length <= SMALL)
+            return fromElements(values);
+        return new OrderedPSet<E>(newNumbers, IntTree.<E>fromSorted(keys, values));
+    }
+
+    @SuppressWarnings("unchecked")
     public E get(int index) {
-        return order.get(index);
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException();
+        return elements != null ? (E) elements[index] : order.valueAt(index);
     }
 
     public int indexOf(Object o) {
-        if (!contents.contains(o))
-            return -1;
-        return order.indexOf(o);
+        if (elements != null)
+            return find(o);
+        Long n = numbers.get(o);
+        return n == null ? -1 : order.rank(n);
     }
 
     public int lastIndexOf(Object o) {
-        if (!contents.contains(o))
-            return -1;
-        return order.lastIndexOf(o);
+        return indexOf(o);
     }
 
     public OrderedPSet<E> plus(E element) {
-        if (contents.contains(element))
+        if (contains(element))
             return this;
-        return new OrderedPSet<E>(contents.plus(element), order.plus(element));
+        if (elements != null) {
+            final Object[] newElements = Arrays.copyOf(elements, elements.length + 1);
+            newElements[elements.length] = element;
+            if (newElements.length <= SMALL)
+                return new OrderedPSet<E>(newElements);
+            return numbered(newElements);
+        }
+        long n = nextNumber();
+        return new OrderedPSet<E>(numbers.plus(element, n), order.plus(n, element));
     }
 
     public OrderedPSet<E> plusAll(Collection<? extends E> list) {
@@ -79,29 +279,167 @@ public final class OrderedPSet<E> extends AbstractSet<E> implements POrderedSet<
     }
 
     public OrderedPSet<E> plusAll(Iterable<? extends E> iterable) {
-        OrderedPSet<E> s = this;
+        if (elements != null)
+            return plusAllSmall(iterable);
+        HashPMap.Transient<E, Long> newNumbers = numbers.asTransient();
+        ArrayList<Object> added = new ArrayList<Object>();
+        long n = nextNumber();
         for (E e : iterable) {
-            s = s.plus(e);
+            if (!newNumbers.containsKey(e)) {
+                newNumbers.put(e, n + added.size());
+                added.add(e);
+            }
         }
-        return s;
+        if (added.isEmpty())
+            return this;
+        IntTree<E> newOrder = order;
+        for (Object e : added) {
+            @SuppressWarnings("unchecked") E element = (E) e;
+            newOrder = newOrder.plus(n++, element);
+        }
+        return new OrderedPSet<E>(newNumbers.persistent(), newOrder);
+    }
+
+    // the elements are scanned for in the array while it is small; once it is not, they are all
+    // numbered from 0, so the tree can be built in one pass:
+    private OrderedPSet<E> plusAllSmall(Iterable<? extends E> iterable) {
+        ArrayList<Object> all = new ArrayList<Object>(elements.length
+                + (iterable instanceof Collection ? ((Collection<?>) iterable).size() : 10));
+        all.addAll(Arrays.asList(elements));
+        HashPMap.Transient<E, Long> newNumbers = null; // once all is too large to scan
+        for (E e : iterable) {
+            if (newNumbers != null) {
+                if (!newNumbers.containsKey(e)) {
+                    newNumbers.put(e, (long) all.size());
+                    all.add(e);
+                }
+            } else if (!all.contains(e)) {
+                if (e == null)
+                    throw new NullPointerException();
+                all.add(e);
+                if (all.size() > SMALL) {
+                    newNumbers = HashPMap.<E, Long>empty().asTransient();
+                    for (int i = 0; i < all.size(); i++) {
+                        @SuppressWarnings("unchecked") E element = (E) all.get(i);
+                        newNumbers.put(element, (long) i);
+                    }
+                }
+            }
+        }
+        if (newNumbers != null)
+            return new OrderedPSet<E>(newNumbers.persistent(), IntTree.<E>fromSorted(null, all.toArray()));
+        return all.size() == elements.length ? this : new OrderedPSet<E>(all.toArray());
+    }
+
+    public OrderedPSet<E> plus(Iterable<? extends E> iterable) {
+        return plusAll(iterable);
+    }
+
+    /**
+     * Another OrderedPSet is intersected node by node like {@link MapPSet#intersect}.
+     *
+     * @return a set of the elements of this which are in set, in the order of this
+     */
+    public OrderedPSet<E> intersect(Collection<?> set) {
+        if (elements != null) {
+            final ArrayList<Object> kept = new ArrayList<Object>(elements.length);
+            for (Object e : elements) {
+                if (set.contains(e))
+                    kept.add(e);
+            }
+            return kept.size() == elements.length ? this : OrderedPSet.<E>fromElements(kept.toArray());
+        }
+        HashPMap<E, Long> newNumbers;
+        if (set instanceof OrderedPSet && ((OrderedPSet<?>) set).numbers != null) {
+            newNumbers = numbers.retainKeys(((OrderedPSet<?>) set).numbers);
+        } else {
+            HashPMap.Transient<E, Long> t = numbers.asTransient();
+            for (E e : this) {
+                if (!set.contains(e))
+                    t.remove(e);
+            }
+            newNumbers = t.persistent();
+        }
+        if (newNumbers.size() == size())
+            return this;
+        return retain(newNumbers, this);
+    }
+
+    /**
+     * @return whether all elements of this are in set
+     */
+    public boolean isSubsetOf(Collection<?> set) {
+        if (numbers != null && set instanceof OrderedPSet && ((OrderedPSet<?>) set).numbers != null)
+            return numbers.keysSubsetOf(((OrderedPSet<?>) set).numbers);
+        return size() <= set.size() && set.containsAll(this);
     }
 
     public OrderedPSet<E> minus(Object element) {
-        if (!contents.contains(element))
+        if (elements != null) {
+            final int i = find(element);
+            if (i < 0)
+                return this;
+            final Object[] newElements = new Object[elements.length - 1];
+            System.arraycopy(elements, 0, newElements, 0, i);
+            System.arraycopy(elements, i + 1, newElements, i, newElements.length - i);
+            return fromElements(newElements);
+        }
+        Long n = numbers.get(element);
+        if (n == null)
             return this;
-        return new OrderedPSet<E>(contents.minus(element), order.minus(element));
+        final IntTree<E> newOrder = order.minus(n);
+        if (newOrder.size() <= SMALL) {
+            final Object[] newElements = new Object[newOrder.size()];
+            final Iterator<E> i = newOrder.valueIterator();
+            for (int j = 0; j < newElements.length; j++) {
+                newElements[j] = i.next();
+            }
+            return new OrderedPSet<E>(newElements);
+        }
+        return new OrderedPSet<E>(numbers.minus(element), newOrder);
     }
 
     public OrderedPSet<E> minusAll(Collection<?> list) {
-        return minusAll((Iterable<? extends E>) list);
+        return minusAll((Iterable<?>) list);
     }
 
+    /**
+     * The elements are removed from the hash map in one pass through a transient map. If only
+     * a few of them were in this, their numbers are then removed from the tree one at a time,
+     * and otherwise the tree is rebuilt from the remaining elements in one pass.
+     */
     public OrderedPSet<E> minusAll(Iterable<?> iterable) {
-        OrderedPSet<E> s = this;
+        if (elements != null) {
+            OrderedPSet<E> s = this;
+            for (Object e : iterable) {
+                s = s.minus(e);
+            }
+            return s;
+        }
+        final HashPMap.Transient<E, Long> newNumbers = numbers.asTransient();
+        final ArrayList<Long> removed = new ArrayList<Long>();
         for (Object e : iterable) {
-            s = s.minus(e);
+            final Long n = newNumbers.get(e);
+            if (n != null) {
+                newNumbers.remove(e);
+                removed.add(n);
+            }
         }
-        return s;
+        if (removed.isEmpty())
+            return this;
+        final HashPMap<E, Long> kept = newNumbers.persistent();
+        // each removal from the tree allocates a path of about log n nodes:
+        if (kept.size() <= SMALL || removed.size() > size() >>> 4)
+            return retain(kept, this);
+        IntTree<E> newOrder = order;
+        for (Long n : removed) {
+            newOrder = newOrder.minus(n);
+        }
+        return new OrderedPSet<E>(kept, newOrder);
+    }
+
+    public OrderedPSet<E> minus(Iterable<?> iterable) {
+        return minusAll(iterable);
     }
 
     @Override
@@ -139,4 +477,12 @@ public final class OrderedPSet<E> extends AbstractSet<E> implements POrderedSet<
     public void clear() {
         throw new UnsupportedOperationException();
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.ORDERED_SET, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
 }
@@ -64,6 +64,11 @@ public interface PSequence<E> extends PCollection<E>, List<E> {
 	public PSequence<E> minusAll(Collection<?> list);
 
 	/**
+	 * Note that {@link TreePVector} also has minus(Integer), which removes an element, so from
+	 * Groovy {@code vector - 0} and {@code vector.minus(0)} remove the element 0 from a TreePVector,
+	 * but the element at index 0 from other sequences such as {@link ConsPStack}. Call
+	 * {@link TreePVector#minusAt(int)} to remove an index from a TreePVector in Groovy.
+	 *
 	 * @param i
 	 * @return a sequence consisting of the elements of this with the element at index i removed.
 	 * @throws IndexOutOfBoundsException if i&lt;0 || i&gt;=this.size()
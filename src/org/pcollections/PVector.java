@@ -51,6 +51,11 @@ public interface PVector<E> extends PSequence<E> {
 	//@Override
 	public PVector<E> minusAll(Collection<?> list);
 
+	/**
+	 * Returns a vector consisting of the elements of this with the element at index i removed.
+	 * From Groovy, a call with an int on a {@link TreePVector} removes an element instead,
+	 * as described at {@link PSequence#minus(int)}.
+	 */
 	//@Override
 	public PVector<E> minus(int i);
 
@@ -0,0 +1,143 @@
+package org.pcollections;
+
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * A non-public utility class for building persistent collections in parallel.
+ * <p/>
+ * The source is split by its spliterator into about four tasks per worker of the common
+ * {@link ForkJoinPool}. Each task builds a part of the result on its own, and the parts are
+ * joined pairwise by the tasks that forked them: vectors by concatenating their trees along
+ * the seam between them in O(log n) time, and hash tries by merging the tries node by node,
+ * reusing every sub-trie only one of the parts has.
+ *
+ * @author Yu Kobayashi
+ */
+final class Parallel {
+    // tasks smaller than this are not split further:
+    private static final int MIN_TASK_SIZE = 1024;
+
+    // not instantiable:
+    private Parallel() {
+    }
+
+    /**
+     * Builds a part of the result from the elements of a spliterator.
+     *
+     * @param <T> the type of the source elements
+     * @param <P> the type of the parts of the result
+     */
+    abstract static class Builder<T, P> {
+        /**
+         * @return a part holding the results for all remaining elements of source
+         */
+        abstract P build(Spliterator<T> source);
+
+        /**
+         * @return a part holding the results of left followed by those of right
+         */
+        abstract P join(P left, P right);
+
+        final P invoke(final Spliterator<T> source) {
+            final long threshold = Math.max(MIN_TASK_SIZE,
+                    source.estimateSize() / (4L * ForkJoinPool.getCommonPoolParallelism()));
+            return ForkJoinPool.commonPool().invoke(new Task<T, P>(this, source, threshold));
+        }
+    }
+
+    private static final class Task<T, P> extends RecursiveTask<P> {
+        private static final long serialVersionUID = 1L;
+
+        private final Builder<T, P> builder;
+        private final Spliterator<T> source;
+        private final long threshold;
+
+        Task(final Builder<T, P> builder, final Spliterator<T> source, final long threshold) {
+            this.builder = builder;
+            this.source = source;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected P compute() {
+            if (source.estimateSize() > threshold) {
+                final Spliterator<T> prefix = source.trySplit();
+                if (prefix != null) {
+                    final Task<T, P> left = new Task<T, P>(builder, prefix, threshold);
+                    left.fork();
+                    final P right = new Task<T, P>(builder, source, threshold).compute();
+                    return builder.join(left.join(), right);
+                }
+            }
+            return builder.build(source);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Spliterator<T> spliterator(final Collection<? extends T> source) {
+        return (Spliterator<T>) source.spliterator();
+    }
+
+    //// VECTORS ////
+
+    /**
+     * Builds vectors from the results for each element. Each task appends its results to a
+     * transient vector, and the parts are joined by {@link TreePVector#concat}.
+     */
+    abstract static class VectorBuilder<T, R> extends Builder<T, TreePVector<R>> {
+        /**
+         * Appends the results for e, if any, to out.
+         */
+        abstract void apply(T e, TreePVector.Transient<R> out);
+
+        @Override
+        final TreePVector<R> build(final Spliterator<T> source) {
+            final TreePVector.Transient<R> out = TreePVector.<R>empty().asTransient();
+            source.forEachRemaining(new Consumer<T>() {
+                public void accept(final T e) {
+                    apply(e, out);
+                }
+            });
+            return out.persistent();
+        }
+
+        @Override
+        final TreePVector<R> join(final TreePVector<R> left, final TreePVector<R> right) {
+            return left.concat(right);
+        }
+    }
+
+    //// HASH TRIES ////
+
+    /**
+     * Builds hash tries from the entries resulting from each element. Of several entries with
+     * the same key, the one resulting from the later element wins if the source is ordered,
+     * as in a sequential build.
+     */
+    abstract static class TrieBuilder<T, K, V> extends Builder<T, HashTrie<K, V>> {
+        /**
+         * Puts the entries resulting from e, if any, into out.
+         */
+        abstract void apply(T e, HashPMap.Transient<K, V> out);
+
+        @Override
+        final HashTrie<K, V> build(final Spliterator<T> source) {
+            final HashPMap.Transient<K, V> out = HashPMap.<K, V>empty().asTransient();
+            source.forEachRemaining(new Consumer<T>() {
+                public void accept(final T e) {
+                    apply(e, out);
+                }
+            });
+            return out.persistentRoot();
+        }
+
+        @Override
+        final HashTrie<K, V> join(final HashTrie<K, V> left, final HashTrie<K, V> right) {
+            return HashTrie.union(left, right);
+        }
+    }
+}
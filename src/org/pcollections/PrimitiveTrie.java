@@ -0,0 +1,354 @@
+package org.pcollections;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A non-public base class of the primitive vectors, {@link IntTreePVector}, {@link LongTreePVector}
+ * and {@link DoubleTreePVector}, which differ only in the type A of their leaves.
+ * <p/>
+ * The elements are kept in leaves which are primitive arrays of 32 elements, so they are
+ * handled as Objects here, moved with System.arraycopy, and only read and written by the
+ * subclasses. Inner nodes are Object arrays of 32 children, filled from the left, and the child
+ * holding an index is found from the bits of the index alone. The last 1 to 32 elements are kept
+ * in a separate tail leaf, so the tree only holds full leaves and the length of the tail follows
+ * from the size.
+ * <p/>
+ * As in {@link RrbTree}, the level of a node is given by its shift: leaves have shift 0, and an
+ * inner node at shift s has children at shift s-5. Nodes are never modified once they are
+ * reachable from a vector, so this class is thread-safe.
+ *
+ * @author Yu Kobayashi
+ */
+abstract class PrimitiveTrie<A, V extends PrimitiveTrie<A, V>> implements Serializable {
+    static final int BITS = 5;
+    static final int WIDTH = 1 << BITS;
+    static final int MASK = WIDTH - 1;
+
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    private static final long serialVersionUID = 1L;
+
+    final int size;
+    private final Object[] root; // holds the first tailOffset() elements
+    private final int shift; // level of root, at least 5
+    private final A tail; // holds the last 1 to 32 elements, if any
+    transient int hashCode; // computed on first use by the subclass, 0 if not yet
+
+    /**
+     * An empty vector with the given empty leaf as its tail.
+     */
+    PrimitiveTrie(A emptyLeaf) {
+        this(0, EMPTY_NODE, BITS, emptyLeaf);
+    }
+
+    PrimitiveTrie(int size, Object[] root, int shift, A tail) {
+        this.size = size;
+        this.root = root;
+        this.shift = shift;
+        this.tail = tail;
+    }
+
+    //// THE PRIMITIVE TYPE ////
+
+    /**
+     * @return a new leaf of the given length
+     */
+    abstract A newLeaf(int length);
+
+    /**
+     * @return a vector of the subclass with the given fields
+     */
+    abstract V create(int size, Object[] root, int shift, A tail);
+
+    /**
+     * @return whether the given leaves hold the same elements
+     */
+    abstract boolean leafEquals(A a, A b);
+
+    /**
+     * @return the element at index, boxed
+     */
+    abstract Object boxed(int index);
+
+    //// READING ////
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    final int tailOffset() {
+        return size == 0 ? 0 : (size - 1) & ~MASK;
+    }
+
+    /**
+     * @return the leaf holding index, which is the tail from tailOffset() on, or throws if index is out of range
+     */
+    @SuppressWarnings("unchecked")
+    final A leafFor(final int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException();
+        if (index >= tailOffset())
+            return tail;
+        Object[] node = root;
+        for (int s = shift; s > BITS; s -= BITS)
+            node = (Object[]) node[(index >>> s) & MASK];
+        return (A) node[(index >>> BITS) & MASK];
+    }
+
+    /**
+     * Copies the elements of this from start (inclusive) to end (exclusive) into dest, a leaf at a time.
+     */
+    final void copyInto(final int start, final int end, final A dest, int destPos) {
+        if (start < 0 || end > size || start > end)
+            throw new IndexOutOfBoundsException();
+        for (int index = start; index < end; ) {
+            final int i = index & MASK;
+            final int n = Math.min(WIDTH - i, end - index);
+            System.arraycopy(leafFor(index), i, dest, destPos, n);
+            index += n;
+            destPos += n;
+        }
+    }
+
+    /**
+     * @return the elements of this from start (inclusive) to end (exclusive), in a new array
+     */
+    final A copyOf(final int start, final int end) {
+        if (start < 0 || end > size || start > end)
+            throw new IndexOutOfBoundsException();
+        final A array = newLeaf(end - start);
+        copyInto(start, end, array, 0);
+        return array;
+    }
+
+    /**
+     * @return whether that holds the same elements as this, skipping the leaves they share
+     */
+    final boolean sameElements(final PrimitiveTrie<A, V> that) {
+        if (size != that.size || hashCode != 0 && that.hashCode != 0 && hashCode != that.hashCode)
+            return false;
+        // leaves hold the same indices in both:
+        for (int index = root == that.root ? tailOffset() : 0; index < size; index += WIDTH) {
+            final A a = leafFor(index), b = that.leafFor(index);
+            if (a != b && !leafEquals(a, b))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new BoxedList<Object>(this).toString();
+    }
+
+    //// UPDATING ////
+
+    /**
+     * @return a copy of the tail with room for one more element at its end, or a new leaf of one
+     * element if the tail is full, to be filled in and passed to {@link #withGrownTail}
+     */
+    final A grownTail() {
+        final int n = size - tailOffset();
+        if (n == WIDTH)
+            return newLeaf(1);
+        final A leaf = newLeaf(n + 1);
+        System.arraycopy(tail, 0, leaf, 0, n);
+        return leaf;
+    }
+
+    /**
+     * @return this with one more element, the last of leaf from {@link #grownTail}
+     */
+    final V withGrownTail(final A leaf) {
+        final int tailOffset = tailOffset();
+        if (size - tailOffset < WIDTH)
+            return create(size + 1, root, shift, leaf);
+        // the tail is full, move it into the tree:
+        if (isFull(shift, tailOffset))
+            return create(size + 1, newRoot(root, shift, tail), shift + BITS, leaf);
+        return create(size + 1, pushLeaf(root, shift, tailOffset, tail), shift, leaf);
+    }
+
+    /**
+     * @return this with the leaf holding index replaced by leaf
+     */
+    final V withLeaf(final int index, final A leaf) {
+        if (index >= tailOffset())
+            return create(size, root, shift, leaf);
+        return create(size, setLeaf(root, shift, index, leaf), shift, tail);
+    }
+
+    /**
+     * Fills up the tail and then moves whole leaves into the tree, and builds an empty vector
+     * bottom-up with one allocation per node, so either takes linear time.
+     *
+     * @return this with array[start..end) appended
+     */
+    @SuppressWarnings("unchecked")
+    final V plusRange(final A array, int start, final int end) {
+        if (start == end)
+            return (V) this;
+        if (size == 0)
+            return fromRange(array, start, end);
+        int size = this.size;
+        Object[] root = this.root;
+        int shift = this.shift;
+        A tail = this.tail;
+        final int tailLength = size - tailOffset();
+        if (tailLength < WIDTH) {
+            final int n = Math.min(WIDTH - tailLength, end - start);
+            final A newTail = newLeaf(tailLength + n);
+            System.arraycopy(tail, 0, newTail, 0, tailLength);
+            System.arraycopy(array, start, newTail, tailLength, n);
+            tail = newTail;
+            size += n;
+            start += n;
+        }
+        for (; start < end; ) {
+            // the tail is full, move it into the tree:
+            final int tailOffset = size - WIDTH;
+            if (isFull(shift, tailOffset)) {
+                root = newRoot(root, shift, tail);
+                shift += BITS;
+            } else {
+                root = pushLeaf(root, shift, tailOffset, tail);
+            }
+            final int n = Math.min(WIDTH, end - start);
+            tail = newLeaf(n);
+            System.arraycopy(array, start, tail, 0, n);
+            size += n;
+            start += n;
+        }
+        return create(size, root, shift, tail);
+    }
+
+    private V fromRange(final A array, final int start, final int end) {
+        final int size = end - start;
+        final int tailLength = (size - 1) % WIDTH + 1;
+        final int tailOffset = size - tailLength;
+        final A tail = newLeaf(tailLength);
+        System.arraycopy(array, start + tailOffset, tail, 0, tailLength);
+        if (tailOffset == 0)
+            return create(size, EMPTY_NODE, BITS, tail);
+
+        final Object[] leaves = new Object[tailOffset >>> BITS];
+        for (int i = 0; i < leaves.length; i++) {
+            final A leaf = newLeaf(WIDTH);
+            System.arraycopy(array, start + (i << BITS), leaf, 0, WIDTH);
+            leaves[i] = leaf;
+        }
+        final int shift = shiftFor(leaves.length);
+        return create(size, fromLeaves(leaves, 0, leaves.length, shift), shift, tail);
+    }
+
+    //// VIEWS ////
+
+    /**
+     * An unmodifiable view of a vector as a list, which boxes elements as they are read.
+     */
+    static final class BoxedList<E> extends AbstractList<E> implements RandomAccess, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final PrimitiveTrie<?, ?> vector;
+
+        BoxedList(PrimitiveTrie<?, ?> vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            return (E) vector.boxed(index);
+        }
+
+        @Override
+        public int size() {
+            return vector.size;
+        }
+    }
+
+    //// NODES ////
+
+    /**
+     * @return whether a root at shift has no room for another leaf after the first index elements
+     */
+    private static boolean isFull(final int shift, final int index) {
+        return (index >>> BITS) >= 1 << shift;
+    }
+
+    /**
+     * @return node with leaf added as the leaf starting at index, which must not be full
+     */
+    private static Object[] pushLeaf(final Object[] node, final int shift, final int index, final Object leaf) {
+        final int i = (index >>> shift) & MASK;
+        final Object[] copy = node.clone();
+        if (shift == BITS)
+            copy[i] = leaf;
+        else if (node[i] != null)
+            copy[i] = pushLeaf((Object[]) node[i], shift - BITS, index, leaf);
+        else
+            copy[i] = newPath(shift - BITS, leaf);
+        return copy;
+    }
+
+    /**
+     * @return a node at shift + 5 holding root followed by leaf
+     */
+    private static Object[] newRoot(final Object[] root, final int shift, final Object leaf) {
+        final Object[] newRoot = new Object[WIDTH];
+        newRoot[0] = root;
+        newRoot[1] = newPath(shift, leaf);
+        return newRoot;
+    }
+
+    // a chain of nodes from shift down to leaf:
+    private static Object newPath(final int shift, final Object leaf) {
+        if (shift == 0)
+            return leaf;
+        final Object[] node = new Object[WIDTH];
+        node[0] = newPath(shift - BITS, leaf);
+        return node;
+    }
+
+    /**
+     * @return node with the leaf holding index replaced by leaf
+     */
+    private static Object[] setLeaf(final Object[] node, final int shift, final int index, final Object leaf) {
+        final int i = (index >>> shift) & MASK;
+        final Object[] copy = node.clone();
+        copy[i] = shift == BITS ? leaf : setLeaf((Object[]) node[i], shift - BITS, index, leaf);
+        return copy;
+    }
+
+    /**
+     * @return the shift of the lowest root which can hold n leaves
+     */
+    private static int shiftFor(final int n) {
+        int shift = BITS;
+        while (shift < 30 && n > 1 << shift)
+            shift += BITS;
+        return shift;
+    }
+
+    /**
+     * Builds a tree bottom-up, with one allocation per node.
+     *
+     * @return the node at shift holding leaves[from..to)
+     */
+    private static Object[] fromLeaves(final Object[] leaves, final int from, final int to, final int shift) {
+        final Object[] node = new Object[WIDTH];
+        if (shift == BITS) {
+            System.arraycopy(leaves, from, node, 0, to - from);
+            return node;
+        }
+        final int leavesPerChild = 1 << (shift - BITS);
+        for (int i = 0, start = from; start < to; i++, start += leavesPerChild)
+            node[i] = fromLeaves(leaves, start, Math.min(start + leavesPerChild, to), shift - BITS);
+        return node;
+    }
+}
@@ -0,0 +1,307 @@
+package org.pcollections;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A persistent queue whose every operation takes worst-case O(1) time, even if old versions of
+ * the queue are used again.
+ * <p/>
+ * Like {@link AmortizedPQueue}, this keeps the front of the queue apart from a stack of the
+ * elements added at the back. Rather than reversing the whole stack when the front runs out,
+ * the front is a lazy stream, and the back is rotated onto it one element at a time: every
+ * plus and minus evaluates one more cell of the stream, so a rotation is finished before its
+ * cells are needed. See:
+ * <p/>
+ * Chris Okasaki, "Simple and efficient purely functional queues and deques",
+ * Journal of Functional Programming 5(4):583-592, October 1995.
+ * <p/>
+ * A cell is evaluated at most once, and publishing the result is safe without locking, since
+ * evaluating it again gives the same result. So this implementation is thread-safe, although
+ * its iterators may not be.
+ *
+ * @author Yu Kobayashi
+ */
+public final class RealTimePQueue<E> extends AbstractQueue<E> implements PQueue<E> {
+    private static final RealTimePQueue<Object> EMPTY =
+            new RealTimePQueue<Object>(Stream.empty(), ConsPStack.empty(), Stream.empty());
+
+    @SuppressWarnings("unchecked")
+    public static <E> RealTimePQueue<E> empty() {
+        return (RealTimePQueue<E>) EMPTY;
+    }
+
+    public static <E> RealTimePQueue<E> singleton(E e) {
+        return RealTimePQueue.<E>empty().plus(e);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> RealTimePQueue<E> from(Iterable<? extends E> iterable) {
+        if (iterable instanceof RealTimePQueue)
+            return (RealTimePQueue<E>) iterable;
+        return RealTimePQueue.<E>empty().plusAll(iterable);
+    }
+
+    private final Stream<E> front;
+    private final ConsPStack<E> back; // in reverse order, never longer than front
+    private final Stream<E> schedule; // the unevaluated part of front, as long as front is longer than back
+
+    private RealTimePQueue(Stream<E> front, ConsPStack<E> back, Stream<E> schedule) {
+        this.front = front;
+        this.back = back;
+        this.schedule = schedule;
+    }
+
+    // evaluates the next cell of the schedule, or starts rotating back onto front once it is done:
+    private static <E> RealTimePQueue<E> exec(Stream<E> front, ConsPStack<E> back, Stream<E> schedule) {
+        if (schedule.size > 0)
+            return new RealTimePQueue<E>(front, back, schedule.cell().rest);
+        final Stream<E> rotated = Stream.rotation(front, back, Stream.<E>empty());
+        return new RealTimePQueue<E>(rotated, ConsPStack.<E>empty(), rotated);
+    }
+
+    // Worst-case O(1) per element: the back is reversed one element for each element of the
+    // front, which is done by the time the front is, since the back is never longer:
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private Stream<E> stream = front;
+            private final Iterator<E> back = RealTimePQueue.this.back.iterator(); // newest first
+            private ConsPStack<E> reversed = ConsPStack.empty(); // the back read so far, oldest first
+            private Iterator<E> rest = null; // over reversed, once the front is done
+            private int remaining = size();
+
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            public E next() {
+                if (remaining == 0)
+                    throw new NoSuchElementException();
+                remaining--;
+                if (stream.size > 0) {
+                    final Cell<E> cell = stream.cell();
+                    stream = cell.rest;
+                    if (back.hasNext())
+                        reversed = reversed.plus(back.next());
+                    return cell.first;
+                }
+                if (rest == null)
+                    rest = reversed.iterator();
+                return rest.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    // Worst-case O(1)
+    @Override
+    public int size() {
+        return front.size + back.size();
+    }
+
+    // Worst-case O(1)
+    public E peek() {
+        return front.size == 0 ? null : front.cell().first;
+    }
+
+    // Worst-case O(1)
+    public RealTimePQueue<E> minus() {
+        if (front.size == 0)
+            return this;
+        return exec(front.cell().rest, back, schedule);
+    }
+
+    // Worst-case O(1)
+    public RealTimePQueue<E> plus(E e) {
+        return exec(front, back.plus(e), schedule);
+    }
+
+    public RealTimePQueue<E> plusAll(Collection<? extends E> list) {
+        return plusAll((Iterable<? extends E>) list);
+    }
+
+    // Worst-case O(k)
+    public RealTimePQueue<E> plusAll(Iterable<? extends E> list) {
+        RealTimePQueue<E> result = this;
+        for (E e : list) {
+            result = result.plus(e);
+        }
+        return result;
+    }
+
+    /**
+     * Removes up to n elements from the front of this queue at once.
+     * <p/>
+     * Complexity: worst-case O(min(n, size()))
+     *
+     * @param n the number of elements to remove, at least 0
+     * @return the removed elements, in order, and the queue of the remaining elements
+     */
+    public Drained<E> drain(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("negative count: " + n);
+        TreePVector.Transient<E> removed = TreePVector.<E>empty().asTransient();
+        RealTimePQueue<E> rest = this;
+        while (removed.size() < n && rest.front.size > 0) {
+            final Cell<E> cell = rest.front.cell();
+            removed.add(cell.first);
+            rest = exec(cell.rest, rest.back, rest.schedule);
+        }
+        return new Drained<E>(removed.persistent(), rest);
+    }
+
+    /**
+     * The result of {@link #drain}: the elements removed from the front of a queue, and the queue
+     * left behind.
+     */
+    public static final class Drained<E> {
+        private final TreePVector<E> elements;
+        private final RealTimePQueue<E> rest;
+
+        private Drained(TreePVector<E> elements, RealTimePQueue<E> rest) {
+            this.elements = elements;
+            this.rest = rest;
+        }
+
+        /**
+         * @return the removed elements, in the order they were in the queue
+         */
+        public TreePVector<E> elements() {
+            return elements;
+        }
+
+        /**
+         * @return the queue of the elements which were not removed
+         */
+        public RealTimePQueue<E> rest() {
+            return rest;
+        }
+    }
+
+    // Worst-case O(n)
+    public RealTimePQueue<E> minus(Object e) {
+        RealTimePQueue<E> result = empty();
+        boolean found = false;
+        for (E x : this) {
+            if (!found && (x == null ? e == null : x.equals(e)))
+                found = true;
+            else
+                result = result.plus(x);
+        }
+        return found ? result : this;
+    }
+
+    public RealTimePQueue<E> minusAll(Iterable<?> list) {
+        return minusAll(Utils.asCollection(list));
+    }
+
+    // Worst-case O(n) lookups in list
+    public RealTimePQueue<E> minusAll(Collection<?> list) {
+        RealTimePQueue<E> result = empty();
+        for (E x : this) {
+            if (!list.contains(x))
+                result = result.plus(x);
+        }
+        return result.size() == size() ? this : result;
+    }
+
+    /* These 4 methods are not applicable to a persistent collection. */
+    @Deprecated
+    public boolean offer(E o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Deprecated
+    public E poll() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean add(E e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public boolean addAll(Collection<? extends E> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    //// LAZY STREAMS ////
+
+    // an evaluated cell of a stream:
+    private static final class Cell<E> {
+        final E first;
+        final Stream<E> rest;
+
+        Cell(E first, Stream<E> rest) {
+            this.first = first;
+            this.rest = rest;
+        }
+    }
+
+    // front ++ reverse(back) ++ rest, with back one longer than front, made one cell at a time:
+    private static final class Rotation<E> {
+        final Stream<E> front;
+        final ConsPStack<E> back;
+        final Stream<E> rest;
+
+        Rotation(Stream<E> front, ConsPStack<E> back, Stream<E> rest) {
+            this.front = front;
+            this.back = back;
+            this.rest = rest;
+        }
+
+        Cell<E> evaluate() {
+            final E last = back.get(0);
+            if (front.size == 0)
+                return new Cell<E>(last, rest);
+            final Cell<E> cell = front.cell();
+            return new Cell<E>(cell.first,
+                    Stream.rotation(cell.rest, back.subList(1), Stream.evaluated(last, rest)));
+        }
+    }
+
+    private static final class Stream<E> {
+        private static final Stream<Object> EMPTY = new Stream<Object>(0, null);
+
+        final int size;
+        private volatile Object state; // the Cell of this, or the Rotation which makes it
+
+        private Stream(int size, Object state) {
+            this.size = size;
+            this.state = state;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <E> Stream<E> empty() {
+            return (Stream<E>) EMPTY;
+        }
+
+        static <E> Stream<E> evaluated(E first, Stream<E> rest) {
+            return new Stream<E>(rest.size + 1, new Cell<E>(first, rest));
+        }
+
+        static <E> Stream<E> rotation(Stream<E> front, ConsPStack<E> back, Stream<E> rest) {
+            return new Stream<E>(front.size + back.size() + rest.size, new Rotation<E>(front, back, rest));
+        }
+
+        // the first cell of this, which must be nonempty:
+        @SuppressWarnings("unchecked")
+        Cell<E> cell() {
+            final Object state = this.state;
+            if (state instanceof Cell)
+                return (Cell<E>) state;
+            final Cell<E> cell = ((Rotation<E>) state).evaluate();
+            this.state = cell;
+            return cell;
+        }
+    }
+}
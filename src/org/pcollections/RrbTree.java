@@ -0,0 +1,616 @@
+package org.pcollections;
+
+/**
+ * A non-public utility class for persistent relaxed radix balanced trees.
+ * <p/>
+ * Leaves are arrays of at most 32 elements. Inner nodes are arrays of at most 32 children
+ * followed by one extra slot. While every child but the last one is completely full, the
+ * extra slot is null and the child holding an index is found from the bits of the index
+ * alone. Inserting or removing in the middle leaves some children partly filled; such
+ * "relaxed" nodes keep the cumulative sizes of their children as an int[] in the extra slot,
+ * which is searched instead.
+ * <p/>
+ * The level of a node is given by its shift: leaves have shift 0, and an inner node
+ * at shift s has children at shift s-5.
+ * <p/>
+ * Nodes are never modified once they are reachable from a vector, so this class is thread-safe.
+ * <p/>
+ * The relaxed nodes are based on:
+ * <p/>
+ * Phil Bagwell and Tiark Rompf, "RRB-Trees: Efficient Immutable Vectors",
+ * EPFL Technical Report 169879, 2011.
+ *
+ * @author Yu Kobayashi
+ */
+final class RrbTree {
+    static final int BITS = 5;
+    static final int WIDTH = 1 << BITS;
+
+    // how many more children than needed the nodes along the seam of two concatenated trees may have:
+    private static final int EXTRA = 2;
+
+    static final Object[] EMPTY_LEAF = new Object[0];
+    // an inner node without children, used as the root of vectors that fit in their tail:
+    static final Object[] EMPTY_NODE = new Object[]{null};
+
+    // not instantiable:
+    private RrbTree() {
+    }
+
+    //// QUERIES ////
+
+    static int[] sizes(final Object[] node) {
+        return (int[]) node[node.length - 1];
+    }
+
+    /**
+     * @return the number of elements below node
+     */
+    static int size(Object[] node, int shift) {
+        int size = 0;
+        while (shift > 0) {
+            final int n = node.length - 1;
+            if (n == 0)
+                return size;
+            final int[] sizes = sizes(node);
+            if (sizes != null)
+                return size + sizes[n - 1];
+            // all children but the last are full:
+            size += (n - 1) << shift;
+            node = (Object[]) node[n - 1];
+            shift -= BITS;
+        }
+        return size + node.length;
+    }
+
+    // index of the child of node holding index:
+    static int childIndex(final Object[] node, final int shift, final int index) {
+        int i = index >>> shift;
+        final int[] sizes = sizes(node);
+        if (sizes != null) {
+            // no child holds more than 1 << shift elements, so i is a lower bound:
+            while (sizes[i] <= index)
+                i++;
+        }
+        return i;
+    }
+
+    // index of the first element below the i-th child of node:
+    static int childOffset(final Object[] node, final int shift, final int i) {
+        final int[] sizes = sizes(node);
+        if (sizes == null)
+            return i << shift;
+        return i == 0 ? 0 : sizes[i - 1];
+    }
+
+    static Object get(Object[] node, int shift, int index) {
+        while (shift > 0) {
+            final int i = childIndex(node, shift, index);
+            index -= childOffset(node, shift, i);
+            node = (Object[]) node[i];
+            shift -= BITS;
+        }
+        return node[index];
+    }
+
+    /**
+     * @return the leaf starting at index, which must be the first index of a leaf
+     */
+    static Object[] leafAt(Object[] node, int shift, int index) {
+        while (shift > 0) {
+            final int i = childIndex(node, shift, index);
+            index -= childOffset(node, shift, i);
+            node = (Object[]) node[i];
+            shift -= BITS;
+        }
+        return node;
+    }
+
+    /**
+     * @return the first index of the leaf holding index
+     */
+    static int leafStart(Object[] node, int shift, int index) {
+        int start = 0;
+        while (shift > 0) {
+            final int i = childIndex(node, shift, index);
+            final int offset = childOffset(node, shift, i);
+            start += offset;
+            index -= offset;
+            node = (Object[]) node[i];
+            shift -= BITS;
+        }
+        return start;
+    }
+
+    static Object[] lastLeaf(Object[] node, int shift) {
+        while (shift > 0) {
+            node = (Object[]) node[node.length - 2];
+            shift -= BITS;
+        }
+        return node;
+    }
+
+    //// BULK CONSTRUCTION ////
+
+    /**
+     * @return the shift of the lowest root which can hold n elements
+     */
+    static int shiftFor(final int n) {
+        int shift = BITS;
+        while (shift < 30 && (long) n > (long) WIDTH << shift)
+            shift += BITS;
+        return shift;
+    }
+
+    /**
+     * Builds a strict tree bottom-up, with one allocation per node.
+     *
+     * @return the node at shift holding elements[from..to), where to - from is a multiple of 32
+     * no larger than 32 << shift
+     */
+    static Object[] fromArray(final Object[] elements, final int from, final int to, final int shift) {
+        if (shift == 0) {
+            final Object[] leaf = new Object[to - from];
+            System.arraycopy(elements, from, leaf, 0, leaf.length);
+            return leaf;
+        }
+        final int childSize = 1 << shift;
+        final int n = (to - from + childSize - 1) >>> shift; // the last child may not be full
+        final Object[] node = new Object[n + 1];
+        for (int i = 0; i < n; i++) {
+            final int start = from + (i << shift);
+            node[i] = fromArray(elements, start, Math.min(start + childSize, to), shift - BITS);
+        }
+        return node;
+    }
+
+    //// UPDATES ////
+
+    static Object[] set(final Object[] node, final int shift, final int index, final Object e) {
+        final Object[] copy = node.clone();
+        if (shift == 0) {
+            copy[index] = e;
+            return copy;
+        }
+        final int i = childIndex(node, shift, index);
+        copy[i] = set((Object[]) node[i], shift - BITS, index - childOffset(node, shift, i), e);
+        return copy;
+    }
+
+    /**
+     * @return node with leaf appended after its last element, or null if node has no room left
+     */
+    static Object[] pushLeaf(final Object[] node, final int shift, final Object[] leaf) {
+        final int n = node.length - 1;
+        if (shift > BITS && n > 0) { // try the last child first
+            final Object[] newLast = pushLeaf((Object[]) node[n - 1], shift - BITS, leaf);
+            if (newLast != null) {
+                final Object[] copy = node.clone();
+                copy[n - 1] = newLast;
+                final int[] sizes = sizes(node);
+                if (sizes != null) {
+                    final int[] newSizes = sizes.clone();
+                    newSizes[n - 1] += leaf.length;
+                    copy[n] = newSizes;
+                }
+                return copy;
+            }
+        }
+        if (n == WIDTH)
+            return null;
+
+        final Object[] copy = new Object[n + 2];
+        System.arraycopy(node, 0, copy, 0, n);
+        copy[n] = newPath(shift - BITS, leaf);
+        final int[] sizes = sizes(node);
+        if (sizes != null) {
+            final int[] newSizes = new int[n + 1];
+            System.arraycopy(sizes, 0, newSizes, 0, n);
+            newSizes[n] = (n == 0 ? 0 : sizes[n - 1]) + leaf.length;
+            copy[n + 1] = newSizes;
+        } else if (n > 0 && size((Object[]) node[n - 1], shift - BITS) != 1 << shift) {
+            // the previous last child is not full, so indices can't be computed from bits any more:
+            copy[n + 1] = computeSizes(copy, shift);
+        }
+        return copy;
+    }
+
+    /**
+     * @return a node at shift + 5 holding the elements of root followed by leaf
+     */
+    static Object[] newRoot(final Object[] root, final int shift, final Object[] leaf) {
+        final Object[] newRoot = new Object[]{root, newPath(shift, leaf), null};
+        newRoot[2] = computeSizes(newRoot, shift + BITS);
+        return newRoot;
+    }
+
+    // a chain of single-child nodes from shift down to leaf:
+    static Object[] newPath(final int shift, final Object[] leaf) {
+        if (shift == 0)
+            return leaf;
+        return new Object[]{newPath(shift - BITS, leaf), null};
+    }
+
+    /**
+     * @return node without its last leaf, or null if nothing remains
+     */
+    static Object[] popLeaf(final Object[] node, final int shift, final int leafSize) {
+        final int n = node.length - 1;
+        if (shift > BITS) {
+            final Object[] newLast = popLeaf((Object[]) node[n - 1], shift - BITS, leafSize);
+            if (newLast != null) {
+                final Object[] copy = node.clone();
+                copy[n - 1] = newLast;
+                final int[] sizes = sizes(node);
+                if (sizes != null) {
+                    final int[] newSizes = sizes.clone();
+                    newSizes[n - 1] -= leafSize;
+                    copy[n] = newSizes;
+                }
+                return copy;
+            }
+        }
+        if (n == 1)
+            return null;
+        return removeChild(node, n - 1);
+    }
+
+    //// SLICING ////
+    // Only the nodes along the path to the cut are copied; all other nodes are shared.
+
+    /**
+     * @return the first n elements of node, where 0 &lt; n &lt;= the size of node
+     */
+    static Object[] takeFront(final Object[] node, final int shift, final int n) {
+        if (shift == 0) {
+            if (n == node.length)
+                return node;
+            final Object[] leaf = new Object[n];
+            System.arraycopy(node, 0, leaf, 0, n);
+            return leaf;
+        }
+        final int i = childIndex(node, shift, n - 1);
+        final Object[] child = (Object[]) node[i];
+        final Object[] newChild = takeFront(child, shift - BITS, n - childOffset(node, shift, i));
+        if (newChild == child && i == node.length - 2)
+            return node;
+        final Object[] copy = new Object[i + 2];
+        System.arraycopy(node, 0, copy, 0, i);
+        copy[i] = newChild;
+        final int[] sizes = sizes(node);
+        if (sizes != null) { // all children but the new last one keep their sizes:
+            final int[] newSizes = new int[i + 1];
+            System.arraycopy(sizes, 0, newSizes, 0, i);
+            newSizes[i] = n;
+            copy[i + 1] = relaxed(newSizes, shift);
+        }
+        return copy;
+    }
+
+    /**
+     * @return node without its first n elements, where 0 &lt; n &lt; the size of node
+     */
+    static Object[] dropFront(final Object[] node, final int shift, final int n) {
+        if (shift == 0) {
+            final Object[] leaf = new Object[node.length - n];
+            System.arraycopy(node, n, leaf, 0, leaf.length);
+            return leaf;
+        }
+        final int count = node.length - 1;
+        final int i = childIndex(node, shift, n);
+        final int offset = childOffset(node, shift, i);
+        final Object[] copy = new Object[count - i + 1];
+        copy[0] = n == offset ? node[i] : dropFront((Object[]) node[i], shift - BITS, n - offset);
+        System.arraycopy(node, i + 1, copy, 1, count - i - 1);
+        // every child moves down by i, and holds n elements less before it:
+        final int[] sizes = sizes(node);
+        final int[] newSizes = new int[count - i];
+        for (int j = 0; j < newSizes.length - 1; j++)
+            newSizes[j] = (sizes != null ? sizes[i + j] : (i + j + 1) << shift) - n;
+        newSizes[newSizes.length - 1] = (sizes != null ? sizes[count - 1]
+                : ((count - 1) << shift) + size((Object[]) node[count - 1], shift - BITS)) - n;
+        copy[count - i] = relaxed(newSizes, shift);
+        return copy;
+    }
+
+    //// CONCATENATION ////
+
+    /**
+     * Joins two trees along the seam between them: the last child of the left tree is merged
+     * with the first child of the right tree at each level, down to the two leaves that meet,
+     * and all other nodes of both trees are shared. Leaves and children are packed into full
+     * nodes where they meet, so joining many small trees does not leave a trail of nearly
+     * empty nodes.
+     *
+     * @return one or two nodes at the higher of the two shifts, holding the elements of left followed by those of right
+     */
+    static Object[][] concat(final Object[] left, final int leftShift, final Object[] right, final int rightShift) {
+        if (leftShift > rightShift) {
+            final int n = left.length - 1;
+            final Object[][] middle = concat((Object[]) left[n - 1], leftShift - BITS, right, rightShift);
+            return pack(left, 0, n - 1, middle, null, 0, leftShift);
+        }
+        if (leftShift < rightShift) {
+            final Object[][] middle = concat(left, leftShift, (Object[]) right[0], rightShift - BITS);
+            return pack(null, 0, 0, middle, right, 1, rightShift);
+        }
+        if (leftShift == 0) {
+            final int total = left.length + right.length;
+            if (left.length == WIDTH)
+                return new Object[][]{left, right};
+            if (total <= WIDTH) {
+                final Object[] leaf = new Object[total];
+                System.arraycopy(left, 0, leaf, 0, left.length);
+                System.arraycopy(right, 0, leaf, left.length, right.length);
+                return new Object[][]{leaf};
+            }
+            // fill up the left leaf from the right one:
+            final Object[] first = new Object[WIDTH];
+            final Object[] second = new Object[total - WIDTH];
+            System.arraycopy(left, 0, first, 0, left.length);
+            System.arraycopy(right, 0, first, left.length, WIDTH - left.length);
+            System.arraycopy(right, WIDTH - left.length, second, 0, second.length);
+            return new Object[][]{first, second};
+        }
+        final int n = left.length - 1;
+        final Object[][] middle = concat((Object[]) left[n - 1], leftShift - BITS, (Object[]) right[0], rightShift - BITS);
+        return pack(left, 0, n - 1, middle, right, 1, leftShift);
+    }
+
+    // the children left[leftFrom..leftTo), middle and the children of right from rightFrom on,
+    // as one node at shift, or two if they don't fit into one:
+    private static Object[][] pack(final Object[] left, final int leftFrom, final int leftTo,
+                                   final Object[][] middle, final Object[] right, final int rightFrom,
+                                   final int shift) {
+        final int leftCount = leftTo - leftFrom;
+        final int rightCount = right == null ? 0 : right.length - 1 - rightFrom;
+        Object[] children = new Object[leftCount + middle.length + rightCount];
+        if (leftCount > 0)
+            System.arraycopy(left, leftFrom, children, 0, leftCount);
+        System.arraycopy(middle, 0, children, leftCount, middle.length);
+        if (rightCount > 0)
+            System.arraycopy(right, rightFrom, children, leftCount + middle.length, rightCount);
+        children = rebalance(children, shift);
+        if (children.length <= WIDTH)
+            return new Object[][]{node(children, 0, children.length, shift)};
+        // the full node goes on the side away from the seam, so that the next join at the seam
+        // fills up the other one instead of splitting again:
+        final int split = leftCount >= rightCount ? WIDTH : children.length - WIDTH;
+        return new Object[][]{node(children, 0, split, shift), node(children, split, children.length, shift)};
+    }
+
+    /**
+     * The children of a node at shift, redistributed such that there are at most EXTRA
+     * more of them than the fewest that could hold all their elements or grandchildren,
+     * which keeps the tree from growing higher than needed. As described by Bagwell and Rompf,
+     * the first child which is not nearly full is emptied into the children after it, one at a
+     * time, until that is the case. Children which are not touched are reused as they are.
+     */
+    private static Object[] rebalance(final Object[] children, final int shift) {
+        final int childShift = shift - BITS;
+        final int[] counts = new int[children.length];
+        int total = 0;
+        for (int i = 0; i < children.length; i++) {
+            counts[i] = slots((Object[]) children[i], childShift);
+            total += counts[i];
+        }
+        final int optimal = (total + WIDTH - 1) / WIDTH;
+        int n = children.length;
+        if (n <= optimal + EXTRA)
+            return children;
+
+        // plan the new counts:
+        int i = 0;
+        while (n > optimal + EXTRA) {
+            while (i < n - 1 && counts[i] >= WIDTH - EXTRA / 2)
+                i++;
+            if (i == n - 1)
+                break;
+            int remaining = counts[i];
+            do { // the remaining items move to the front of the next child, which overflows into the one after it:
+                final int count = Math.min(remaining + counts[i + 1], WIDTH);
+                remaining += counts[i + 1] - count;
+                counts[i] = count;
+                i++;
+            } while (remaining > 0);
+            System.arraycopy(counts, i + 1, counts, i, n - i - 1);
+            n--;
+            i--;
+        }
+
+        // and copy the items into children of these counts:
+        final Object[] result = new Object[n];
+        int from = 0, offset = 0; // the next item is the offset-th of children[from]
+        for (int j = 0; j < n; j++) {
+            final Object[] child = (Object[]) children[from];
+            if (offset == 0 && counts[j] == slots(child, childShift)) { // unchanged
+                result[j] = child;
+                from++;
+                continue;
+            }
+            final Object[] newChild = new Object[childShift == 0 ? counts[j] : counts[j] + 1];
+            for (int filled = 0; filled < counts[j]; ) {
+                final Object[] source = (Object[]) children[from];
+                final int k = Math.min(counts[j] - filled, slots(source, childShift) - offset);
+                System.arraycopy(source, offset, newChild, filled, k);
+                filled += k;
+                offset += k;
+                if (offset == slots(source, childShift)) {
+                    from++;
+                    offset = 0;
+                }
+            }
+            if (childShift > 0)
+                newChild[counts[j]] = computeSizes(newChild, childShift);
+            result[j] = newChild;
+        }
+        return result;
+    }
+
+    // the number of elements of a leaf, or of children of an inner node:
+    private static int slots(final Object[] node, final int shift) {
+        return shift == 0 ? node.length : node.length - 1;
+    }
+
+    // an inner node at shift holding children[from..to):
+    static Object[] node(final Object[] children, final int from, final int to, final int shift) {
+        final Object[] node = new Object[to - from + 1];
+        System.arraycopy(children, from, node, 0, to - from);
+        node[to - from] = computeSizes(node, shift);
+        return node;
+    }
+
+    // sizes, or null if they are those of a strict node:
+    private static int[] relaxed(final int[] sizes, final int shift) {
+        for (int j = 0; j < sizes.length - 1; j++) {
+            if (sizes[j] != (j + 1) << shift)
+                return sizes;
+        }
+        return null;
+    }
+
+    /**
+     * @return node with e inserted at index, holding one element or child too many
+     * (see {@link #isOverfull}) if it had no room left
+     */
+    static Object[] insert(final Object[] node, final int shift, final int index, final Object e) {
+        if (shift == 0) {
+            final Object[] copy = new Object[node.length + 1];
+            System.arraycopy(node, 0, copy, 0, index);
+            copy[index] = e;
+            System.arraycopy(node, index, copy, index + 1, node.length - index);
+            return copy;
+        }
+
+        final int n = node.length - 1;
+        final int i = childIndex(node, shift, index);
+        final Object[] child = (Object[]) node[i];
+        final Object[] newChild = insert(child, shift - BITS, index - childOffset(node, shift, i), e);
+
+        if (isOverfull(newChild, shift - BITS)) { // replace the child with its two halves:
+            final Object[] copy = new Object[n + 2];
+            System.arraycopy(node, 0, copy, 0, i);
+            copy[i] = firstHalf(newChild, shift - BITS);
+            copy[i + 1] = secondHalf(newChild, shift - BITS);
+            System.arraycopy(node, i + 1, copy, i + 2, n - i - 1);
+            copy[n + 1] = computeSizes(copy, shift);
+            return copy;
+        }
+
+        final Object[] copy = node.clone();
+        copy[i] = newChild;
+        final int[] sizes = sizes(node);
+        if (sizes != null) {
+            final int[] newSizes = sizes.clone();
+            for (int j = i; j < n; j++)
+                newSizes[j]++;
+            copy[n] = newSizes;
+        } else if (i != n - 1) { // only the last child of a strict node may grow
+            copy[n] = computeSizes(copy, shift);
+        }
+        return copy;
+    }
+
+    static boolean isOverfull(final Object[] node, final int shift) {
+        return (shift == 0 ? node.length : node.length - 1) > WIDTH;
+    }
+
+    static Object[] firstHalf(final Object[] node, final int shift) {
+        if (shift == 0) {
+            final Object[] half = new Object[node.length / 2];
+            System.arraycopy(node, 0, half, 0, half.length);
+            return half;
+        }
+        final int n = (node.length - 1) / 2;
+        final Object[] half = new Object[n + 1];
+        System.arraycopy(node, 0, half, 0, n);
+        half[n] = computeSizes(half, shift);
+        return half;
+    }
+
+    static Object[] secondHalf(final Object[] node, final int shift) {
+        if (shift == 0) {
+            final int start = node.length / 2;
+            final Object[] half = new Object[node.length - start];
+            System.arraycopy(node, start, half, 0, half.length);
+            return half;
+        }
+        final int start = (node.length - 1) / 2;
+        final int n = node.length - 1 - start;
+        final Object[] half = new Object[n + 1];
+        System.arraycopy(node, start, half, 0, n);
+        half[n] = computeSizes(half, shift);
+        return half;
+    }
+
+    /**
+     * @return node without the element at index, or null if nothing remains
+     */
+    static Object[] remove(final Object[] node, final int shift, final int index) {
+        if (shift == 0) {
+            if (node.length == 1)
+                return null;
+            final Object[] copy = new Object[node.length - 1];
+            System.arraycopy(node, 0, copy, 0, index);
+            System.arraycopy(node, index + 1, copy, index, copy.length - index);
+            return copy;
+        }
+
+        final int n = node.length - 1;
+        final int i = childIndex(node, shift, index);
+        final Object[] newChild = remove((Object[]) node[i], shift - BITS, index - childOffset(node, shift, i));
+        if (newChild == null)
+            return n == 1 ? null : removeChild(node, i);
+
+        final Object[] copy = node.clone();
+        copy[i] = newChild;
+        final int[] sizes = sizes(node);
+        if (sizes != null) {
+            final int[] newSizes = sizes.clone();
+            for (int j = i; j < n; j++)
+                newSizes[j]--;
+            copy[n] = newSizes;
+        } else if (i != n - 1) { // only the last child of a strict node may shrink
+            copy[n] = computeSizes(copy, shift);
+        }
+        return copy;
+    }
+
+    private static Object[] removeChild(final Object[] node, final int i) {
+        final int n = node.length - 1;
+        final Object[] copy = new Object[n];
+        System.arraycopy(node, 0, copy, 0, i);
+        System.arraycopy(node, i + 1, copy, i, n - i - 1);
+        final int[] sizes = sizes(node);
+        if (sizes != null) {
+            final int[] newSizes = new int[n - 1];
+            final int removed = sizes[i] - (i == 0 ? 0 : sizes[i - 1]);
+            System.arraycopy(sizes, 0, newSizes, 0, i);
+            for (int j = i; j < n - 1; j++)
+                newSizes[j] = sizes[j + 1] - removed;
+            copy[n - 1] = newSizes;
+        }
+        // removing the last child of a strict node keeps it strict, any other child is full
+        // and can't be removed on its own.
+        return copy;
+    }
+
+    /**
+     * @return the cumulative sizes of the children of node, or null if all but its last child are full
+     */
+    static int[] computeSizes(final Object[] node, final int shift) {
+        final int n = node.length - 1;
+        final int[] sizes = new int[n];
+        final int full = 1 << shift;
+        boolean strict = true;
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            final int childSize = size((Object[]) node[i], shift - BITS);
+            if (i < n - 1 && childSize != full)
+                strict = false;
+            size += childSize;
+            sizes[i] = size;
+        }
+        return strict ? null : sizes;
+    }
+}
@@ -0,0 +1,248 @@
+package org.pcollections;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map.Entry;
+
+/**
+ * A non-public utility class, which the persistent collections write to a stream in their place.
+ * <p/>
+ * Rather than the nodes of its tree or trie, a collection is written as a tag saying what it is,
+ * its size, and then its elements in iteration order: the keys and values of a map one after
+ * the other, each distinct element of a bag with its count, and the elements of a primitive
+ * vector unboxed. Reading never recurses, and the collection is rebuilt in one pass with the
+ * bulk construction of its class, taking O(n) time for the vectors, deques, stacks and
+ * primitive-keyed maps, and O(n) expected time for the hashed sets, maps and bags.
+ * <p/>
+ * Each collection class replaces itself with a proxy in writeReplace, and refuses to be read
+ * without one in readObject. A set which {@link MapPSet#from(PMap)} backed by some other map
+ * is read back as a set of the same elements backed by a {@link HashPMap}.
+ *
+ * @author Yu Kobayashi
+ */
+final class SerializationProxy implements Serializable {
+    private static final long serialVersionUID = 5043208914729372811L;
+
+    static final byte VECTOR = 1; // TreePVector
+    static final byte SET = 2; // MapPSet
+    static final byte ORDERED_SET = 3; // OrderedPSet
+    static final byte MAP = 4; // HashPMap
+    static final byte DEQUE = 5; // FingerTreePDeque
+    static final byte BAG = 6; // MapPBag
+    static final byte STACK = 7; // ConsPStack
+    static final byte AMORTIZED_DEQUE = 8; // AmortizedPDeque
+    static final byte INT_MAP = 9; // IntTreePMap
+    static final byte LONG_MAP = 10; // LongTreePMap
+    static final byte INT_VECTOR = 11; // IntTreePVector
+    static final byte LONG_VECTOR = 12; // LongTreePVector
+    static final byte DOUBLE_VECTOR = 13; // DoubleTreePVector
+
+    // the arrays elements are read into start at most this long, and are grown as elements
+    // arrive, so a corrupt size can't allocate much more than the stream holds:
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private transient byte tag;
+    private transient Object collection; // to be written, or once read and rebuilt
+
+    /**
+     * @param tag        what collection is
+     * @param collection the collection to be written
+     */
+    SerializationProxy(final byte tag, final Object collection) {
+        this.tag = tag;
+        this.collection = collection;
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeByte(tag);
+        switch (tag) {
+            case VECTOR:
+            case SET:
+            case ORDERED_SET:
+            case DEQUE:
+            case STACK:
+            case AMORTIZED_DEQUE:
+                final Collection<?> elements = (Collection<?>) collection;
+                out.writeInt(elements.size());
+                for (Object e : elements) {
+                    out.writeObject(e);
+                }
+                break;
+            case MAP:
+                final HashPMap<?, ?> map = (HashPMap<?, ?>) collection;
+                out.writeInt(map.size());
+                for (HashTrie.Cursor<?, ?> c = map.cursor(); c.next(); ) {
+                    out.writeObject(c.key());
+                    out.writeObject(c.value());
+                }
+                break;
+            case BAG:
+                final PMap<?, Integer> counts = ((MapPBag<?>) collection).entryCounts();
+                out.writeInt(counts.size());
+                for (Entry<?, Integer> entry : counts.entrySet()) {
+                    out.writeObject(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+                break;
+            case INT_MAP:
+                final IntTreePMap<?> intMap = (IntTreePMap<?>) collection;
+                out.writeInt(intMap.size());
+                for (IntPMap.Cursor<?> c = intMap.cursor(); c.next(); ) {
+                    out.writeInt(c.key());
+                    out.writeObject(c.value());
+                }
+                break;
+            case LONG_MAP:
+                final LongTreePMap<?> longMap = (LongTreePMap<?>) collection;
+                out.writeInt(longMap.size());
+                for (LongPMap.Cursor<?> c = longMap.cursor(); c.next(); ) {
+                    out.writeLong(c.key());
+                    out.writeObject(c.value());
+                }
+                break;
+            case INT_VECTOR:
+                final int[] ints = ((IntTreePVector) collection).toArray();
+                out.writeInt(ints.length);
+                for (int e : ints) {
+                    out.writeInt(e);
+                }
+                break;
+            case LONG_VECTOR:
+                final long[] longs = ((LongTreePVector) collection).toArray();
+                out.writeInt(longs.length);
+                for (long e : longs) {
+                    out.writeLong(e);
+                }
+                break;
+            case DOUBLE_VECTOR:
+                final double[] doubles = ((DoubleTreePVector) collection).toArray();
+                out.writeInt(doubles.length);
+                for (double e : doubles) {
+                    out.writeDouble(e);
+                }
+                break;
+            default:
+                throw new AssertionError(tag);
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tag = in.readByte();
+        final int size = in.readInt();
+        if (size < 0)
+            throw new InvalidObjectException("negative size: " + size);
+        switch (tag) {
+            case VECTOR:
+            case SET:
+            case ORDERED_SET:
+            case DEQUE:
+            case STACK:
+            case AMORTIZED_DEQUE:
+                Object[] elements = new Object[Math.min(size, INITIAL_CAPACITY)];
+                for (int i = 0; i < size; i++) {
+                    if (i == elements.length)
+                        elements = Arrays.copyOf(elements, grown(i, size));
+                    elements[i] = in.readObject();
+                }
+                collection = fromElements(elements);
+                break;
+            case MAP:
+                final HashPMap.Transient<Object, Object> map = HashPMap.empty().asTransient();
+                for (int i = 0; i < size; i++) {
+                    map.put(in.readObject(), in.readObject());
+                }
+                collection = map.persistent();
+                break;
+            case BAG:
+                final HashPMap.Transient<Object, Integer> counts = HashPMap.<Object, Integer>empty().asTransient();
+                for (int i = 0; i < size; i++) {
+                    final Object e = in.readObject();
+                    final int n = in.readInt();
+                    if (n <= 0)
+                        throw new InvalidObjectException("count not positive: " + n);
+                    counts.put(e, n);
+                }
+                collection = MapPBag.fromCounts(counts.persistent());
+                break;
+            case INT_MAP:
+            case LONG_MAP:
+                long[] keys = new long[Math.min(size, INITIAL_CAPACITY)];
+                Object[] values = new Object[keys.length];
+                for (int i = 0; i < size; i++) {
+                    if (i == keys.length) {
+                        keys = Arrays.copyOf(keys, grown(i, size));
+                        values = Arrays.copyOf(values, keys.length);
+                    }
+                    keys[i] = tag == INT_MAP ? in.readInt() : in.readLong();
+                    if (i > 0 && keys[i] <= keys[i - 1])
+                        throw new InvalidObjectException("keys not in increasing order");
+                    values[i] = in.readObject();
+                }
+                collection = tag == INT_MAP
+                        ? IntTreePMap.fromSorted(keys, values) : LongTreePMap.fromSorted(keys, values);
+                break;
+            case INT_VECTOR:
+                int[] ints = new int[Math.min(size, INITIAL_CAPACITY)];
+                for (int i = 0; i < size; i++) {
+                    if (i == ints.length)
+                        ints = Arrays.copyOf(ints, grown(i, size));
+                    ints[i] = in.readInt();
+                }
+                collection = IntTreePVector.from(ints);
+                break;
+            case LONG_VECTOR:
+                long[] longs = new long[Math.min(size, INITIAL_CAPACITY)];
+                for (int i = 0; i < size; i++) {
+                    if (i == longs.length)
+                        longs = Arrays.copyOf(longs, grown(i, size));
+                    longs[i] = in.readLong();
+                }
+                collection = LongTreePVector.from(longs);
+                break;
+            case DOUBLE_VECTOR:
+                double[] doubles = new double[Math.min(size, INITIAL_CAPACITY)];
+                for (int i = 0; i < size; i++) {
+                    if (i == doubles.length)
+                        doubles = Arrays.copyOf(doubles, grown(i, size));
+                    doubles[i] = in.readDouble();
+                }
+                collection = DoubleTreePVector.from(doubles);
+                break;
+            default:
+                throw new InvalidObjectException("unknown collection: " + tag);
+        }
+    }
+
+    // the length an array of the given length is grown to, when it should finally hold size elements:
+    private static int grown(final int length, final int size) {
+        return (int) Math.min(size, 2L * length);
+    }
+
+    private Object fromElements(final Object[] elements) {
+        switch (tag) {
+            case VECTOR:
+                return TreePVector.of(elements);
+            case SET:
+                return MapPSet.of(elements);
+            case ORDERED_SET:
+                return OrderedPSet.of(elements);
+            case DEQUE:
+                return FingerTreePDeque.of(elements);
+            case STACK:
+                return ConsPStack.from(Arrays.asList(elements));
+            default:
+                return AmortizedPDeque.from(Arrays.asList(elements));
+        }
+    }
+
+    private Object readResolve() {
+        return collection;
+    }
+}
@@ -1,18 +1,33 @@
 package org.pcollections;
 
+import groovy.util.immutable.ImmutableList;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.AbstractList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.ListIterator;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * An immutable and persistent vector. Elements can be null.
  * <p/>
- * This implementation is backed by an IntTreePMap and
- * supports logarithmic-time querying, setting, insertion,
- * and removal.
+ * This implementation is backed by a relaxed radix balanced tree with 32 elements per leaf
+ * and a separate tail leaf holding the last elements. Querying and setting take O(log32 n)
+ * time, appending takes amortized O(1) time, and insertion, removal and slicing take O(log n) time.
+ * <p/>
+ * This is also the {@link ImmutableList} of {@link groovy.util.immutable.ImmutableCollections},
+ * so updating one allocates nothing besides the new vector. As ImmutableList defines
+ * {@code list - e} as removing the element e, there is also {@link #minus(Integer)}: from Groovy,
+ * {@code vector - 0} and {@code vector.minus(0)} remove the element 0, even through a
+ * {@link PVector} reference, unlike {@link PSequence#minus(int)} on other sequences.
+ * Use {@link #minusAt(int)} to remove an index.
  * <p/>
  * This implementation is thread-safe (assuming Java's AbstractList is thread-safe)
  * although its iterators may not be.
@@ -20,9 +35,9 @@ import java.util.Map.Entry;
  * @author harold
  * @author Yu Kobayashi
  */
-public final class TreePVector<E> extends AbstractList<E> implements PVector<E>, Serializable {
+public final class TreePVector<E> extends AbstractList<E> implements PVector<E>, ImmutableList<E>, Serializable {
     private static final TreePVector<Object> EMPTY = new TreePVector<Object>();
-    private static final long serialVersionUID = -6788530879100442978L;
+    private static final long serialVersionUID = 3145393264590125374L;
 
     /**
      * @return an empty list
@@ -49,33 +64,249 @@ public final class TreePVector<E> extends AbstractList<E> implements PVector<E>,
 
         // but that's good enough for an immutable
         // (i.e. we can't mess someone else up by adding the wrong type to it)
+        if (list instanceof Collection)
+            return fromArray(((Collection<? extends E>) list).toArray());
         return TreePVector.<E>empty().plusAll(list);
     }
 
-    private final IntTreePMap<E> map;
+    /**
+     * @return a vector of the given elements, built in one pass
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <E> TreePVector<E> of(E... elements) {
+        return fromArray(elements);
+    }
+
+    // builds the tree bottom-up in linear time, rather than appending one element at a time:
+    private static <E> TreePVector<E> fromArray(Object[] elements) {
+        final int size = elements.length;
+        if (size == 0)
+            return empty();
+        final int tailLength = (size - 1) % RrbTree.WIDTH + 1;
+        final int tailOffset = size - tailLength;
+        final Object[] tail = new Object[tailLength];
+        System.arraycopy(elements, tailOffset, tail, 0, tailLength);
+        if (tailOffset == 0)
+            return new TreePVector<E>(size, RrbTree.EMPTY_NODE, RrbTree.BITS, tail);
+        final int shift = RrbTree.shiftFor(tailOffset);
+        return new TreePVector<E>(size, RrbTree.fromArray(elements, 0, tailOffset, shift), shift, tail);
+    }
+
+    private final int size;
+    private final Object[] root; // holds the first size - tail.length elements
+    private final int shift; // level of root, at least 5
+    private final Object[] tail; // holds the last 1 to 32 elements, if any
+    private transient int hashCode; // computed on first use, 0 if not yet
 
     private TreePVector() {
-        this(IntTreePMap.<E>empty());
+        this(0, RrbTree.EMPTY_NODE, RrbTree.BITS, RrbTree.EMPTY_LEAF);
     }
 
-    private TreePVector(IntTreePMap<E> map) {
-        this.map = map;
+    private TreePVector(int size, Object[] root, int shift, Object[] tail) {
+        this.size = size;
+        this.root = root;
+        this.shift = shift;
+        this.tail = tail;
+    }
+
+    // makes a vector from a tree which might have to be shrunk or grown at the root:
+    private static <E> TreePVector<E> withTree(int size, Object[] root, int shift, Object[] tail) {
+        if (root == null) {
+            root = RrbTree.EMPTY_NODE;
+            shift = RrbTree.BITS;
+        } else if (RrbTree.isOverfull(root, shift)) {
+            root = new Object[]{RrbTree.firstHalf(root, shift), RrbTree.secondHalf(root, shift), null};
+            shift += RrbTree.BITS;
+            root[2] = RrbTree.computeSizes(root, shift);
+        }
+        while (shift > RrbTree.BITS && root.length == 2) { // a single child
+            root = (Object[]) root[0];
+            shift -= RrbTree.BITS;
+        }
+        if (size == 0)
+            return empty();
+        return new TreePVector<E>(size, root, shift, tail);
+    }
+
+    private int tailOffset() {
+        return size - tail.length;
     }
 
     public int size() {
-        return map.size();
+        return size;
     }
 
+    @SuppressWarnings("unchecked")
     public E get(int index) {
-        if (index < 0 || index >= size())
+        if (index < 0 || index >= size)
             throw new IndexOutOfBoundsException();
 
-        return map.get(index);
+        final int tailOffset = tailOffset();
+        if (index >= tailOffset)
+            return (E) tail[index - tailOffset];
+        return (E) RrbTree.get(root, shift, index);
     }
 
     @Override
     public Iterator<E> iterator() {
-        return map.values().iterator();
+        return new Iterator<E>() {
+            private Object[] leaf = RrbTree.EMPTY_LEAF; // walked a leaf at a time
+            private int i = 0; // position in leaf
+            private int index = 0;
+
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (index >= size)
+                    throw new NoSuchElementException();
+                if (i == leaf.length) {
+                    leaf = leafAt(index);
+                    i = 0;
+                }
+                index++;
+                return (E) leaf[i++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    // the leaf holding index, which must be the first index of a leaf:
+    private Object[] leafAt(int index) {
+        return index >= tailOffset() ? tail : RrbTree.leafAt(root, shift, index);
+    }
+
+    // the first index of the leaf holding index:
+    private int leafStart(int index) {
+        final int tailOffset = tailOffset();
+        return index >= tailOffset ? tailOffset : RrbTree.leafStart(root, shift, index);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new VectorSpliterator<E>(this, 0, size);
+    }
+
+    // splits its range of indices in half at a leaf boundary, and walks each half a leaf at a time:
+    private static final class VectorSpliterator<E> implements Spliterator<E> {
+        private final TreePVector<E> vector;
+        private int index; // next index
+        private final int end;
+        private Object[] leaf = RrbTree.EMPTY_LEAF; // leaf holding index, once it is found
+        private int i = 0; // position of index in leaf
+
+        VectorSpliterator(TreePVector<E> vector, int index, int end) {
+            this.vector = vector;
+            this.index = index;
+            this.end = end;
+        }
+
+        private void findLeaf() {
+            final int start = vector.leafStart(index);
+            leaf = vector.leafAt(start);
+            i = index - start;
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (index >= end)
+                return false;
+            if (i == leaf.length)
+                findLeaf();
+            index++;
+            action.accept((E) leaf[i++]);
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            while (index < end) {
+                if (i == leaf.length)
+                    findLeaf();
+                final int n = Math.min(leaf.length - i, end - index);
+                for (int k = 0; k < n; k++)
+                    action.accept((E) leaf[i++]);
+                index += n;
+            }
+        }
+
+        public Spliterator<E> trySplit() {
+            if (end - index <= RrbTree.WIDTH)
+                return null;
+            final int mid = vector.leafStart((index + end) >>> 1);
+            if (mid <= index)
+                return null;
+            final VectorSpliterator<E> prefix = new VectorSpliterator<E>(vector, index, mid);
+            prefix.leaf = leaf;
+            prefix.i = i;
+            index = mid;
+            leaf = RrbTree.EMPTY_LEAF;
+            i = 0;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return end - index;
+        }
+
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        if (hashCode == 0)
+            hashCode = super.hashCode();
+        return hashCode;
+    }
+
+    /**
+     * Another TreePVector is compared by size and, if both are known, hash code first,
+     * and then a leaf at a time, skipping any leaves the two vectors share.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof TreePVector))
+            return super.equals(o);
+        final TreePVector<?> that = (TreePVector<?>) o;
+        if (size != that.size || hashCode != 0 && that.hashCode != 0 && hashCode != that.hashCode)
+            return false;
+        // leaves of relaxed trees need not start at the same indices, so each side moves on separately:
+        Object[] a = RrbTree.EMPTY_LEAF, b = RrbTree.EMPTY_LEAF;
+        int i = 0, j = 0; // positions in a and b
+        for (int index = 0; index < size; ) {
+            if (i == a.length) {
+                a = leafAt(index);
+                i = 0;
+            }
+            if (j == b.length) {
+                b = that.leafAt(index);
+                j = 0;
+            }
+            if (a == b && i == j) { // a shared leaf
+                index += a.length - i;
+                i = j = a.length;
+                continue;
+            }
+            final Object e = a[i++], f = b[j++];
+            if (!(e == null ? f == null : e.equals(f)))
+                return false;
+            index++;
+        }
+        return true;
     }
 
     @Override
@@ -84,28 +315,60 @@ public final class TreePVector<E> extends AbstractList<E> implements PVector<E>,
         return new ArrayListIterator<E>((E[]) toArray(), index);
     }
 
+    /**
+     * Cuts the tree along the paths to start and end, sharing all other nodes with this vector,
+     * so this takes O(log n) time.
+     */
     public TreePVector<E> subList(int start, int end) {
-        int size = size();
         if (start < 0 || end > size || start > end)
             throw new IndexOutOfBoundsException();
         if (start == end)
             return empty();
-        if (start == 0) {
-            if (end == size)
-                return this;
-            // remove from end:
-            return this.minus(size - 1).subList(start, end);
+        if (start == 0 && end == size)
+            return this;
+
+        final int tailOffset = tailOffset();
+        if (start >= tailOffset) { // within the tail:
+            final Object[] newTail = new Object[end - start];
+            System.arraycopy(tail, start - tailOffset, newTail, 0, newTail.length);
+            return new TreePVector<E>(newTail.length, RrbTree.EMPTY_NODE, RrbTree.BITS, newTail);
         }
-        // remove from start:
-        return this.minus(0).subList(start - 1, end - 1);
+        Object[] newRoot = start == 0 ? root : RrbTree.dropFront(root, shift, start);
+        if (end > tailOffset) // keep the start of the tail:
+            return withTree(end - start, newRoot, shift,
+                    end == size ? tail : RrbTree.takeFront(tail, 0, end - tailOffset));
+        if (end < tailOffset)
+            newRoot = RrbTree.takeFront(newRoot, shift, end - start);
+        // the last leaf of the slice becomes its tail:
+        final Object[] newTail = RrbTree.lastLeaf(newRoot, shift);
+        return withTree(end - start, RrbTree.popLeaf(newRoot, shift, newTail.length), shift, newTail);
     }
 
     public TreePVector<E> subList(int start) {
         return subList(start, size());
     }
 
+    public ImmutableList<ImmutableList<E>> splitAt(int index) {
+        return TreePVector.<ImmutableList<E>>empty().plus(subList(0, index)).plus(subList(index));
+    }
+
     public TreePVector<E> plus(E element) {
-        return new TreePVector<E>(map.plus(size(), element));
+        if (tail.length < RrbTree.WIDTH) {
+            final Object[] newTail = new Object[tail.length + 1];
+            System.arraycopy(tail, 0, newTail, 0, tail.length);
+            newTail[tail.length] = element;
+            return new TreePVector<E>(size + 1, root, shift, newTail);
+        }
+        // the tail is full, move it into the tree:
+        return withTail(size + 1, tail, new Object[]{element});
+    }
+
+    // pushes leaf into the tree and uses newTail as the tail:
+    private TreePVector<E> withTail(int newSize, Object[] leaf, Object[] newTail) {
+        Object[] newRoot = RrbTree.pushLeaf(root, shift, leaf);
+        if (newRoot != null)
+            return new TreePVector<E>(newSize, newRoot, shift, newTail);
+        return new TreePVector<E>(newSize, RrbTree.newRoot(root, shift, leaf), shift + RrbTree.BITS, newTail);
     }
 
     @Override
@@ -113,55 +376,269 @@ public final class TreePVector<E> extends AbstractList<E> implements PVector<E>,
         return plusAll((Iterable<? extends E>) list);
     }
 
+    /**
+     * Another TreePVector is appended by {@link #concat}.
+     */
+    @SuppressWarnings("unchecked")
     public TreePVector<E> plusAll(Iterable<? extends E> iterable) {
-        TreePVector<E> result = this;
-        for (E e : iterable) {
-            result = result.plus(e);
+        if (size == 0)
+            return from(iterable);
+        if (iterable instanceof TreePVector)
+            return concat((TreePVector<? extends E>) iterable);
+        Transient<E> t = asTransient().addAll(iterable);
+        if (t.size() == size)
+            return this;
+        return t.persistent();
+    }
+
+    public TreePVector<E> plus(Iterable<? extends E> iterable) {
+        return plusAll(iterable);
+    }
+
+    /**
+     * Joins the trees of this and other along the seam between them, copying only the nodes
+     * on either side of the seam and sharing all others, so this takes O(log n) time however
+     * long both vectors are.
+     *
+     * @return a vector of the elements of this followed by those of other
+     */
+    @SuppressWarnings("unchecked")
+    public TreePVector<E> concat(TreePVector<? extends E> other) {
+        if (other.size == 0)
+            return this;
+        if (size == 0)
+            return (TreePVector<E>) other;
+        if (other.size == other.tail.length) // fits in its tail, which is appended to ours
+            return asTransient().addAll(other).persistent();
+
+        // the tail of this becomes the last leaf of its tree, and the tail of other stays a tail:
+        Object[] left = RrbTree.pushLeaf(root, shift, tail);
+        int leftShift = shift;
+        if (left == null) {
+            left = RrbTree.newRoot(root, shift, tail);
+            leftShift += RrbTree.BITS;
         }
-        return result;
+        final Object[][] joined = RrbTree.concat(left, leftShift, other.root, other.shift);
+        int newShift = Math.max(leftShift, other.shift);
+        Object[] newRoot = joined[0];
+        if (joined.length == 2) {
+            newShift += RrbTree.BITS;
+            newRoot = RrbTree.node(joined, 0, 2, newShift);
+        }
+        return withTree(size + other.size, newRoot, newShift, other.tail);
+    }
+
+    /**
+     * Returns a transient copy of this vector, which can be appended to in place and turned back
+     * into a persistent vector, to build large vectors without copying the tail for every
+     * element. This vector is not affected.
+     *
+     * @return a transient vector holding the elements of this vector
+     */
+    public Transient<E> asTransient() {
+        return new Transient<E>(this);
+    }
+
+    /**
+     * A mutable vector which is built on the tree of a TreePVector. Elements are appended
+     * in place to a tail buffer owned by the transient vector, and every full buffer is pushed
+     * into the tree as a leaf, so appending n elements allocates O(n / 32) leaves and paths
+     * instead of a new tail for every element.
+     * <p/>
+     * A transient vector can be used until {@link #persistent()} is called, and is not thread-safe.
+     *
+     * @param <E>
+     */
+    public static final class Transient<E> {
+        private Object[] root;
+        private int shift;
+        private int treeSize; // number of elements in root
+        private Object[] tail; // owned by this, null after persistent()
+        private int tailSize;
+
+        private Transient(TreePVector<E> vector) {
+            root = vector.root;
+            shift = vector.shift;
+            treeSize = vector.tailOffset();
+            tail = new Object[RrbTree.WIDTH];
+            tailSize = vector.tail.length;
+            System.arraycopy(vector.tail, 0, tail, 0, tailSize);
+        }
+
+        private void checkNotPersistent() {
+            if (tail == null)
+                throw new IllegalStateException("persistent() has already been called");
+        }
+
+        public int size() {
+            checkNotPersistent();
+            return treeSize + tailSize;
+        }
+
+        /**
+         * @return this
+         */
+        public Transient<E> add(E element) {
+            checkNotPersistent();
+            if (tailSize == RrbTree.WIDTH) {
+                // the tail is full, hand it over to the tree and start a new one:
+                final Object[] newRoot = RrbTree.pushLeaf(root, shift, tail);
+                if (newRoot != null) {
+                    root = newRoot;
+                } else {
+                    root = RrbTree.newRoot(root, shift, tail);
+                    shift += RrbTree.BITS;
+                }
+                treeSize += RrbTree.WIDTH;
+                tail = new Object[RrbTree.WIDTH];
+                tailSize = 0;
+            }
+            tail[tailSize++] = element;
+            return this;
+        }
+
+        /**
+         * @return this
+         */
+        public Transient<E> addAll(Iterable<? extends E> iterable) {
+            for (E e : iterable) {
+                add(e);
+            }
+            return this;
+        }
+
+        /**
+         * Ends the use of this transient vector.
+         *
+         * @return a persistent vector holding the elements of this vector
+         */
+        public TreePVector<E> persistent() {
+            checkNotPersistent();
+            final Object[] tail = this.tail;
+            this.tail = null;
+            if (tailSize == 0) // only when nothing was ever added to an empty vector
+                return empty();
+            final Object[] newTail;
+            if (tailSize == RrbTree.WIDTH) {
+                newTail = tail;
+            } else {
+                newTail = new Object[tailSize];
+                System.arraycopy(tail, 0, newTail, 0, tailSize);
+            }
+            return new TreePVector<E>(treeSize + tailSize, root, shift, newTail);
+        }
+    }
+
+    //// PARALLEL BULK OPERATIONS ////
+
+    /**
+     * Each task appends its part of the result to a transient vector, and the parts are joined
+     * by {@link #concat}, so no element is copied again once it is placed.
+     */
+    public <R> TreePVector<R> collectParallel(final Function<? super E, ? extends R> transform) {
+        return new Parallel.VectorBuilder<E, R>() {
+            @Override
+            void apply(E e, Transient<R> out) {
+                out.add(transform.apply(e));
+            }
+        }.invoke(spliterator());
+    }
+
+    /**
+     * Like {@link #collectParallel}, with each element replaced by all elements of the iterable transform returns.
+     */
+    public <R> TreePVector<R> collectManyParallel(final Function<? super E, ? extends Iterable<? extends R>> transform) {
+        return new Parallel.VectorBuilder<E, R>() {
+            @Override
+            void apply(E e, Transient<R> out) {
+                out.addAll(transform.apply(e));
+            }
+        }.invoke(spliterator());
+    }
+
+    /**
+     * Like {@link #collectParallel}, keeping the elements which satisfy filter.
+     */
+    public TreePVector<E> findAllParallel(final Predicate<? super E> filter) {
+        final TreePVector<E> result = new Parallel.VectorBuilder<E, E>() {
+            @Override
+            void apply(E e, Transient<E> out) {
+                if (filter.test(e))
+                    out.add(e);
+            }
+        }.invoke(spliterator());
+        return result.size == size ? this : result;
     }
 
     public TreePVector<E> plus(int index, E element) {
-        if (index < 0 || index > size())
+        if (index < 0 || index > size)
             throw new IndexOutOfBoundsException();
-        return new TreePVector<E>(map.withKeysChangedAbove(index, 1).plus(index, element));
+        if (index == size)
+            return plus(element);
+
+        final int tailOffset = tailOffset();
+        if (index < tailOffset)
+            return withTree(size + 1, RrbTree.insert(root, shift, index, element), shift, tail);
+
+        final Object[] newTail = RrbTree.insert(tail, 0, index - tailOffset, element);
+        if (newTail.length <= RrbTree.WIDTH)
+            return new TreePVector<E>(size + 1, root, shift, newTail);
+        // the tail overflowed, move all but its last element into the tree:
+        final Object[] leaf = new Object[RrbTree.WIDTH];
+        System.arraycopy(newTail, 0, leaf, 0, RrbTree.WIDTH);
+        return withTail(size + 1, leaf, new Object[]{newTail[RrbTree.WIDTH]});
+    }
+
+    public TreePVector<E> plusAt(int index, E element) {
+        return plus(index, element);
     }
 
     public TreePVector<E> plusAll(int i, Collection<? extends E> list) {
         return plusAll(i, (Iterable<? extends E>) list);
     }
 
+    /**
+     * This is split at index, and the parts are joined with the elements of iterable by {@link #concat}.
+     */
     public TreePVector<E> plusAll(int index, Iterable<? extends E> iterable) {
         if (index < 0 || index > size())
             throw new IndexOutOfBoundsException();
+        if (index == size)
+            return plusAll(iterable);
 
-        Collection<? extends E> list = Utils.asCollection(iterable);
-        if (list.size() == 0)
+        final TreePVector<E> middle = from(iterable);
+        if (middle.size == 0)
             return this;
+        return subList(0, index).concat(middle).concat(subList(index, size));
+    }
 
-        IntTreePMap<E> map = this.map.withKeysChangedAbove(index, list.size());
-        int i = index;
-        for (E e : list) {
-            map = map.plus(i++, e);
-        }
-        return new TreePVector<E>(map);
+    public TreePVector<E> plusAt(int index, Iterable<? extends E> iterable) {
+        return plusAll(index, iterable);
     }
 
     public TreePVector<E> with(int index, E element) {
         if (index < 0 || index >= size())
             throw new IndexOutOfBoundsException();
 
-        IntTreePMap<E> map = this.map.plus(index, element);
-        if (map == this.map)
+        if (get(index) == element)
             return this;
-        return new TreePVector<E>(map);
+        final int tailOffset = tailOffset();
+        if (index >= tailOffset)
+            return new TreePVector<E>(size, root, shift, RrbTree.set(tail, 0, index - tailOffset, element));
+        return new TreePVector<E>(size, RrbTree.set(root, shift, index, element), shift, tail);
+    }
+
+    public TreePVector<E> replaceAt(int index, E element) {
+        return with(index, element);
     }
 
     public TreePVector<E> minus(Object element) {
-        for (Entry<Integer, E> entry : map.entrySet()) {
-            if (objectEquals(entry.getValue(), element)) {
-                return minus(entry.getKey().intValue());
+        int i = 0;
+        for (E e : this) {
+            if (objectEquals(e, element)) {
+                return minus(i);
             }
+            i++;
         }
         return this;
     }
@@ -178,11 +655,38 @@ public final class TreePVector<E> extends AbstractList<E> implements PVector<E>,
         return result;
     }
 
+    public TreePVector<E> minus(Iterable<?> iterable) {
+        return minusAll(iterable);
+    }
+
     public TreePVector<E> minus(int index) {
         if (index < 0 || index >= size())
             throw new IndexOutOfBoundsException();
 
-        return new TreePVector<E>(map.minus(index).withKeysChangedAbove(index, -1));
+        final int tailOffset = tailOffset();
+        if (index < tailOffset)
+            return withTree(size - 1, RrbTree.remove(root, shift, index), shift, tail);
+
+        if (tail.length > 1)
+            return new TreePVector<E>(size - 1, root, shift, RrbTree.remove(tail, 0, index - tailOffset));
+        if (tailOffset == 0)
+            return empty();
+        // the tail is gone, its place is taken by the last leaf of the tree:
+        final Object[] leaf = RrbTree.lastLeaf(root, shift);
+        return withTree(size - 1, RrbTree.popLeaf(root, shift, leaf.length), shift, leaf);
+    }
+
+    public TreePVector<E> minusAt(int index) {
+        return minus(index);
+    }
+
+    /**
+     * Removes the first occurrence of element, like minus((Object) element), which is what Java
+     * already calls for an Integer. Without this, Groovy would call {@link #minus(int)} for
+     * {@code list - 1}, which {@link ImmutableList} defines as removing the element 1.
+     */
+    public TreePVector<E> minus(Integer element) {
+        return minus((Object) element);
     }
 
     private static boolean objectEquals(Object a, Object b) {
@@ -242,4 +746,14 @@ public final class TreePVector<E> extends AbstractList<E> implements PVector<E>,
     public E remove(int index) {
         throw new UnsupportedOperationException();
     }
+
+    //// SERIALIZATION ////
+
+    private Object writeReplace() {
+        return new SerializationProxy(SerializationProxy.VECTOR, this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("read through a SerializationProxy");
+    }
 }